@@ -44,6 +44,7 @@ import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 import org.wso2.emm.agent.services.AgentDeviceAdminReceiver;
 import org.wso2.emm.agent.services.LocalNotification;
+import org.wso2.emm.agent.services.LongPollNotification;
 import org.wso2.emm.agent.utils.CommonDialogUtils;
 import org.wso2.emm.agent.utils.CommonUtils;
 import org.wso2.emm.agent.utils.Constants;
@@ -502,6 +503,8 @@ public class AlreadyRegisteredActivity extends SherlockActivity implements APIRe
 		String notifier = Preference.getString(context, Constants.PreferenceFlag.NOTIFIER_TYPE);
 		if(Constants.NOTIFIER_LOCAL.equals(notifier)) {
 			LocalNotification.stopPolling(context);
+		} else if (Constants.NOTIFIER_LONG_POLL.equals(notifier)) {
+			LongPollNotification.stopPolling(context);
 		}
 	}
 
@@ -513,6 +516,9 @@ public class AlreadyRegisteredActivity extends SherlockActivity implements APIRe
 		if(Constants.NOTIFIER_LOCAL.equals(notifier) &&
 				!Constants.AUTO_ENROLLMENT_BACKGROUND_SERVICE_ENABLED) {
 			LocalNotification.startPolling(context);
+		} else if (Constants.NOTIFIER_LONG_POLL.equals(notifier) &&
+				!Constants.AUTO_ENROLLMENT_BACKGROUND_SERVICE_ENABLED) {
+			LongPollNotification.startPolling(context);
 		}
 	}
 
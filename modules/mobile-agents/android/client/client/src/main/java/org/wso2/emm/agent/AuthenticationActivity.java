@@ -595,6 +595,9 @@ public class AuthenticationActivity extends SherlockActivity implements APIAcces
 									if(type.equals(String.valueOf(Constants.NOTIFIER_CHECK))) {
 										Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
 										                     Constants.NOTIFIER_GCM);
+									} else if (type.equals(String.valueOf(Constants.NOTIFIER_LONG_POLL_CHECK))) {
+										Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
+										                     Constants.NOTIFIER_LONG_POLL);
 									}else{
 										Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
 										                     Constants.NOTIFIER_LOCAL);
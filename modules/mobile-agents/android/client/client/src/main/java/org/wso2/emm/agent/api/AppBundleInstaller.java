@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.api;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.os.Environment;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.wso2.emm.agent.AndroidAgentException;
+import org.wso2.emm.agent.R;
+import org.wso2.emm.agent.utils.CommonUtils;
+import org.wso2.emm.agent.utils.Constants;
+import org.wso2.emm.agent.utils.Preference;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class installs the applications of an application bundle operation in two stages. The
+ * files are downloaded by a bounded number of concurrent, resumable downloads, and every
+ * downloaded file is handed over to a single install thread, which silently installs one
+ * application at a time through the system service and waits for its result before the next.
+ * The progress and status of each application is reported in the response of the bundle
+ * operation, so that the whole bundle is completed within one operation instead of one
+ * application per poll. The state of the bundle is kept in the preferences, so that a bundle
+ * interrupted by a restart of the agent is resumed.
+ */
+public class AppBundleInstaller {
+
+    private static final String TAG = AppBundleInstaller.class.getName();
+    private static final int MAX_PARALLEL_DOWNLOADS = 3;
+    private static final int PROGRESS_STEP = 10;
+    private static final long INSTALL_TIMEOUT_MINUTES = 5;
+    private static final String BUNDLE_FILE_PREFIX = "bundle-";
+    private static final String APK_FILE_SUFFIX = ".apk";
+    private static final String KEY_URL = "url";
+    private static final String KEY_STATUS = "status";
+    private static final String KEY_PROGRESS = "progress";
+    private static final String KEY_MESSAGE = "message";
+    private static final String KEY_OPERATION_ID = "operationId";
+    private static final String KEY_OPERATION_CODE = "operationCode";
+    private static final String KEY_APPS = "apps";
+
+    /** The bundle which is installing, only one bundle is installed at a time. */
+    private static volatile AppBundleInstaller activeBundle;
+
+    private Context context;
+    private Resources resources;
+    private int operationId;
+    private String operationCode;
+    private AppState[] apps;
+    private int remainingApps;
+    private ExecutorService downloadExecutor;
+    private ExecutorService installExecutor;
+    /** File URIs of the applications of the bundle, to tell late results of the bundle apart. */
+    private Set<String> fileUris = new HashSet<>();
+    /** Results awaited by the install thread, by the file URI of the installation. */
+    private Map<String, BlockingQueue<AppState>> awaitedResults = new HashMap<>();
+
+    /**
+     * The state of one application of the bundle.
+     */
+    private static class AppState {
+        private String url;
+        private String status;
+        private int progress;
+        private String message;
+    }
+
+    private AppBundleInstaller(Context context, int operationId, String operationCode, List<String> urls) {
+        this.context = context;
+        this.resources = context.getResources();
+        this.operationId = operationId;
+        this.operationCode = operationCode;
+        this.apps = new AppState[urls.size()];
+        for (int i = 0; i < apps.length; i++) {
+            apps[i] = new AppState();
+            apps[i].url = urls.get(i);
+            apps[i].status = resources.getString(R.string.app_status_value_download_started);
+        }
+        this.remainingApps = apps.length;
+    }
+
+    /**
+     * Starts installing a bundle, unless another bundle is installing already.
+     *
+     * @param context       - Application context.
+     * @param operationId   - Id of the bundle operation.
+     * @param operationCode - Code of the bundle operation.
+     * @param urls          - Download URLs of the applications of the bundle.
+     * @return - True if the bundle is installing, false if another bundle is installing.
+     */
+    public static boolean start(Context context, int operationId, String operationCode, List<String> urls) {
+        AppBundleInstaller bundle;
+        synchronized (AppBundleInstaller.class) {
+            if (activeBundle != null) {
+                return false;
+            }
+            bundle = new AppBundleInstaller(context, operationId, operationCode, urls);
+            activeBundle = bundle;
+        }
+        bundle.startDownloads();
+        return true;
+    }
+
+    /**
+     * Resumes the bundle which was installing when the agent was stopped, if any. Applications
+     * which were done are kept, downloaded files are installed, and the other downloads are
+     * resumed.
+     *
+     * @param context - Application context.
+     */
+    public static void resume(Context context) {
+        String state = Preference.getString(context, Constants.APP_BUNDLE_STATE);
+        if (state == null) {
+            return;
+        }
+        AppBundleInstaller bundle;
+        synchronized (AppBundleInstaller.class) {
+            if (activeBundle != null) {
+                return;
+            }
+            try {
+                bundle = fromState(context.getApplicationContext(), new JSONObject(state));
+            } catch (JSONException e) {
+                Log.e(TAG, "Discarding unreadable application bundle state.", e);
+                Preference.removePreference(context, Constants.APP_BUNDLE_STATE);
+                return;
+            }
+            activeBundle = bundle;
+        }
+        Log.i(TAG, "Resuming application bundle of operation " + bundle.operationId);
+        bundle.startDownloads();
+    }
+
+    private static AppBundleInstaller fromState(Context context, JSONObject state) throws JSONException {
+        JSONArray states = state.getJSONArray(KEY_APPS);
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < states.length(); i++) {
+            urls.add(states.getJSONObject(i).getString(KEY_URL));
+        }
+        AppBundleInstaller bundle = new AppBundleInstaller(context, state.getInt(KEY_OPERATION_ID),
+                                                           state.getString(KEY_OPERATION_CODE), urls);
+        for (int i = 0; i < states.length(); i++) {
+            JSONObject appState = states.getJSONObject(i);
+            AppState app = bundle.apps[i];
+            app.status = appState.getString(KEY_STATUS);
+            app.progress = appState.optInt(KEY_PROGRESS);
+            app.message = appState.optString(KEY_MESSAGE, null);
+            if (bundle.isDone(app)) {
+                bundle.remainingApps--;
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Checks whether a bundle is installing.
+     *
+     * @return - True if a bundle is installing.
+     */
+    public static boolean isInstalling() {
+        return activeBundle != null;
+    }
+
+    /**
+     * Hands the result of a silent installation over to the installing bundle, if it belongs to
+     * one of its applications. Results which arrive after their installation has timed out are
+     * discarded. A result without a file URI, as sent by older system services, belongs to the
+     * installation the bundle is waiting for, since its applications are installed one at a time.
+     *
+     * @param appUri  - URI of the installed file sent by the system service, can be null.
+     * @param status  - Installation status sent by the system service.
+     * @param message - Failure message sent by the system service, can be null.
+     * @return - True if the result belongs to a bundle.
+     */
+    public static boolean onInstallResult(String appUri, String status, String message) {
+        AppBundleInstaller bundle = activeBundle;
+        if (bundle == null) {
+            return false;
+        }
+        String fileUri = appUri;
+        BlockingQueue<AppState> awaitedResult;
+        synchronized (bundle) {
+            if (fileUri == null) {
+                if (bundle.awaitedResults.size() != 1) {
+                    return false;
+                }
+                fileUri = bundle.awaitedResults.keySet().iterator().next();
+            } else if (!bundle.fileUris.contains(fileUri)) {
+                return false;
+            }
+            awaitedResult = bundle.awaitedResults.remove(fileUri);
+        }
+        if (awaitedResult == null) {
+            Log.w(TAG, "Discarding installation result of " + fileUri + " which is no longer awaited.");
+            return true;
+        }
+        AppState result = new AppState();
+        result.status = status;
+        result.message = message;
+        awaitedResult.offer(result);
+        return true;
+    }
+
+    private void startDownloads() {
+        Preference.edit(context)
+                .putInt(resources.getString(R.string.app_install_id), operationId)
+                .putString(resources.getString(R.string.app_install_code), operationCode)
+                .apply();
+        report(resources.getString(R.string.app_status_value_download_started));
+
+        File directory = new File(Environment.getExternalStorageDirectory().getPath() +
+                                  resources.getString(R.string.application_mgr_download_location));
+        directory.mkdirs();
+        downloadExecutor = Executors.newFixedThreadPool(Math.min(MAX_PARALLEL_DOWNLOADS, apps.length));
+        installExecutor = Executors.newSingleThreadExecutor();
+        boolean completed;
+        synchronized (this) {
+            completed = remainingApps == 0;
+        }
+        for (int i = 0; i < apps.length; i++) {
+            final AppState app = apps[i];
+            final File file = new File(directory, BUNDLE_FILE_PREFIX + operationId + "-" + i + APK_FILE_SUFFIX);
+            boolean downloaded;
+            synchronized (this) {
+                fileUris.add(Uri.fromFile(file).toString());
+                if (isDone(app)) {
+                    continue;
+                }
+                downloaded = resources.getString(R.string.app_status_value_download_completed).equals(app.status) &&
+                             file.exists();
+            }
+            if (downloaded) {
+                installExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        install(app, file);
+                    }
+                });
+            } else {
+                downloadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        download(app, file);
+                    }
+                });
+            }
+        }
+        downloadExecutor.shutdown();
+        if (completed) {
+            complete();
+        }
+    }
+
+    /**
+     * Checks whether an application of the bundle has been installed or has failed.
+     */
+    private boolean isDone(AppState app) {
+        return !resources.getString(R.string.app_status_value_download_started).equals(app.status) &&
+               !resources.getString(R.string.app_status_value_download_completed).equals(app.status);
+    }
+
+    private void download(final AppState app, final File file) {
+        try {
+            new ApplicationDownloader(context, app.url, file).download(new ApplicationDownloader.ProgressListener() {
+                @Override
+                public void onProgress(int percentage) {
+                    boolean changed;
+                    synchronized (AppBundleInstaller.this) {
+                        changed = percentage / PROGRESS_STEP != app.progress / PROGRESS_STEP;
+                        app.progress = percentage;
+                    }
+                    if (changed) {
+                        report(resources.getString(R.string.app_status_value_download_started));
+                    }
+                }
+            });
+        } catch (AndroidAgentException e) {
+            Log.e(TAG, "Failed to download " + app.url, e);
+            finish(app, resources.getString(R.string.app_status_value_download_failed), e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            app.status = resources.getString(R.string.app_status_value_download_completed);
+        }
+        report(resources.getString(R.string.app_status_value_download_started));
+        installExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                install(app, file);
+            }
+        });
+    }
+
+    /**
+     * Installs a downloaded application and waits for the system service to report the result,
+     * so that only one installation is in progress at a time.
+     */
+    private void install(AppState app, File file) {
+        String fileUri = Uri.fromFile(file).toString();
+        BlockingQueue<AppState> awaitedResult = new LinkedBlockingQueue<>();
+        synchronized (this) {
+            awaitedResults.put(fileUri, awaitedResult);
+        }
+        CommonUtils.callSystemApp(context, Constants.Operation.SILENT_INSTALL_APPLICATION, "", fileUri);
+        AppState result;
+        try {
+            result = awaitedResult.poll(INSTALL_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = null;
+        }
+        synchronized (this) {
+            awaitedResults.remove(fileUri);
+        }
+        if (result == null) {
+            // The file is kept, since the system service may still be installing from it.
+            finish(app, resources.getString(R.string.app_status_value_install_failed),
+                   "No installation result received from the system service.");
+            return;
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Failed to delete " + file.getPath());
+        }
+        finish(app, result.status, result.message);
+    }
+
+    private void finish(AppState app, String status, String message) {
+        boolean completed;
+        synchronized (this) {
+            app.status = status;
+            app.message = message;
+            completed = --remainingApps == 0;
+        }
+        if (!completed) {
+            report(resources.getString(R.string.app_status_value_download_started));
+            return;
+        }
+        complete();
+    }
+
+    private void complete() {
+        String installed = resources.getString(R.string.app_status_value_installed);
+        String bundleStatus = installed;
+        synchronized (this) {
+            for (AppState state : apps) {
+                if (!installed.equals(state.status)) {
+                    bundleStatus = resources.getString(R.string.app_status_value_install_failed);
+                }
+            }
+        }
+        report(bundleStatus);
+        Preference.removePreference(context, Constants.APP_BUNDLE_STATE);
+        installExecutor.shutdown();
+        activeBundle = null;
+        Log.i(TAG, "Application bundle of operation " + operationId + " completed: " + bundleStatus);
+    }
+
+    /**
+     * Records the status of the bundle and the state of each application, which are sent as the
+     * result of the bundle operation with the next poll, and kept to resume the bundle.
+     */
+    private synchronized void report(String bundleStatus) {
+        JSONArray states = new JSONArray();
+        try {
+            for (AppState app : apps) {
+                JSONObject state = new JSONObject();
+                state.put(KEY_URL, app.url);
+                state.put(KEY_STATUS, app.status);
+                state.put(KEY_PROGRESS, app.progress);
+                if (app.message != null) {
+                    state.put(KEY_MESSAGE, app.message);
+                }
+                states.put(state);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to build application bundle status.", e);
+        }
+        JSONObject state = new JSONObject();
+        try {
+            state.put(KEY_OPERATION_ID, operationId);
+            state.put(KEY_OPERATION_CODE, operationCode);
+            state.put(KEY_APPS, states);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to build application bundle state.", e);
+        }
+        Preference.edit(context)
+                .putString(resources.getString(R.string.app_install_status), bundleStatus)
+                .putString(resources.getString(R.string.app_install_failed_message), states.toString())
+                .putString(Constants.APP_BUNDLE_STATE, state.toString())
+                .apply();
+    }
+
+}
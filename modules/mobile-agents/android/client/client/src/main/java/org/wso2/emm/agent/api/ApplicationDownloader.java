@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.api;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import org.wso2.emm.agent.AndroidAgentException;
+import org.wso2.emm.agent.proxy.IDPTokenManagerException;
+import org.wso2.emm.agent.proxy.utils.ServerUtilities;
+import org.wso2.emm.agent.utils.Preference;
+import org.wso2.emm.agent.utils.StreamHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class downloads application files straight to disk, so that the size of the file is not
+ * limited by the memory available to the agent. Bytes are written to a partial file as they
+ * arrive, which is verified against the length and digest announced by the server and then
+ * renamed to the target file. An interrupted download is resumed with an HTTP range request,
+ * also across restarts of the agent, as long as the file on the server has not changed.
+ */
+public class ApplicationDownloader {
+
+    private static final String TAG = ApplicationDownloader.class.getName();
+    private static final String PARTIAL_FILE_SUFFIX = ".part";
+    private static final String DOWNLOAD_URL_PREF_KEY = "appDownloadUrl";
+    private static final String DOWNLOAD_VALIDATOR_PREF_KEY = "appDownloadValidator";
+    private static final String APK_CONTENT_TYPE = "application/octet-stream";
+    private static final String HEADER_ACCEPT = "Accept";
+    private static final String HEADER_USER_AGENT = "User-Agent";
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_DIGEST = "Digest";
+    private static final String SHA_256 = "SHA-256";
+    private static final String MD5 = "MD5";
+    private static final String USER_AGENT = "Mozilla/5.0 ( compatible ), Android";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int CONNECT_TIMEOUT = 30000;
+    private static final int READ_TIMEOUT = 60000;
+    private static final int PROGRESS_TOTAL = 100;
+    private static final int UNKNOWN_LENGTH = -1;
+
+    private Context context;
+    private String url;
+    private File targetFile;
+    private File partialFile;
+    private String urlPrefKey;
+    private String validatorPrefKey;
+
+    /**
+     * Receives the progress of a download.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called whenever the downloaded percentage of the file changes.
+         *
+         * @param percentage - Downloaded percentage, between 0 and 100.
+         */
+        void onProgress(int percentage);
+    }
+
+    public ApplicationDownloader(Context context, String url, File targetFile) {
+        this.context = context;
+        this.url = url;
+        this.targetFile = targetFile;
+        this.partialFile = new File(targetFile.getPath() + PARTIAL_FILE_SUFFIX);
+        // Kept per target file, so that concurrent downloads can each be resumed.
+        this.urlPrefKey = DOWNLOAD_URL_PREF_KEY + "." + targetFile.getName();
+        this.validatorPrefKey = DOWNLOAD_VALIDATOR_PREF_KEY + "." + targetFile.getName();
+    }
+
+    /**
+     * Downloads the file, resuming it up to a fixed number of times if the transfer is
+     * interrupted. This blocks until the download has completed, hence must not be called on
+     * the main thread.
+     *
+     * @param listener - Listener to be notified of the progress, can be null.
+     * @return - Downloaded file.
+     * @throws AndroidAgentException - If the file could not be downloaded.
+     */
+    public File download(ProgressListener listener) throws AndroidAgentException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            try {
+                transfer(listener);
+                return targetFile;
+            } catch (IOException e) {
+                lastError = e;
+                Log.w(TAG, "Download attempt " + attempt + " of " + url + " failed: " + e.getMessage());
+            }
+        }
+        throw new AndroidAgentException("App download failed due to a connection issue.", lastError);
+    }
+
+    private void transfer(ProgressListener listener) throws IOException, AndroidAgentException {
+        long offset = getResumeOffset();
+        HttpURLConnection connection;
+        try {
+            connection = ServerUtilities.openConnection(new URL(url));
+        } catch (MalformedURLException e) {
+            throw new AndroidAgentException("Invalid application file URL.", e);
+        } catch (IDPTokenManagerException e) {
+            throw new AndroidAgentException("Failed to retrieve HTTP client", e);
+        }
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestProperty(HEADER_ACCEPT, "*/*");
+        connection.setRequestProperty(HEADER_USER_AGENT, USER_AGENT);
+        if (offset > 0) {
+            connection.setRequestProperty(HEADER_RANGE, "bytes=" + offset + "-");
+            connection.setRequestProperty(HEADER_IF_RANGE,
+                                          Preference.getString(context, validatorPrefKey));
+        }
+
+        InputStream in = null;
+        FileOutputStream out = null;
+        try {
+            int status = connection.getResponseCode();
+            if (status == HTTP_RANGE_NOT_SATISFIABLE) {
+                discardPartialFile();
+                throw new IOException("Partial download is not valid anymore");
+            }
+            if (status >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new IOException("Server responded with status " + status);
+            }
+            boolean resumed = status == HttpURLConnection.HTTP_PARTIAL && offset > 0 &&
+                              offset == getContentRangeStart(connection);
+            if (status != HttpURLConnection.HTTP_OK && !resumed) {
+                discardPartialFile();
+                throw new AndroidAgentException("App download failed with status " + status);
+            }
+            String contentType = connection.getContentType();
+            if (contentType == null || !contentType.startsWith(APK_CONTENT_TYPE)) {
+                discardPartialFile();
+                throw new AndroidAgentException("Invalid application file URL.");
+            }
+
+            long length;
+            if (resumed) {
+                length = getContentRangeLength(connection);
+            } else {
+                // The server sent the whole file, either on purpose or since it has changed.
+                offset = 0;
+                length = parseLength(connection.getHeaderField(HEADER_CONTENT_LENGTH));
+                saveValidator(connection);
+            }
+
+            MessageDigest sha256 = getMessageDigest(SHA_256);
+            MessageDigest md5 = getMessageDigest(MD5);
+            if (resumed) {
+                updateDigests(sha256, md5, partialFile);
+            }
+
+            in = connection.getInputStream();
+            out = new FileOutputStream(partialFile, resumed);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long downloaded = offset;
+            int progress = UNKNOWN_LENGTH;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+                md5.update(buffer, 0, read);
+                downloaded += read;
+                if (listener != null && length > 0) {
+                    int currentProgress = (int) (downloaded * PROGRESS_TOTAL / length);
+                    if (currentProgress != progress) {
+                        progress = currentProgress;
+                        listener.onProgress(progress);
+                    }
+                }
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+
+            if (length != UNKNOWN_LENGTH && downloaded != length) {
+                // Keeps the partial file, so that the next attempt resumes from here.
+                throw new IOException("Connection closed after " + downloaded + " of " + length + " bytes");
+            }
+            verifyDigest(connection.getHeaderField(HEADER_DIGEST), sha256, md5);
+            if (!partialFile.renameTo(targetFile)) {
+                discardPartialFile();
+                throw new AndroidAgentException("Failed to move downloaded file to " + targetFile.getPath());
+            }
+            clearValidator();
+            if (listener != null) {
+                listener.onProgress(PROGRESS_TOTAL);
+            }
+        } finally {
+            StreamHandler.closeOutputStream(out, TAG);
+            StreamHandler.closeInputStream(in, TAG);
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Returns the number of bytes which can be resumed from a previous download of the same URL.
+     */
+    private long getResumeOffset() {
+        if (!partialFile.exists()) {
+            return 0;
+        }
+        if (url.equals(Preference.getString(context, urlPrefKey)) &&
+            Preference.getString(context, validatorPrefKey) != null) {
+            return partialFile.length();
+        }
+        discardPartialFile();
+        return 0;
+    }
+
+    private void saveValidator(HttpURLConnection connection) {
+        String validator = connection.getHeaderField(HEADER_ETAG);
+        if (validator == null) {
+            validator = connection.getHeaderField(HEADER_LAST_MODIFIED);
+        }
+        Preference.putString(context, urlPrefKey, url);
+        Preference.putString(context, validatorPrefKey, validator);
+    }
+
+    private void clearValidator() {
+        Preference.putString(context, urlPrefKey, null);
+        Preference.putString(context, validatorPrefKey, null);
+    }
+
+    private void discardPartialFile() {
+        if (partialFile.exists() && !partialFile.delete()) {
+            Log.w(TAG, "Failed to delete " + partialFile.getPath());
+        }
+        clearValidator();
+    }
+
+    /**
+     * Checks the downloaded file against the instance digest sent by the server, if any,
+     * e.g. "Digest: SHA-256=X48E9qOokqqrvdts8nOJRJN3OWDUoyWxBf7kbu9DBPE=".
+     */
+    private void verifyDigest(String digestHeader, MessageDigest sha256, MessageDigest md5)
+            throws IOException {
+        if (digestHeader == null) {
+            return;
+        }
+        byte[] sha256Hash = sha256.digest();
+        byte[] md5Hash = md5.digest();
+        for (String digest : digestHeader.split(",")) {
+            int separator = digest.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String algorithm = digest.substring(0, separator).trim();
+            byte[] expected;
+            try {
+                expected = Base64.decode(digest.substring(separator + 1).trim(), Base64.DEFAULT);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring malformed digest " + digest);
+                continue;
+            }
+            byte[] actual = null;
+            if (SHA_256.equalsIgnoreCase(algorithm)) {
+                actual = sha256Hash;
+            } else if (MD5.equalsIgnoreCase(algorithm)) {
+                actual = md5Hash;
+            }
+            if (actual != null && !MessageDigest.isEqual(expected, actual)) {
+                discardPartialFile();
+                throw new IOException(algorithm + " checksum of the downloaded file does not match");
+            }
+        }
+    }
+
+    private void updateDigests(MessageDigest sha256, MessageDigest md5, File file) throws IOException {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+                md5.update(buffer, 0, read);
+            }
+        } finally {
+            StreamHandler.closeInputStream(in, TAG);
+        }
+    }
+
+    private MessageDigest getMessageDigest(String algorithm) throws AndroidAgentException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AndroidAgentException("Digest algorithm " + algorithm + " is not available", e);
+        }
+    }
+
+    /**
+     * Parses the first byte position of a "Content-Range: bytes 100-999/1000" header.
+     */
+    private long getContentRangeStart(HttpURLConnection connection) {
+        String range = connection.getHeaderField(HEADER_CONTENT_RANGE);
+        if (range == null) {
+            return UNKNOWN_LENGTH;
+        }
+        int start = range.indexOf(' ');
+        int end = range.indexOf('-');
+        if (start < 0 || end < start) {
+            return UNKNOWN_LENGTH;
+        }
+        return parseLength(range.substring(start + 1, end));
+    }
+
+    /**
+     * Parses the complete length of a "Content-Range: bytes 100-999/1000" header.
+     */
+    private long getContentRangeLength(HttpURLConnection connection) {
+        String range = connection.getHeaderField(HEADER_CONTENT_RANGE);
+        if (range == null || range.indexOf('/') < 0) {
+            return UNKNOWN_LENGTH;
+        }
+        return parseLength(range.substring(range.indexOf('/') + 1));
+    }
+
+    private long parseLength(String value) {
+        if (value == null) {
+            return UNKNOWN_LENGTH;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return UNKNOWN_LENGTH;
+        }
+    }
+
+}
@@ -18,41 +18,33 @@
 
 package org.wso2.emm.agent.api;
 
+import android.app.ActivityManager;
 import android.app.DownloadManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Environment;
 import android.provider.Browser;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.text.TextUtils;
 import android.util.Base64;
 import android.util.Log;
 
-import com.android.volley.AuthFailureError;
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.RequestQueue;
-import com.android.volley.Response;
-import com.android.volley.VolleyError;
-import com.android.volley.toolbox.HttpHeaderParser;
-
 import org.wso2.emm.agent.AndroidAgentException;
 import org.wso2.emm.agent.R;
 import org.wso2.emm.agent.beans.AppInstallRequest;
 import org.wso2.emm.agent.beans.DeviceAppInfo;
 import org.wso2.emm.agent.beans.Operation;
 import org.wso2.emm.agent.beans.ServerConfig;
-import org.wso2.emm.agent.proxy.IDPTokenManagerException;
-import org.wso2.emm.agent.proxy.utils.ServerUtilities;
 import org.wso2.emm.agent.utils.AlarmUtils;
 import org.wso2.emm.agent.utils.AppInstallRequestUtil;
 import org.wso2.emm.agent.utils.CommonUtils;
@@ -60,19 +52,18 @@ import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
 import org.wso2.emm.agent.utils.StreamHandler;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class handles all the functionalities required for managing application
@@ -82,11 +73,6 @@ public class ApplicationManager {
     private static final int SYSTEM_APPS_DISABLED_FLAG = 0;
     private static final int MAX_URL_HASH = 32;
     private static final int COMPRESSION_LEVEL = 100;
-    private static final int BUFFER_SIZE = 1024;
-    private static final int READ_FAILED = -1;
-    private static final int BUFFER_OFFSET = 0;
-    private static final int DOWNLOAD_PERCENTAGE_TOTAL = 100;
-    private static final int DOWNLOADER_INCREMENT = 10;
     private static final String APP_STATE_DOWNLOAD_STARTED = "DOWNLOAD_STARTED";
     private static final String APP_STATE_DOWNLOAD_COMPLETED = "DOWNLOAD_COMPLETED";
     private static final String APP_STATE_DOWNLOAD_FAILED = "DOWNLOAD_FAILED";
@@ -94,6 +80,10 @@ public class ApplicationManager {
     private static final String APP_STATE_INSTALLED = "INSTALLED";
     private static final String TAG = ApplicationManager.class.getName();
     private static final String APP_INSTALLATION_ATTEMPT = "APP_INSTALLATION_ATTEMPT";
+    private static final String PROC_DIRECTORY = "/proc";
+    private static final String PROC_CMDLINE_FILE = "cmdline";
+    private static final char PROCESS_NAME_SEPARATOR = ':';
+    private static final int PROCESS_NAME_BUFFER_SIZE = 256;
     private static volatile boolean downloadOngoing = false;
     private Context context;
     private Resources resources;
@@ -101,43 +91,6 @@ public class ApplicationManager {
     private long downloadReference;
     private String appUrl;
 
-    private BroadcastReceiver downloadReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            long referenceId = intent.getLongExtra(
-                    DownloadManager.EXTRA_DOWNLOAD_ID, -1);
-
-            if (downloadReference == referenceId) {
-                String downloadDirectoryPath = Environment.getExternalStoragePublicDirectory(Environment.
-                                                                                         DIRECTORY_DOWNLOADS).getPath();
-                File file = new File(downloadDirectoryPath, resources.getString(R.string.download_mgr_download_file_name));
-                if (file.exists()) {
-                    Preference.putString(context, context.getResources().getString(
-                            R.string.app_install_status), context.getResources().getString(
-                            R.string.app_status_value_download_completed));
-                    PackageManager pm = context.getPackageManager();
-                    PackageInfo info = pm.getPackageArchiveInfo(downloadDirectoryPath + File.separator + resources.
-                                                                    getString(R.string.download_mgr_download_file_name),
-                                                                PackageManager.GET_ACTIVITIES);
-                    if (info != null && info.packageName != null) {
-                        Preference.putString(context, context.getResources().getString(R.string.shared_pref_installed_app),
-                                             info.packageName);
-                    }
-                    Preference.putString(context, context.getResources().getString(R.string.shared_pref_installed_file),
-                                         resources.getString(R.string.download_mgr_download_file_name));
-                    triggerInstallation(Uri.fromFile(new File(downloadDirectoryPath + File.separator +
-                                                              resources.getString(R.string.download_mgr_download_file_name))));
-                } else {
-                    Preference.putString(context, context.getResources().getString(
-                            R.string.app_install_status), context.getResources().getString(
-                            R.string.app_status_value_download_failed));
-                    Preference.putString(context, context.getResources().getString(
-                            R.string.app_install_failed_message), "App file creation failed on the device.");
-                }
-            }
-        }
-    };
-
     public ApplicationManager(Context context) {
         this.context = context;
         this.resources = context.getResources();
@@ -152,6 +105,7 @@ public class ApplicationManager {
     public Map<String, DeviceAppInfo> getInstalledApps() {
         Map<String, DeviceAppInfo> appList = new HashMap<>();
         List<PackageInfo> packages = packageManager.getInstalledPackages(SYSTEM_APPS_DISABLED_FLAG);
+        Set<String> runningProcesses = getRunningProcesses();
         DeviceAppInfo app;
 
         for (PackageInfo packageInfo : packages) {
@@ -163,7 +117,7 @@ public class ApplicationManager {
                 app.setVersionName(packageInfo.versionName);
                 app.setVersionCode(packageInfo.versionCode);
                 app.setIsSystemApp(isSystemPackage(packageInfo));
-                app.setIsRunning(isAppRunning(packageInfo.packageName));
+                app.setIsRunning(runningProcesses.contains(packageInfo.packageName));
                 appList.put(packageInfo.packageName, app);
             } else if (!isSystemPackage(packageInfo)) {
                 app = new DeviceAppInfo();
@@ -173,7 +127,7 @@ public class ApplicationManager {
                 app.setVersionName(packageInfo.versionName);
                 app.setVersionCode(packageInfo.versionCode);
                 app.setIsSystemApp(false);
-                app.setIsRunning(isAppRunning(packageInfo.packageName));
+                app.setIsRunning(runningProcesses.contains(packageInfo.packageName));
                 appList.put(packageInfo.packageName, app);
             }
         }
@@ -181,27 +135,88 @@ public class ApplicationManager {
     }
 
     public boolean isAppRunning(String packageName) {
-        boolean isRunning = false;
-        try {
-            Process process = Runtime.getRuntime().exec("ps");
-            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
-            int read;
-            char[] buffer = new char[4096];
-            StringBuffer output = new StringBuffer();
-            while ((read = in.read(buffer)) > 0) {
-                output.append(buffer, 0, read);
-                if (output.toString().contains(packageName)) {
-                    isRunning = true;
+        return getRunningProcesses().contains(packageName);
+    }
+
+    /**
+     * Takes a snapshot of the processes running on the device, indexed by process name. Processes
+     * named "package:process" are indexed under their package name as well, so that the snapshot
+     * can be looked up once per installed package, instead of scanning /proc for each of them.
+     *
+     * @return - Names of the running processes.
+     */
+    private Set<String> getRunningProcesses() {
+        Set<String> processes = new HashSet<>();
+        boolean othersVisible = false;
+        File[] entries = new File(PROC_DIRECTORY).listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.isDirectory() && TextUtils.isDigitsOnly(entry.getName())) {
+                    String processName = readProcessName(new File(entry, PROC_CMDLINE_FILE));
+                    if (processName != null && !othersVisible) {
+                        othersVisible = isOtherUid(entry);
+                    }
+                    addProcess(processes, processName);
                 }
             }
-            in.close();
-            if (output.toString().contains(packageName)) {
-                isRunning = true;
+        }
+        if (!othersVisible) {
+            // Process details of other apps are hidden on newer platforms, where only the
+            // processes of the agent itself are visible.
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> runningProcesses = activityManager.getRunningAppProcesses();
+            if (runningProcesses != null) {
+                for (ActivityManager.RunningAppProcessInfo processInfo : runningProcesses) {
+                    addProcess(processes, processInfo.processName);
+                }
             }
+        }
+        return processes;
+    }
+
+    private boolean isOtherUid(File processDirectory) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            // Process details are visible to all apps on these platforms.
+            return true;
+        }
+        try {
+            return Os.stat(processDirectory.getPath()).st_uid != android.os.Process.myUid();
+        } catch (ErrnoException e) {
+            // The process has exited.
+            return false;
+        }
+    }
+
+    private void addProcess(Set<String> processes, String processName) {
+        if (processName == null || processName.isEmpty()) {
+            return;
+        }
+        processes.add(processName);
+        int separator = processName.indexOf(PROCESS_NAME_SEPARATOR);
+        if (separator > 0) {
+            processes.add(processName.substring(0, separator));
+        }
+    }
+
+    private String readProcessName(File cmdline) {
+        byte[] buffer = new byte[PROCESS_NAME_BUFFER_SIZE];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(cmdline);
+            int length = in.read(buffer);
+            if (length <= 0) {
+                return null;
+            }
+            int end = 0;
+            while (end < length && buffer[end] != 0) {
+                end++;
+            }
+            return new String(buffer, 0, end).trim();
         } catch (IOException e) {
-            Log.e(TAG, "Running processes shell command failed execution." + e);
+            // The process has exited, or its details are not accessible.
+            return null;
         } finally {
-            return isRunning;
+            StreamHandler.closeInputStream(in, TAG);
         }
     }
 
@@ -257,6 +272,10 @@ public class ApplicationManager {
     }
 
     private void triggerInstallation(Uri fileUri) {
+        int operationId = Preference.getInt(context, context.getResources().getString(R.string.app_install_id));
+        if (operationId != 0) {
+            AppInstallRequestUtil.setInstalling(context, operationId);
+        }
         if (Constants.SYSTEM_APP_ENABLED) {
             CommonUtils.callSystemApp(context, Constants.Operation.SILENT_INSTALL_APPLICATION, "",
                     fileUri.toString());
@@ -345,15 +364,18 @@ public class ApplicationManager {
                 appInstallRequest.setAppUrl(url);
                 AppInstallRequestUtil.addPending(context, appInstallRequest);
                 Log.d(TAG, "Added request to pending queue as there is another installation ongoing.");
+                if (AppBundleInstaller.isInstalling()) {
+                    return; //Will call installApp method again once the bundle is installed.
+                }
                 if (!downloadOngoing) {
                     // Probably installation might ongoing
                     int attempt = Preference.getInt(context, APP_INSTALLATION_ATTEMPT);
                     if (attempt >= 1) {
-                        Preference.putInt(context, APP_INSTALLATION_ATTEMPT, 0);
-                        Preference.putInt(context, context.getResources().getString(
-                                R.string.app_install_id), 0);
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_code), null);
+                        Preference.edit(context)
+                                .putInt(APP_INSTALLATION_ATTEMPT, 0)
+                                .putInt(context.getResources().getString(R.string.app_install_id), 0)
+                                .putString(context.getResources().getString(R.string.app_install_code), null)
+                                .apply();
                     } else {
                         Preference.putInt(context, APP_INSTALLATION_ATTEMPT, ++attempt);
                     }
@@ -378,14 +400,38 @@ public class ApplicationManager {
      * @param operationCode - Requested operation code.
      */
     public void setupAppDownload(String url, int operationId, String operationCode) {
-        Preference.putInt(context, context.getResources().getString(
-                R.string.app_install_id), operationId);
+        Preference.edit(context)
+                .putInt(context.getResources().getString(R.string.app_install_id), operationId)
+                .putString(context.getResources().getString(R.string.app_install_code), operationCode)
+                .apply();
+
+        this.appUrl = getAppDownloadUrl(url);
+        if (url.contains(Constants.APP_DOWNLOAD_ENDPOINT)) {
+            url = url.substring(url.lastIndexOf("/"), url.length());
+        }
+
         Preference.putString(context, context.getResources().getString(
-                R.string.app_install_code), operationCode);
+                R.string.app_install_status), context.getResources().getString(
+                R.string.app_status_value_download_started));
+        if (isDownloadManagerAvailable(context) && !url.contains(Constants.HTTPS_PROTOCOL)) {
+            removeExistingFile();
+            downloadViaDownloadManager(this.appUrl, resources.getString(R.string.download_mgr_download_file_name));
+        } else {
+            downloadApp(this.appUrl);
+        }
+    }
 
+    /**
+     * Resolves the URL an application file is downloaded from. Files served by the app manager
+     * are downloaded from the configured app manager host, or from the EMM server.
+     *
+     * @param url - APK Url received with the operation.
+     * @return - Download URL, or null if there is no server to download the file from.
+     */
+    public String getAppDownloadUrl(String url) {
         if (url.contains(Constants.APP_DOWNLOAD_ENDPOINT) && Constants.APP_MANAGER_HOST != null) {
             url = url.substring(url.lastIndexOf("/"), url.length());
-            this.appUrl = Constants.APP_MANAGER_HOST + Constants.APP_DOWNLOAD_ENDPOINT + url;
+            return Constants.APP_MANAGER_HOST + Constants.APP_DOWNLOAD_ENDPOINT + url;
         } else if (url.contains(Constants.APP_DOWNLOAD_ENDPOINT)) {
             url = url.substring(url.lastIndexOf("/"), url.length());
             String ipSaved = Constants.DEFAULT_HOST;
@@ -396,26 +442,12 @@ public class ApplicationManager {
             ServerConfig utils = new ServerConfig();
             if (ipSaved != null && !ipSaved.isEmpty()) {
                 utils.setServerIP(ipSaved);
-                this.appUrl = utils.getAPIServerURL(context) + Constants.APP_DOWNLOAD_ENDPOINT + url;
-            } else {
-                Log.e(TAG, "There is no valid IP to contact the server");
+                return utils.getAPIServerURL(context) + Constants.APP_DOWNLOAD_ENDPOINT + url;
             }
-        } else {
-            this.appUrl = url;
-        }
-
-        Preference.putString(context, context.getResources().getString(
-                R.string.app_install_status), context.getResources().getString(
-                R.string.app_status_value_download_started));
-        if (isDownloadManagerAvailable(context) && !url.contains(Constants.HTTPS_PROTOCOL)) {
-            IntentFilter filter = new IntentFilter(
-                    DownloadManager.ACTION_DOWNLOAD_COMPLETE);
-            context.registerReceiver(downloadReceiver, filter);
-            removeExistingFile();
-            downloadViaDownloadManager(this.appUrl, resources.getString(R.string.download_mgr_download_file_name));
-        } else {
-            downloadApp(this.appUrl);
+            Log.e(TAG, "There is no valid IP to contact the server");
+            return null;
         }
+        return url;
     }
 
     /**
@@ -491,11 +523,11 @@ public class ApplicationManager {
         switch (status) {
             case APP_STATE_DOWNLOAD_STARTED:
                 operation.setStatus(context.getResources().getString(R.string.operation_value_progress));
-                operation.setOperationResponse("Application download started");
+                operation.setOperationResponse(message != null ? message : "Application download started");
                 break;
             case APP_STATE_DOWNLOAD_COMPLETED:
                 operation.setStatus(context.getResources().getString(R.string.operation_value_progress));
-                operation.setOperationResponse("Application download completed");
+                operation.setOperationResponse(message != null ? message : "Application download completed");
                 break;
             case APP_STATE_DOWNLOAD_FAILED:
                 operation.setStatus(context.getResources().getString(R.string.operation_value_error));
@@ -507,7 +539,7 @@ public class ApplicationManager {
                 break;
             case APP_STATE_INSTALLED:
                 operation.setStatus(context.getResources().getString(R.string.operation_value_completed));
-                operation.setOperationResponse("Application installation completed");
+                operation.setOperationResponse(message != null ? message : "Application installation completed");
                 break;
             default:
 
@@ -549,7 +581,7 @@ public class ApplicationManager {
      * @param appName - Name of the application to be downloaded.
      */
     private void downloadViaDownloadManager(String url, String appName) {
-        final DownloadManager downloadManager = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
+        DownloadManager downloadManager = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
         Uri downloadUri = Uri
                 .parse(url);
         DownloadManager.Request request = new DownloadManager.Request(
@@ -569,172 +601,118 @@ public class ApplicationManager {
         // Set the local destination for the downloaded file to a path
         // within the application's external files directory
         request.setDestinationInExternalPublicDir(Environment.DIRECTORY_DOWNLOADS, appName);
-        // Enqueue a new download and same the referenceId
+        // Enqueue a new download and track it until it is complete
         downloadReference = downloadManager.enqueue(request);
-        new Thread(new Runnable() {
+        downloadOngoing = true;
+        DownloadProgressTracker.track(context, downloadReference, new DownloadProgressTracker.ProgressListener() {
             @Override
-            public void run() {
-                boolean downloading = true;
-                int progress = 0;
-                while (downloading) {
-                    downloadOngoing = true;
-                    DownloadManager.Query query = new DownloadManager.Query();
-                    query.setFilterById(downloadReference);
-                    Cursor cursor = downloadManager.query(query);
-                    cursor.moveToFirst();
-                    int bytesDownloaded = cursor.getInt(cursor.getColumnIndex(DownloadManager.
-                                                                                      COLUMN_BYTES_DOWNLOADED_SO_FAR));
-                    int bytesTotal = cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES));
-                    if (cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_STATUS)) == DownloadManager.
-                            STATUS_SUCCESSFUL) {
-                        downloading = false;
-                    }
-                    if (cursor.getInt(cursor.getColumnIndex(DownloadManager.COLUMN_STATUS)) == DownloadManager.
-                            STATUS_FAILED) {
-                        downloading = false;
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_status), context.getResources().getString(
-                                R.string.app_status_value_download_failed));
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_failed_message), "App download failed due to a connection issue.");
-                    }
-                    int downloadProgress = 0;
-                    if (bytesTotal > 0) {
-                        downloadProgress = (int) ((bytesDownloaded * 100l) / bytesTotal);
-                    }
-                    if (downloadProgress != DOWNLOAD_PERCENTAGE_TOTAL) {
-                        progress += DOWNLOADER_INCREMENT;
-                    } else {
-                        progress = DOWNLOAD_PERCENTAGE_TOTAL;
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_status), context.getResources().getString(
-                                R.string.app_status_value_download_completed));
-                    }
+            public void onProgress(long downloadReference, int percentage) {
+                Preference.putString(context, resources.getString(R.string.app_download_progress),
+                                     String.valueOf(percentage));
+            }
 
-                    Preference.putString(context, resources.getString(R.string.app_download_progress),
-                                         String.valueOf(progress));
-                    cursor.close();
-                }
+            @Override
+            public void onCompleted(long downloadReference) {
                 downloadOngoing = false;
+                onDownloadCompleted();
             }
-        }).start();
+
+            @Override
+            public void onFailed(long downloadReference, int reason) {
+                downloadOngoing = false;
+                Log.e(TAG, "App download failed, reason: " + reason);
+                Preference.edit(context)
+                        .putString(resources.getString(R.string.app_install_status),
+                                   resources.getString(R.string.app_status_value_download_failed))
+                        .putString(resources.getString(R.string.app_install_failed_message),
+                                   "App download failed due to a connection issue.")
+                        .apply();
+            }
+        });
     }
 
     /**
-     * Installs or updates an application to the device.
-     *
-     * @param url - APK Url should be passed in as a String.
+     * Installs the file downloaded by the DownloadManager.
      */
-    private void downloadApp(String url) {
-        RequestQueue queue = null;
-        try {
-            queue = ServerUtilities.getCertifiedHttpClient();
-        } catch (IDPTokenManagerException e) {
-            Log.e(TAG, "Failed to retrieve HTTP client", e);
+    private void onDownloadCompleted() {
+        String downloadDirectoryPath = Environment.getExternalStoragePublicDirectory(Environment.
+                                                                                 DIRECTORY_DOWNLOADS).getPath();
+        File file = new File(downloadDirectoryPath, resources.getString(R.string.download_mgr_download_file_name));
+        if (file.exists()) {
+            Preference.putString(context, context.getResources().getString(
+                    R.string.app_install_status), context.getResources().getString(
+                    R.string.app_status_value_download_completed));
+            PackageManager pm = context.getPackageManager();
+            PackageInfo info = pm.getPackageArchiveInfo(file.getPath(), PackageManager.GET_ACTIVITIES);
+            if (info != null && info.packageName != null) {
+                Preference.putString(context, context.getResources().getString(R.string.shared_pref_installed_app),
+                                     info.packageName);
+            }
+            Preference.putString(context, context.getResources().getString(R.string.shared_pref_installed_file),
+                                 resources.getString(R.string.download_mgr_download_file_name));
+            triggerInstallation(Uri.fromFile(file));
+        } else {
+            Preference.putString(context, context.getResources().getString(
+                    R.string.app_install_status), context.getResources().getString(
+                    R.string.app_status_value_download_failed));
+            Preference.putString(context, context.getResources().getString(
+                    R.string.app_install_failed_message), "App file creation failed on the device.");
         }
+    }
 
-
-        InputStreamVolleyRequest request = new InputStreamVolleyRequest(Request.Method.GET, url,
-            new Response.Listener<byte[]>() {
-                @Override
-                public void onResponse(byte[] response) {
-                    if (response != null) {
-                        FileOutputStream outStream = null;
-                        InputStream inStream = null;
-                        try {
-                            String directory = Environment.getExternalStorageDirectory().getPath() +
-                                               resources.getString(R.string.application_mgr_download_location);
-                            File file = new File(directory);
-                            file.mkdirs();
-                            File outputFile = new File(file,
+    /**
+     * Installs or updates an application to the device. The file is streamed to disk on a
+     * worker thread, so that large applications do not have to fit into memory.
+     *
+     * @param url - APK Url should be passed in as a String.
+     */
+    private void downloadApp(final String url) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                downloadOngoing = true;
+                try {
+                    String directory = Environment.getExternalStorageDirectory().getPath() +
+                                       resources.getString(R.string.application_mgr_download_location);
+                    File file = new File(directory);
+                    file.mkdirs();
+                    File outputFile = new File(file,
                                                resources.getString(R.string.application_mgr_download_file_name));
 
-                            if (outputFile.exists()) {
-                                outputFile.delete();
-                            }
-
-                            outStream = new FileOutputStream(outputFile);
-                            inStream = new ByteArrayInputStream(response);
-
-                            byte[] buffer = new byte[BUFFER_SIZE];
-                            int lengthFile;
-
-                            while ((lengthFile = inStream.read(buffer)) != READ_FAILED) {
-                                outStream.write(buffer, BUFFER_OFFSET, lengthFile);
-                                downloadOngoing = true;
-                            }
-
-                            String filePath = directory + resources.getString(R.string.application_mgr_download_file_name);
-                            Preference.putString(context, context.getResources().getString(
-                                    R.string.app_install_status), context.getResources().getString(
-                                    R.string.app_status_value_download_completed));
-                            triggerInstallation(Uri.fromFile(new File(filePath)));
-                        } catch (IOException e) {
-                            String error = "File download/save failure in AppUpdator.";
-                            Log.e(TAG, error, e);
-                            Preference.putString(context, context.getResources().getString(
-                                    R.string.app_install_status), context.getResources().getString(
-                                    R.string.app_status_value_download_failed));
-                            Preference.putString(context, context.getResources().getString(
-                                    R.string.app_install_failed_message), error);
-                        } catch (IllegalArgumentException e) {
-                            String error = "Error occurred while sending 'Get' request due to empty host name";
-                            Log.e(TAG, error);
-                            Preference.putString(context, context.getResources().getString(
-                                    R.string.app_install_status), context.getResources().getString(
-                                    R.string.app_status_value_download_failed));
-                            Preference.putString(context, context.getResources().getString(
-                                    R.string.app_install_failed_message), error);
-                        } finally {
-                            StreamHandler.closeOutputStream(outStream, TAG);
-                            StreamHandler.closeInputStream(inStream, TAG);
-                            downloadOngoing = false;
+                    ApplicationDownloader downloader = new ApplicationDownloader(context, url, outputFile);
+                    downloader.download(new ApplicationDownloader.ProgressListener() {
+                        @Override
+                        public void onProgress(int percentage) {
+                            Preference.putString(context, resources.getString(R.string.app_download_progress),
+                                                 String.valueOf(percentage));
                         }
-                    } else {
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_status), context.getResources().getString(
-                                R.string.app_status_value_download_failed));
-                        Preference.putString(context, context.getResources().getString(
-                                R.string.app_install_failed_message), "File download failed.");
-                    }
-                }
-            },
-            new Response.ErrorListener() {
-                @Override
-                public void onErrorResponse(VolleyError error) {
-                    Log.e(TAG, error.toString());
+                    });
+
+                    Preference.putString(context, context.getResources().getString(
+                            R.string.app_install_status), context.getResources().getString(
+                            R.string.app_status_value_download_completed));
+                    triggerInstallation(Uri.fromFile(outputFile));
+                } catch (AndroidAgentException e) {
+                    String error = "File download/save failure in AppUpdator.";
+                    Log.e(TAG, error, e);
+                    Preference.putString(context, context.getResources().getString(
+                            R.string.app_install_status), context.getResources().getString(
+                            R.string.app_status_value_download_failed));
+                    Preference.putString(context, context.getResources().getString(
+                            R.string.app_install_failed_message), e.getMessage());
+                } catch (IllegalArgumentException e) {
+                    String error = "Error occurred while sending 'Get' request due to empty host name";
+                    Log.e(TAG, error);
                     Preference.putString(context, context.getResources().getString(
                             R.string.app_install_status), context.getResources().getString(
                             R.string.app_status_value_download_failed));
                     Preference.putString(context, context.getResources().getString(
-                            R.string.app_install_failed_message), error.toString());
+                            R.string.app_install_failed_message), error);
+                } finally {
                     downloadOngoing = false;
                 }
-            }, null)
-        {
-            @Override
-            public Map<String, String> getHeaders() throws AuthFailureError {
-                Map<String, String> headers = new HashMap<>();
-                headers.put("Content-Type", "application/json");
-                headers.put("Accept", "*/*");
-                headers.put("User-Agent", "Mozilla/5.0 ( compatible ), Android");
-                return headers;
             }
-
-            @Override
-            protected Response<byte[]> parseNetworkResponse(NetworkResponse response) {
-                //Initialise local responseHeaders map with response headers received
-                responseHeaders = response.headers;
-                //Pass the response data here
-                if ("application/octet-stream".equals(responseHeaders.get("Content-Type"))) {
-                    return Response.success(response.data, HttpHeaderParser.parseCacheHeaders(response));
-                } else {
-                    VolleyError error = new VolleyError("Invalid application file URL.");
-                    return Response.error(error);
-                }
-            }
-        };
-        queue.add(request);
+        }).start();
     }
 
 }
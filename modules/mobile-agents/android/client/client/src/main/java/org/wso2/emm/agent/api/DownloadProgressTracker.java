@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.api;
+
+import android.app.DownloadManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class tracks the progress of downloads enqueued in the DownloadManager. Instead of
+ * querying the DownloadManager in a loop, the downloads are queried when the DownloadManager
+ * reports a change of its content, at most once per {@link #UPDATE_INTERVAL_MILLIS}, and when
+ * it broadcasts that a download is complete. Several downloads can be tracked at once, and the
+ * tracker stops observing the DownloadManager and its thread once no download is left.
+ */
+public class DownloadProgressTracker {
+
+    private static final String TAG = DownloadProgressTracker.class.getName();
+    private static final String THREAD_NAME = "DownloadProgressTracker";
+    private static final Uri DOWNLOADS_URI = Uri.parse("content://downloads/my_downloads");
+    private static final long UPDATE_INTERVAL_MILLIS = 1000;
+    private static final int DOWNLOAD_PERCENTAGE_TOTAL = 100;
+
+    private static DownloadProgressTracker instance;
+
+    private Context context;
+    private DownloadManager downloadManager;
+    private Map<Long, Download> downloads = new HashMap<>();
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+    private BroadcastReceiver receiver;
+    private boolean updateScheduled;
+    private long lastUpdate;
+
+    /**
+     * Receives the progress of a tracked download, on the thread of the tracker.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called when the downloaded percentage of the file changes.
+         *
+         * @param downloadReference - Id of the download in the DownloadManager.
+         * @param percentage        - Downloaded percentage of the file.
+         */
+        void onProgress(long downloadReference, int percentage);
+
+        /**
+         * Called once the file is downloaded, after which the download is no longer tracked.
+         *
+         * @param downloadReference - Id of the download in the DownloadManager.
+         */
+        void onCompleted(long downloadReference);
+
+        /**
+         * Called if the download fails or is removed, after which it is no longer tracked.
+         *
+         * @param downloadReference - Id of the download in the DownloadManager.
+         * @param reason            - Reason reported by the DownloadManager, or -1 if not known.
+         */
+        void onFailed(long downloadReference, int reason);
+    }
+
+    private static class Download {
+        private ProgressListener listener;
+        private int percentage = -1;
+    }
+
+    private DownloadProgressTracker(Context context) {
+        this.context = context;
+        this.downloadManager = (DownloadManager) context.getSystemService(Context.DOWNLOAD_SERVICE);
+    }
+
+    /**
+     * Starts tracking a download enqueued in the DownloadManager.
+     *
+     * @param context           - Application context.
+     * @param downloadReference - Id of the download in the DownloadManager.
+     * @param listener          - Listener to report the progress of the download to.
+     */
+    public static synchronized void track(Context context, long downloadReference, ProgressListener listener) {
+        if (instance == null) {
+            instance = new DownloadProgressTracker(context.getApplicationContext());
+        }
+        instance.add(downloadReference, listener);
+    }
+
+    private synchronized void add(long downloadReference, ProgressListener listener) {
+        Download download = new Download();
+        download.listener = listener;
+        downloads.put(downloadReference, download);
+        if (thread == null) {
+            start();
+        }
+        scheduleUpdate();
+    }
+
+    private void start() {
+        thread = new HandlerThread(THREAD_NAME);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                scheduleUpdate();
+            }
+        };
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                update();
+            }
+        };
+        context.getContentResolver().registerContentObserver(DOWNLOADS_URI, true, observer);
+        context.registerReceiver(receiver, new IntentFilter(DownloadManager.ACTION_DOWNLOAD_COMPLETE), null,
+                                 handler);
+    }
+
+    private void stop() {
+        context.getContentResolver().unregisterContentObserver(observer);
+        context.unregisterReceiver(receiver);
+        handler.removeCallbacksAndMessages(null);
+        thread.quit();
+        thread = null;
+        handler = null;
+        observer = null;
+        receiver = null;
+        updateScheduled = false;
+    }
+
+    /**
+     * Schedules an update of the tracked downloads, unless one is scheduled already, so that
+     * the DownloadManager is queried at most once per interval however often it changes.
+     */
+    private synchronized void scheduleUpdate() {
+        if (updateScheduled || handler == null) {
+            return;
+        }
+        updateScheduled = true;
+        long delay = Math.max(0, lastUpdate + UPDATE_INTERVAL_MILLIS - SystemClock.elapsedRealtime());
+        handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        }, delay);
+    }
+
+    private void update() {
+        long[] references;
+        synchronized (this) {
+            updateScheduled = false;
+            lastUpdate = SystemClock.elapsedRealtime();
+            if (downloads.isEmpty()) {
+                return;
+            }
+            references = new long[downloads.size()];
+            int i = 0;
+            for (Long reference : downloads.keySet()) {
+                references[i++] = reference;
+            }
+        }
+
+        Map<Long, Download> finished = new HashMap<>();
+        Map<Long, Integer> failures = new HashMap<>();
+        Map<Long, Integer> progress = new HashMap<>();
+        Cursor cursor = downloadManager.query(new DownloadManager.Query().setFilterById(references));
+        if (cursor == null) {
+            Log.w(TAG, "DownloadManager query returned no result.");
+            return;
+        }
+        try {
+            int idColumn = cursor.getColumnIndex(DownloadManager.COLUMN_ID);
+            int statusColumn = cursor.getColumnIndex(DownloadManager.COLUMN_STATUS);
+            int reasonColumn = cursor.getColumnIndex(DownloadManager.COLUMN_REASON);
+            int downloadedColumn = cursor.getColumnIndex(DownloadManager.COLUMN_BYTES_DOWNLOADED_SO_FAR);
+            int totalColumn = cursor.getColumnIndex(DownloadManager.COLUMN_TOTAL_SIZE_BYTES);
+            synchronized (this) {
+                Map<Long, Download> remaining = new HashMap<>(downloads);
+                while (cursor.moveToNext()) {
+                    long reference = cursor.getLong(idColumn);
+                    Download download = remaining.remove(reference);
+                    if (download == null) {
+                        continue;
+                    }
+                    int status = cursor.getInt(statusColumn);
+                    if (status == DownloadManager.STATUS_SUCCESSFUL) {
+                        finished.put(reference, download);
+                    } else if (status == DownloadManager.STATUS_FAILED) {
+                        finished.put(reference, download);
+                        failures.put(reference, cursor.getInt(reasonColumn));
+                    } else {
+                        long total = cursor.getLong(totalColumn);
+                        int percentage = total > 0 ?
+                                         (int) (cursor.getLong(downloadedColumn) * DOWNLOAD_PERCENTAGE_TOTAL / total) : 0;
+                        if (percentage != download.percentage) {
+                            download.percentage = percentage;
+                            progress.put(reference, percentage);
+                        }
+                    }
+                }
+                // Downloads which are no longer in the DownloadManager have been removed.
+                for (Map.Entry<Long, Download> entry : remaining.entrySet()) {
+                    finished.put(entry.getKey(), entry.getValue());
+                    failures.put(entry.getKey(), -1);
+                }
+                for (Long reference : finished.keySet()) {
+                    downloads.remove(reference);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (Map.Entry<Long, Integer> entry : progress.entrySet()) {
+            Download download;
+            synchronized (this) {
+                download = downloads.get(entry.getKey());
+            }
+            if (download != null) {
+                download.listener.onProgress(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<Long, Download> entry : finished.entrySet()) {
+            Integer reason = failures.get(entry.getKey());
+            if (reason == null) {
+                entry.getValue().listener.onProgress(entry.getKey(), DOWNLOAD_PERCENTAGE_TOTAL);
+                entry.getValue().listener.onCompleted(entry.getKey());
+            } else {
+                entry.getValue().listener.onFailed(entry.getKey(), reason);
+            }
+        }
+
+        synchronized (this) {
+            if (downloads.isEmpty() && thread != null) {
+                stop();
+            }
+        }
+    }
+
+}
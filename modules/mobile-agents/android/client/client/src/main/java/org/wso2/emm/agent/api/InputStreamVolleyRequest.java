@@ -1,66 +0,0 @@
-/*
- * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
- *
- * WSO2 Inc. licenses this file to you under the Apache License,
- * Version 2.0 (the "License"); you may not use this file except
- * in compliance with the License.
- * You may obtain a copy of the License at
- *
- * http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing,
- * software distributed under the License is distributed on an
- * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
- * KIND, either express or implied. See the License for the
- * specific language governing permissions and limitations
- * under the License.
- */
-package org.wso2.emm.agent.api;
-
-import com.android.volley.NetworkResponse;
-import com.android.volley.Request;
-import com.android.volley.Response;
-import com.android.volley.toolbox.HttpHeaderParser;
-
-import java.util.HashMap;
-import java.util.Map;
-
-/**
- * This is a custom request type extending android Volley to perform file downloads
- * as input streams.
- */
-public class InputStreamVolleyRequest extends Request<byte[]> {
-    private final Response.Listener<byte[]> mListener;
-    private Map<String, String> mParams;
-
-    //create a static map for directly accessing headers
-    public Map<String, String> responseHeaders ;
-
-    public InputStreamVolleyRequest(int method, String mUrl ,Response.Listener<byte[]> listener,
-                                    Response.ErrorListener errorListener, HashMap<String, String> params) {
-        super(method, mUrl, errorListener);
-        setShouldCache(false);
-        mListener = listener;
-        mParams=params;
-    }
-
-    @Override
-    protected Map<String, String> getParams()
-            throws com.android.volley.AuthFailureError {
-        return mParams;
-    }
-
-    @Override
-    protected void deliverResponse(byte[] response) {
-        mListener.onResponse(response);
-    }
-
-    @Override
-    protected Response<byte[]> parseNetworkResponse(NetworkResponse response) {
-        //Initialise local responseHeaders map with response headers received
-        responseHeaders = response.headers;
-        //Pass the response data here
-        return Response.success( response.data, HttpHeaderParser.parseCacheHeaders(response));
-    }
-
-}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.api;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class samples CPU and process statistics straight from /proc, instead of forking a shell
+ * to run top. CPU usage is computed from the difference between two consecutive samples, which
+ * are kept between calls, so that periodic callers only pay for reading a few small files.
+ */
+public class ProcessSampler {
+
+    private static final String TAG = ProcessSampler.class.getName();
+    private static final String PROC_DIRECTORY = "/proc";
+    private static final String PROC_STAT_FILE = "/proc/stat";
+    private static final String PID_STAT_FILE = "stat";
+    private static final String PID_STATUS_FILE = "status";
+    private static final String PID_CMDLINE_FILE = "cmdline";
+    private static final String UID_FIELD = "Uid:";
+    private static final int BUFFER_SIZE = 4096;
+    private static final int ROOT_UID = 0;
+    // Minimum time between the two samples a CPU usage is computed from
+    private static final long MIN_SAMPLE_INTERVAL = 250;
+    // Indexes of the fields following the process name in /proc/[pid]/stat
+    private static final int PID_STAT_UTIME_INDEX = 11;
+    private static final int PID_STAT_STIME_INDEX = 12;
+    private static final int CPU_USER = 0;
+    private static final int CPU_NICE = 1;
+    private static final int CPU_SYSTEM = 2;
+    private static final int CPU_IOWAIT = 4;
+    private static final int CPU_IRQ = 5;
+    private static final int CPU_SOFTIRQ = 6;
+    private static final int CPU_FIELDS = 8;
+
+    private static ProcessSampler processSampler;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long[] cpuTimes = new long[CPU_FIELDS];
+    private long[] previousCpuTimes = new long[CPU_FIELDS];
+    private long sampleTime;
+    private Map<Integer, ProcessStat> processes = new HashMap<>();
+
+    /**
+     * CPU usage of the device since the previous sample, in percentages.
+     */
+    public static class CpuUsage {
+        public int user;
+        public int system;
+        public int ioWait;
+        public int irq;
+    }
+
+    /**
+     * Statistics of a single non-root process.
+     */
+    public static class ProcessStat {
+        public int pid;
+        public String name;
+        public int cpu;
+        private long cpuTime;
+    }
+
+    private ProcessSampler() {
+    }
+
+    public static synchronized ProcessSampler getInstance() {
+        if (processSampler == null) {
+            processSampler = new ProcessSampler();
+        }
+        return processSampler;
+    }
+
+    /**
+     * Samples CPU and process statistics. If the previous sample is too recent or missing, a
+     * baseline is taken first so that the usage covers at least the minimum sample interval.
+     *
+     * @return - Non-root processes and their CPU usage since the previous sample.
+     */
+    public synchronized List<ProcessStat> sample() {
+        if (sampleTime == 0 || SystemClock.elapsedRealtime() - sampleTime < MIN_SAMPLE_INTERVAL) {
+            takeSample();
+            SystemClock.sleep(MIN_SAMPLE_INTERVAL);
+        }
+        return takeSample();
+    }
+
+    /**
+     * Lists the non-root processes without waiting for a CPU usage interval to pass. CPU usage
+     * of processes which were not part of the previous sample is reported as 0.
+     *
+     * @return - Non-root processes.
+     */
+    public synchronized List<ProcessStat> getProcesses() {
+        return takeSample();
+    }
+
+    /**
+     * Returns the CPU usage between the last two samples, see {@link #sample()}.
+     *
+     * @return - CPU usage of the device.
+     */
+    public synchronized CpuUsage getCpuUsage() {
+        long total = 0;
+        long[] delta = new long[CPU_FIELDS];
+        for (int i = 0; i < CPU_FIELDS; i++) {
+            delta[i] = cpuTimes[i] - previousCpuTimes[i];
+            total += delta[i];
+        }
+        CpuUsage usage = new CpuUsage();
+        if (total > 0) {
+            usage.user = (int) ((delta[CPU_USER] + delta[CPU_NICE]) * 100 / total);
+            usage.system = (int) (delta[CPU_SYSTEM] * 100 / total);
+            usage.ioWait = (int) (delta[CPU_IOWAIT] * 100 / total);
+            usage.irq = (int) ((delta[CPU_IRQ] + delta[CPU_SOFTIRQ]) * 100 / total);
+        }
+        return usage;
+    }
+
+    private List<ProcessStat> takeSample() {
+        long[] times = previousCpuTimes;
+        previousCpuTimes = cpuTimes;
+        cpuTimes = times;
+        readCpuTimes(cpuTimes);
+        long totalDelta = 0;
+        for (int i = 0; i < CPU_FIELDS; i++) {
+            totalDelta += cpuTimes[i] - previousCpuTimes[i];
+        }
+        sampleTime = SystemClock.elapsedRealtime();
+
+        Map<Integer, ProcessStat> currentProcesses = new HashMap<>();
+        List<ProcessStat> result = new ArrayList<>();
+        File[] entries = new File(PROC_DIRECTORY).listFiles();
+        if (entries == null) {
+            processes = currentProcesses;
+            return result;
+        }
+        for (File entry : entries) {
+            if (!TextUtils.isDigitsOnly(entry.getName())) {
+                continue;
+            }
+            int pid = Integer.parseInt(entry.getName());
+            ProcessStat previous = processes.get(pid);
+            ProcessStat stat = new ProcessStat();
+            stat.pid = pid;
+            if (previous != null) {
+                // Processes are only sampled if they do not run as root, which does not change
+                stat.name = previous.name;
+            } else {
+                if (readUid(entry) == ROOT_UID) {
+                    continue;
+                }
+                stat.name = readName(entry);
+                if (stat.name == null) {
+                    continue;
+                }
+            }
+            stat.cpuTime = readProcessCpuTime(entry);
+            if (stat.cpuTime < 0) {
+                continue;
+            }
+            if (previous != null && totalDelta > 0) {
+                stat.cpu = (int) ((stat.cpuTime - previous.cpuTime) * 100 / totalDelta);
+            }
+            currentProcesses.put(pid, stat);
+            result.add(stat);
+        }
+        processes = currentProcesses;
+        return result;
+    }
+
+    private void readCpuTimes(long[] times) {
+        int length = read(new File(PROC_STAT_FILE));
+        // The first line is the aggregate of all CPUs: "cpu  user nice system idle iowait irq softirq steal ..."
+        int position = skipToken(0, length);
+        for (int i = 0; i < CPU_FIELDS; i++) {
+            position = skipSpaces(position, length);
+            if (position >= length || buffer[position] == '\n') {
+                times[i] = 0;
+                continue;
+            }
+            times[i] = parseLong(position, length);
+            position = skipToken(position, length);
+        }
+    }
+
+    private long readProcessCpuTime(File processDirectory) {
+        int length = read(new File(processDirectory, PID_STAT_FILE));
+        // The process name is enclosed in brackets and may contain spaces, hence fields are counted after it
+        int position = length - 1;
+        while (position >= 0 && buffer[position] != ')') {
+            position--;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        position++;
+        long cpuTime = 0;
+        for (int field = 0; field <= PID_STAT_STIME_INDEX; field++) {
+            position = skipSpaces(position, length);
+            if (position >= length) {
+                return -1;
+            }
+            if (field == PID_STAT_UTIME_INDEX || field == PID_STAT_STIME_INDEX) {
+                cpuTime += parseLong(position, length);
+            }
+            position = skipToken(position, length);
+        }
+        return cpuTime;
+    }
+
+    private int readUid(File processDirectory) {
+        int length = read(new File(processDirectory, PID_STATUS_FILE));
+        String status = new String(buffer, 0, length);
+        int position = status.indexOf(UID_FIELD);
+        if (position < 0) {
+            return ROOT_UID;
+        }
+        position = skipSpaces(position + UID_FIELD.length(), length);
+        return (int) parseLong(position, length);
+    }
+
+    private String readName(File processDirectory) {
+        int length = read(new File(processDirectory, PID_CMDLINE_FILE));
+        int end = 0;
+        while (end < length && buffer[end] != 0) {
+            end++;
+        }
+        if (end == 0) {
+            return null;
+        }
+        return new String(buffer, 0, end).trim();
+    }
+
+    /**
+     * Reads the beginning of a file into the shared buffer.
+     *
+     * @param file - File to be read.
+     * @return - Number of bytes read, which is 0 if the file cannot be read.
+     */
+    private int read(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int length = 0;
+            int read;
+            while (length < BUFFER_SIZE && (read = in.read(buffer, length, BUFFER_SIZE - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            // The process has exited, or its details are not accessible.
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close " + file.getPath(), e);
+                }
+            }
+        }
+    }
+
+    private int skipSpaces(int position, int length) {
+        while (position < length && (buffer[position] == ' ' || buffer[position] == '\t')) {
+            position++;
+        }
+        return position;
+    }
+
+    private int skipToken(int position, int length) {
+        while (position < length && buffer[position] != ' ' && buffer[position] != '\t' &&
+               buffer[position] != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private long parseLong(int position, int length) {
+        long value = 0;
+        while (position < length && buffer[position] >= '0' && buffer[position] <= '9') {
+            value = value * 10 + (buffer[position] - '0');
+            position++;
+        }
+        return value;
+    }
+
+}
@@ -20,11 +20,9 @@ package org.wso2.emm.agent.api;
 
 import android.app.ActivityManager;
 import android.content.Context;
+import android.os.Debug;
 import android.os.Environment;
-import android.text.TextUtils;
 import android.util.Log;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.wso2.emm.agent.AndroidAgentException;
 import org.wso2.emm.agent.beans.Application;
 import org.wso2.emm.agent.beans.Device;
@@ -42,79 +40,55 @@ import java.util.Map;
 public class RuntimeInfo {
     Context context;
     private static final String TAG = RuntimeInfo.class.getName();
-    private ObjectMapper mapper;
-    String[] topCommandRows;
+    private static final String CPU_USER = "User";
+    private static final String CPU_SYSTEM = "System";
+    private static final String CPU_IOWAIT = "IOW";
+    private static final String CPU_IRQ = "IRQ";
+    private static final String PERCENTAGE = "%";
+    private ProcessSampler processSampler;
 
     public RuntimeInfo(Context context) {
         this.context = context;
-        mapper = new ObjectMapper();
-        String resultOfTop = executeCommand(new String[]{"top", "-n", "1"});
-        topCommandRows = resultOfTop.split("\n");
-    }
-
-    public RuntimeInfo(Context context, String[] command) {
-        this.context = context;
-        mapper = new ObjectMapper();
-        String resultOfTop = executeCommand(command);
-        topCommandRows = resultOfTop.split("\n");
+        processSampler = ProcessSampler.getInstance();
     }
 
     public List<Device.Property> getCPUInfo() throws AndroidAgentException {
         List<Device.Property> properties = new ArrayList<>();
-        Device.Property property;
+        processSampler.sample();
+        ProcessSampler.CpuUsage usage = processSampler.getCpuUsage();
 
-        for (String topCommandRow : topCommandRows) {
-            if (topCommandRow != null && !topCommandRow.isEmpty()) {
-                String[] columns = topCommandRow.split(", ");
-                for (String column : columns) {
-                    String[] keyValue = column.split(" ");
-                    property = new Device.Property();
-                    property.setName(keyValue[0]);
-                    property.setValue(keyValue[1]);
-                    properties.add(property);
-                }
-                break;
-            }
-        }
+        properties.add(getPercentageProperty(CPU_USER, usage.user));
+        properties.add(getPercentageProperty(CPU_SYSTEM, usage.system));
+        properties.add(getPercentageProperty(CPU_IOWAIT, usage.ioWait));
+        properties.add(getPercentageProperty(CPU_IRQ, usage.irq));
         return properties;
     }
 
     public Map<String, Application> getAppMemory() throws AndroidAgentException {
         Map<String, Application> applications = new HashMap<>();
-        Application appData;
+        List<ProcessSampler.ProcessStat> processes = processSampler.getProcesses();
+        if (processes.isEmpty()) {
+            return applications;
+        }
 
+        int[] pids = new int[processes.size()];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = processes.get(i).pid;
+        }
         ActivityManager activityManager =
                 (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        // Memory details of all processes are retrieved in a single call to the activity manager.
+        Debug.MemoryInfo[] memoryInfo = activityManager.getProcessMemoryInfo(pids);
 
-        for (String topCommandRow : topCommandRows) {
-            if (topCommandRow != null && !topCommandRow.isEmpty()
-                && !topCommandRow.contains(" root ")) {
-                String[] columns = topCommandRow.replaceFirst("^\\s*", "").split(" ");
-                String pidColumnValue = columns[0].trim();
-
-                if (!pidColumnValue.isEmpty() && TextUtils.isDigitsOnly(pidColumnValue)) {
-
-                    appData = new Application();
-                    appData.setPackageName(columns[columns.length - 1]);
-
-                    int pid = Integer.parseInt(pidColumnValue);
-                    appData.setPid(Integer.parseInt(columns[0]));
-
-                    int totalPSS = activityManager.
-                            getProcessMemoryInfo(new int[]{pid})[0].getTotalPss();
-                    appData.setPss(totalPSS);
-
-                    int totalPrivateDirty = activityManager.
-                            getProcessMemoryInfo(new int[]{pid})[0].getTotalPrivateDirty();
-                    appData.setUss(totalPrivateDirty);
-
-                    int totalSharedDirty = activityManager.getProcessMemoryInfo(new int[]{pid})[0].
-                            getTotalSharedDirty();
-                    appData.setSharedDirty(totalSharedDirty);
-
-                    applications.put(appData.getPackageName(), appData);
-                }
-            }
+        Application appData;
+        for (int i = 0; i < pids.length && i < memoryInfo.length; i++) {
+            appData = new Application();
+            appData.setPackageName(processes.get(i).name);
+            appData.setPid(pids[i]);
+            appData.setPss(memoryInfo[i].getTotalPss());
+            appData.setUss(memoryInfo[i].getTotalPrivateDirty());
+            appData.setSharedDirty(memoryInfo[i].getTotalSharedDirty());
+            applications.put(appData.getPackageName(), appData);
         }
         return applications;
     }
@@ -122,36 +96,24 @@ public class RuntimeInfo {
     public Application getHighestCPU() {
         Application appData = null;
 
-        for (String topCommandRow : topCommandRows) {
-            if (topCommandRow != null && !topCommandRow.isEmpty()
-                && !topCommandRow.contains(" root ")) {
-                String[] columns = topCommandRow.replaceFirst("^\\s*", "").split(" ");
-                String pidColumnValue = columns[0].trim();
-
-                if (!pidColumnValue.isEmpty() && TextUtils.isDigitsOnly(pidColumnValue)) {
-
-                    appData = new Application();
-                    appData.setPackageName(columns[columns.length - 1]);
-                    appData.setPid(Integer.parseInt(columns[0]));
-                    for (String column : columns) {
-                        if (column != null) {
-                            String columnValue = column.trim();
-                            if (columnValue.contains("%")) {
-                                String percentage = columnValue.replace("%", "");
-                                if (!percentage.isEmpty() && TextUtils.isDigitsOnly(percentage)) {
-                                    appData.setCpu(Integer.parseInt(percentage));
-                                }
-                                break;
-                            }
-                        }
-                    }
-
-                }
+        for (ProcessSampler.ProcessStat process : processSampler.sample()) {
+            if (appData == null || process.cpu > appData.getCpu()) {
+                appData = new Application();
+                appData.setPackageName(process.name);
+                appData.setPid(process.pid);
+                appData.setCpu(process.cpu);
             }
         }
         return appData;
     }
 
+    private Device.Property getPercentageProperty(String name, int value) {
+        Device.Property property = new Device.Property();
+        property.setName(name);
+        property.setValue(value + PERCENTAGE);
+        return property;
+    }
+
     /**
      * Returns the device LogCat
      */
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.wso2.emm.agent.beans.AppInstallRequest;
+import org.wso2.emm.agent.utils.Constants;
+import org.wso2.emm.agent.utils.DatabaseHelper;
+
+/**
+ * This class represents the queue of application installations waiting for the ongoing installation
+ * to complete. A request moves from queued to downloading to installing, and is removed once its
+ * installation is done, each step being a single indexed row update.
+ */
+public class AppInstallRequestDAO {
+
+    private SQLiteDatabase db;
+    private DatabaseHelper dbHelper;
+
+    public AppInstallRequestDAO(Context context) {
+        dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public synchronized void open() throws SQLException {
+        db = dbHelper.getWritableDatabase();
+        if(db != null){
+            db.beginTransaction();
+        }
+    }
+
+    public void close() {
+        if(db != null && db.isOpen()){
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Queues an installation request. A request for the same operation and application which is
+     * already in the queue keeps its place, and is queued again if it had been taken.
+     *
+     * @param request - Installation request.
+     */
+    public void addRequest(AppInstallRequest request) {
+        ContentValues values = new ContentValues();
+        values.put(Constants.AppInstallRequestTable.CODE, request.getApplicationOperationCode());
+        values.put(Constants.AppInstallRequestTable.STATUS, Constants.AppInstallRequestTable.STATUS_QUEUED);
+        int updated = 0;
+        if (request.getAppUrl() != null) {
+            updated = db.update(Constants.AppInstallRequestTable.NAME, values,
+                                Constants.AppInstallRequestTable.OPERATION_ID + " = ? AND " +
+                                Constants.AppInstallRequestTable.APP_URL + " = ?",
+                                new String[]{String.valueOf(request.getApplicationOperationId()),
+                                             request.getAppUrl()});
+        }
+        if (updated == 0) {
+            values.put(Constants.AppInstallRequestTable.OPERATION_ID, request.getApplicationOperationId());
+            values.put(Constants.AppInstallRequestTable.APP_URL, request.getAppUrl());
+            db.insert(Constants.AppInstallRequestTable.NAME, null, values);
+        }
+    }
+
+    /**
+     * Takes the oldest queued request, which is marked as downloading.
+     *
+     * @return - Installation request, or null if no request is queued.
+     */
+    public AppInstallRequest takeRequest() {
+        Cursor result = db.query(Constants.AppInstallRequestTable.NAME,
+                                 new String[]{Constants.AppInstallRequestTable.ID,
+                                              Constants.AppInstallRequestTable.OPERATION_ID,
+                                              Constants.AppInstallRequestTable.CODE,
+                                              Constants.AppInstallRequestTable.APP_URL},
+                                 Constants.AppInstallRequestTable.STATUS + " = ?",
+                                 new String[]{Constants.AppInstallRequestTable.STATUS_QUEUED},
+                                 null, null, Constants.AppInstallRequestTable.ID, "1");
+        AppInstallRequest request = null;
+        long id = 0;
+        if (result.moveToFirst()) {
+            id = result.getLong(0);
+            request = new AppInstallRequest();
+            request.setApplicationOperationId(result.getInt(1));
+            request.setApplicationOperationCode(result.getString(2));
+            request.setAppUrl(result.getString(3));
+        }
+        result.close();
+        if (request != null) {
+            ContentValues values = new ContentValues();
+            values.put(Constants.AppInstallRequestTable.STATUS, Constants.AppInstallRequestTable.STATUS_DOWNLOADING);
+            db.update(Constants.AppInstallRequestTable.NAME, values,
+                      Constants.AppInstallRequestTable.ID + " = ?", new String[]{String.valueOf(id)});
+        }
+        return request;
+    }
+
+    /**
+     * @return - Number of requests waiting to be taken.
+     */
+    public long getQueuedCount() {
+        return DatabaseUtils.queryNumEntries(db, Constants.AppInstallRequestTable.NAME,
+                                             Constants.AppInstallRequestTable.STATUS + " = ?",
+                                             new String[]{Constants.AppInstallRequestTable.STATUS_QUEUED});
+    }
+
+    /**
+     * Marks the downloading requests of an operation as installing.
+     *
+     * @param operationId - Id of the installation operation.
+     * @return - Number of requests updated.
+     */
+    public int setInstalling(int operationId) {
+        ContentValues values = new ContentValues();
+        values.put(Constants.AppInstallRequestTable.STATUS, Constants.AppInstallRequestTable.STATUS_INSTALLING);
+        return db.update(Constants.AppInstallRequestTable.NAME, values,
+                         Constants.AppInstallRequestTable.OPERATION_ID + " = ? AND " +
+                         Constants.AppInstallRequestTable.STATUS + " = ?",
+                         new String[]{String.valueOf(operationId),
+                                      Constants.AppInstallRequestTable.STATUS_DOWNLOADING});
+    }
+
+    /**
+     * Queues again the requests which were taken but are not being installed, e.g. as the agent
+     * was stopped in between.
+     *
+     * @param activeOperationId - Id of the installation operation in progress, or 0 if none.
+     * @return - Number of requests queued again.
+     */
+    public int requeueInterrupted(int activeOperationId) {
+        ContentValues values = new ContentValues();
+        values.put(Constants.AppInstallRequestTable.STATUS, Constants.AppInstallRequestTable.STATUS_QUEUED);
+        return db.update(Constants.AppInstallRequestTable.NAME, values,
+                         Constants.AppInstallRequestTable.STATUS + " != ? AND " +
+                         Constants.AppInstallRequestTable.OPERATION_ID + " != ?",
+                         new String[]{Constants.AppInstallRequestTable.STATUS_QUEUED,
+                                      String.valueOf(activeOperationId)});
+    }
+
+    /**
+     * Removes the requests of an operation whose installation is done.
+     *
+     * @param operationId - Id of the installation operation.
+     * @return - Number of requests removed.
+     */
+    public int removeRequests(int operationId) {
+        return db.delete(Constants.AppInstallRequestTable.NAME,
+                         Constants.AppInstallRequestTable.OPERATION_ID + " = ? AND " +
+                         Constants.AppInstallRequestTable.STATUS + " != ?",
+                         new String[]{String.valueOf(operationId),
+                                      Constants.AppInstallRequestTable.STATUS_QUEUED});
+    }
+
+}
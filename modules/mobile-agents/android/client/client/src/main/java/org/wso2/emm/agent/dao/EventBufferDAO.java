@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.wso2.emm.agent.events.beans.EventPayload;
+import org.wso2.emm.agent.utils.Constants;
+import org.wso2.emm.agent.utils.DatabaseHelper;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class represents the events which did not fit into the in-memory event buffer, and are
+ * waiting to be published, oldest first.
+ */
+public class EventBufferDAO {
+
+    private SQLiteDatabase db;
+    private DatabaseHelper dbHelper;
+
+    public EventBufferDAO(Context context) {
+        dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public synchronized void open() throws SQLException {
+        db = dbHelper.getWritableDatabase();
+        if(db != null){
+            db.beginTransaction();
+        }
+    }
+
+    public void close() {
+        if(db != null && db.isOpen()){
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Stores events to be published later.
+     *
+     * @param events - Events to be stored.
+     */
+    public void addEvents(List<EventPayload> events) {
+        for (EventPayload event : events) {
+            ContentValues values = new ContentValues();
+            values.put(Constants.EventBufferTable.TYPE, event.getType());
+            values.put(Constants.EventBufferTable.PAYLOAD, event.getPayload());
+            db.insert(Constants.EventBufferTable.NAME, null, values);
+        }
+    }
+
+    /**
+     * Returns the oldest stored events, which are kept until they are removed once published.
+     *
+     * @param limit - Maximum number of events to be returned.
+     * @return - Stored events keyed by their row id, oldest first.
+     */
+    public Map<Long, EventPayload> getEvents(int limit) {
+        Map<Long, EventPayload> events = new LinkedHashMap<>();
+        Cursor result = db.query(Constants.EventBufferTable.NAME,
+                                 new String[]{Constants.EventBufferTable.ID,
+                                              Constants.EventBufferTable.TYPE,
+                                              Constants.EventBufferTable.PAYLOAD},
+                                 null, null, null, null, Constants.EventBufferTable.ID,
+                                 String.valueOf(limit));
+        while (result.moveToNext()) {
+            EventPayload event = new EventPayload();
+            event.setType(result.getString(1));
+            event.setPayload(result.getString(2));
+            events.put(result.getLong(0), event);
+        }
+        result.close();
+        return events;
+    }
+
+    /**
+     * Removes the events which have been published.
+     *
+     * @param ids - Row ids of the published events.
+     * @return - Number of events removed.
+     */
+    public int removeEvents(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        StringBuilder idList = new StringBuilder();
+        Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            idList.append(iterator.next());
+            if (iterator.hasNext()) {
+                idList.append(",");
+            }
+        }
+        return db.delete(Constants.EventBufferTable.NAME,
+                         Constants.EventBufferTable.ID + " IN (" + idList.toString() + ")", null);
+    }
+
+    /**
+     * @return - Number of stored events.
+     */
+    public long getEventCount() {
+        return DatabaseUtils.queryNumEntries(db, Constants.EventBufferTable.NAME);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.dao;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.wso2.emm.agent.AndroidAgentException;
+import org.wso2.emm.agent.beans.Operation;
+import org.wso2.emm.agent.utils.Constants;
+import org.wso2.emm.agent.utils.DatabaseHelper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class represents the outbox which persists operation results until the server has acknowledged them.
+ */
+public class OperationResultDAO {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    // Claim times of the outbox entries which are being sent by a notification request, so that
+    // concurrent requests do not send them again. They are released if the request fails, or
+    // once the claim has timed out, and are not persisted as nothing is in flight once the
+    // process has been restarted.
+    private static final Map<Long, Long> claimedIds = new HashMap<>();
+
+    private SQLiteDatabase db;
+    private DatabaseHelper dbHelper;
+
+    public OperationResultDAO(Context context) {
+        dbHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public synchronized void open() throws SQLException {
+        db = dbHelper.getWritableDatabase();
+        if(db != null){
+            db.beginTransaction();
+        }
+    }
+
+    public void close() {
+        if(db != null && db.isOpen()){
+            db.setTransactionSuccessful();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Appends the result of an operation to the outbox.
+     *
+     * @param operation - Operation carrying the result to be sent to the server.
+     * @throws AndroidAgentException - If the result cannot be serialized.
+     */
+    public void addResult(Operation operation) throws AndroidAgentException {
+        String payload;
+        try {
+            payload = mapper.writeValueAsString(operation);
+        } catch (JsonProcessingException e) {
+            throw new AndroidAgentException("Issue in json generation", e);
+        }
+        ContentValues values = new ContentValues();
+        values.put(Constants.OperationResultTable.OPERATION_ID, operation.getId());
+        values.put(Constants.OperationResultTable.CODE, operation.getCode());
+        values.put(Constants.OperationResultTable.PAYLOAD, payload);
+        values.put(Constants.OperationResultTable.SIZE, payload.length());
+        db.insert(Constants.OperationResultTable.NAME, null, values);
+    }
+
+    /**
+     * Claims the oldest pending results which are not claimed by another notification request,
+     * in the order they were added, whose serialized size fits into the given limit. The first
+     * of them is always returned even if it exceeds the limit on its own, so that the outbox can
+     * always make progress. The results stay claimed until they are removed or released, or
+     * until the claim has timed out.
+     *
+     * @param maxSize - Maximum number of characters of the results to be returned.
+     * @return - Serialized results keyed by their outbox entry id.
+     */
+    public Map<Long, String> claimPendingResults(long maxSize) {
+        Map<Long, String> results = new LinkedHashMap<>();
+        synchronized (claimedIds) {
+            Cursor result = db.query(Constants.OperationResultTable.NAME,
+                                     new String[]{Constants.OperationResultTable.ID,
+                                                  Constants.OperationResultTable.SIZE,
+                                                  Constants.OperationResultTable.PAYLOAD},
+                                     null, null, null, null, Constants.OperationResultTable.ID);
+            long now = SystemClock.elapsedRealtime();
+            long size = 0;
+            result.moveToFirst();
+            while (!result.isAfterLast()) {
+                Long claimedAt = claimedIds.get(result.getLong(0));
+                if (claimedAt == null || now - claimedAt > Constants.OPERATION_RESULT_CLAIM_TIMEOUT) {
+                    size += result.getLong(1);
+                    if (size > maxSize && !results.isEmpty()) {
+                        break;
+                    }
+                    results.put(result.getLong(0), result.getString(2));
+                }
+                result.moveToNext();
+            }
+            result.close();
+            for (Long id : results.keySet()) {
+                claimedIds.put(id, now);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Releases results which could not be sent, so that they are sent with the next request.
+     *
+     * @param ids - Outbox entry ids of the claimed results.
+     */
+    public static void releaseResults(Collection<Long> ids) {
+        synchronized (claimedIds) {
+            claimedIds.keySet().removeAll(ids);
+        }
+    }
+
+    /**
+     * @return - Number of results in the outbox.
+     */
+    public long getResultCount() {
+        return DatabaseUtils.queryNumEntries(db, Constants.OperationResultTable.NAME);
+    }
+
+    /**
+     * Removes the results which have been acknowledged by the server.
+     *
+     * @param ids - Outbox entry ids of the acknowledged results.
+     * @return - Number of results removed.
+     */
+    public int removeResults(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        StringBuilder idList = new StringBuilder();
+        Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            idList.append(iterator.next());
+            if (iterator.hasNext()) {
+                idList.append(",");
+            }
+        }
+        int removed = db.delete(Constants.OperationResultTable.NAME,
+                                Constants.OperationResultTable.ID + " IN (" + idList.toString() + ")", null);
+        releaseResults(ids);
+        return removed;
+    }
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.emm.agent.events;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.wso2.emm.agent.dao.EventBufferDAO;
+import org.wso2.emm.agent.events.beans.EventPayload;
+import org.wso2.emm.agent.events.publisher.DataPublisher;
+import org.wso2.emm.agent.events.publisher.HttpDataPublisher;
+import org.wso2.emm.agent.utils.Constants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Events published by the listeners go through this class, which publishes them in batches
+ * instead of one request per event. Events are kept in a bounded ring buffer in memory, and
+ * moved to the database when the buffer is full. The buffered events are published once there
+ * are enough of them to fill a batch, or once the flush interval has passed since the first of
+ * them. An event identical to the previous one within the same interval is dropped, and so are
+ * the events which do not fit into the database either.
+ * <p>
+ * One batch is published at a time. Stored events are only removed from the database once
+ * their batch has been published, and the events of a failed batch which were still in memory
+ * are moved to the database, so that they are published again after a growing delay. If batch
+ * publishing is disabled, every event is published on its own as soon as it is received.
+ */
+public class EventPipeline {
+
+    private static final String TAG = EventPipeline.class.getName();
+
+    private static EventPipeline instance;
+
+    private Context context;
+    private DataPublisher publisher;
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private EventPayload[] buffer = new EventPayload[Constants.EventListeners.EVENT_BUFFER_CAPACITY];
+    private int head;
+    private int size;
+    private List<EventPayload> spilling = new ArrayList<>();
+    private EventPayload lastEvent;
+    private ScheduledFuture<?> scheduledFlush;
+    // Only accessed by the executor thread
+    private long storedEvents;
+    private Batch inFlight;
+    private long retryDelay;
+    private long retryAt;
+
+    private AtomicLong publishedCount = new AtomicLong();
+    private AtomicLong batchCount = new AtomicLong();
+    private AtomicLong duplicateCount = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * A batch of events being published.
+     */
+    private static class Batch {
+        // Row ids of the events which are stored in the database
+        private Collection<Long> storedIds;
+        // Events which were taken from memory
+        private List<EventPayload> memoryEvents;
+        private int size;
+    }
+
+    private EventPipeline(Context context) {
+        this.context = context;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loadStoredEvents();
+            }
+        });
+    }
+
+    public static synchronized EventPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new EventPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Buffers an event to be published with the next batch.
+     *
+     * @param eventPayload - Event to be published.
+     */
+    public synchronized void publish(EventPayload eventPayload) {
+        if (lastEvent != null && isSame(lastEvent, eventPayload)) {
+            duplicateCount.incrementAndGet();
+            return;
+        }
+        lastEvent = eventPayload;
+        if (size == buffer.length) {
+            spill();
+        }
+        buffer[(head + size) % buffer.length] = eventPayload;
+        size++;
+        if (!Constants.EventListeners.EVENT_BATCH_PUBLISHING_ENABLED ||
+            size + spilling.size() >= Constants.EventListeners.EVENT_BATCH_SIZE) {
+            flushNow();
+        } else if (scheduledFlush == null) {
+            scheduleFlush(Constants.EventListeners.EVENT_FLUSH_INTERVAL);
+        }
+    }
+
+    /**
+     * @return - Number of events published so far.
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return - Number of batches published so far.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * @return - Number of events dropped as duplicates of the previous event.
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return - Number of events dropped as neither the buffer nor the database had room for them.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private static boolean isSame(EventPayload first, EventPayload second) {
+        return equals(first.getType(), second.getType()) && equals(first.getPayload(), second.getPayload());
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    private static int getBatchSize() {
+        return Constants.EventListeners.EVENT_BATCH_PUBLISHING_ENABLED ?
+               Constants.EventListeners.EVENT_BATCH_SIZE : 1;
+    }
+
+    /**
+     * Moves the older half of the buffer to the database, on the executor thread.
+     */
+    private void spill() {
+        int count = buffer.length / 2;
+        for (int i = 0; i < count; i++) {
+            spilling.add(buffer[head]);
+            buffer[head] = null;
+            head = (head + 1) % buffer.length;
+        }
+        size -= count;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                storeSpilledEvents();
+            }
+        });
+    }
+
+    private void flushNow() {
+        scheduleFlush(0);
+    }
+
+    private synchronized void scheduleFlush(long delay) {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void loadStoredEvents() {
+        EventBufferDAO eventBufferDAO = new EventBufferDAO(context);
+        try {
+            eventBufferDAO.open();
+            storedEvents = eventBufferDAO.getEventCount();
+        } finally {
+            eventBufferDAO.close();
+        }
+        if (storedEvents > 0) {
+            flushNow();
+        }
+    }
+
+    private void storeSpilledEvents() {
+        List<EventPayload> events;
+        synchronized (this) {
+            events = spilling;
+            spilling = new ArrayList<>();
+        }
+        storeEvents(events);
+    }
+
+    private void storeEvents(List<EventPayload> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long room = Constants.EventListeners.EVENT_SPILL_CAPACITY - storedEvents;
+        if (events.size() > room) {
+            int dropped = events.size() - (int) Math.max(0, room);
+            droppedCount.addAndGet(dropped);
+            Log.w(TAG, "Event buffer is full, dropping " + dropped + " events.");
+            events = events.subList(0, events.size() - dropped);
+        }
+        EventBufferDAO eventBufferDAO = new EventBufferDAO(context);
+        try {
+            eventBufferDAO.open();
+            eventBufferDAO.addEvents(events);
+        } finally {
+            eventBufferDAO.close();
+        }
+        storedEvents += events.size();
+    }
+
+    /**
+     * Publishes the next batch, made of the events stored in the database, the events being
+     * moved there and the events in the buffer, oldest first. Nothing is published while a
+     * batch is in flight, or before the retry delay of a failed batch has passed.
+     */
+    private void flush() {
+        synchronized (this) {
+            scheduledFlush = null;
+        }
+        if (inFlight != null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (now < retryAt) {
+            scheduleFlush(retryAt - now);
+            return;
+        }
+        int batchSize = getBatchSize();
+        List<EventPayload> events = new ArrayList<>();
+        Map<Long, EventPayload> stored = null;
+        if (storedEvents > 0) {
+            EventBufferDAO eventBufferDAO = new EventBufferDAO(context);
+            try {
+                eventBufferDAO.open();
+                stored = eventBufferDAO.getEvents(batchSize);
+            } finally {
+                eventBufferDAO.close();
+            }
+            events.addAll(stored.values());
+        }
+        List<EventPayload> memoryEvents = new ArrayList<>();
+        synchronized (this) {
+            lastEvent = null;
+            while (events.size() + memoryEvents.size() < batchSize && !spilling.isEmpty()) {
+                memoryEvents.add(spilling.remove(0));
+            }
+            while (events.size() + memoryEvents.size() < batchSize && size > 0) {
+                memoryEvents.add(buffer[head]);
+                buffer[head] = null;
+                head = (head + 1) % buffer.length;
+                size--;
+            }
+        }
+        events.addAll(memoryEvents);
+        if (events.isEmpty()) {
+            return;
+        }
+
+        final Batch batch = new Batch();
+        batch.storedIds = stored != null ? stored.keySet() : new ArrayList<Long>();
+        batch.memoryEvents = memoryEvents;
+        batch.size = events.size();
+        inFlight = batch;
+        if (publisher == null) {
+            publisher = new HttpDataPublisher();
+        }
+        publisher.publish(events, new DataPublisher.PublishCallBack() {
+            @Override
+            public void onPublished() {
+                complete(batch, true);
+            }
+
+            @Override
+            public void onFailed() {
+                complete(batch, false);
+            }
+        });
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onCompleted(batch, false);
+            }
+        }, Constants.EventListeners.EVENT_PUBLISH_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void complete(final Batch batch, final boolean published) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onCompleted(batch, published);
+            }
+        });
+    }
+
+    /**
+     * Removes the events of a published batch from the database, or keeps the events of a
+     * failed one there, and goes on with the next batch. Called on the executor thread, once
+     * per batch, the outcome of a batch which has timed out being ignored.
+     */
+    private void onCompleted(Batch batch, boolean published) {
+        if (inFlight != batch) {
+            return;
+        }
+        inFlight = null;
+        if (!published) {
+            Log.w(TAG, "Failed to publish " + batch.size + " events, retrying later.");
+            storeEvents(batch.memoryEvents);
+            retryDelay = retryDelay == 0 ? Constants.EventListeners.EVENT_FLUSH_INTERVAL :
+                         Math.min(retryDelay * 2, Constants.EventListeners.EVENT_MAX_RETRY_INTERVAL);
+            retryAt = SystemClock.elapsedRealtime() + retryDelay;
+            scheduleFlush(retryDelay);
+            return;
+        }
+        if (!batch.storedIds.isEmpty()) {
+            EventBufferDAO eventBufferDAO = new EventBufferDAO(context);
+            try {
+                eventBufferDAO.open();
+                eventBufferDAO.removeEvents(batch.storedIds);
+            } finally {
+                eventBufferDAO.close();
+            }
+            storedEvents -= batch.storedIds.size();
+        }
+        retryDelay = 0;
+        retryAt = 0;
+        publishedCount.addAndGet(batch.size);
+        batchCount.incrementAndGet();
+        if (Constants.DEBUG_MODE_ENABLED) {
+            Log.d(TAG, "Published " + batch.size + " events, " + publishedCount.get() + " events in " +
+                       batchCount.get() + " batches so far, " + duplicateCount.get() + " duplicates and " +
+                       droppedCount.get() + " dropped.");
+        }
+        synchronized (this) {
+            int buffered = size + spilling.size();
+            if (storedEvents > 0 || buffered >= getBatchSize()) {
+                flushNow();
+            } else if (buffered > 0 && scheduledFlush == null) {
+                scheduleFlush(Constants.EventListeners.EVENT_FLUSH_INTERVAL);
+            }
+        }
+    }
+
+}
@@ -24,10 +24,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.util.Log;
 import org.wso2.emm.agent.AndroidAgentException;
+import org.wso2.emm.agent.events.EventPipeline;
 import org.wso2.emm.agent.events.EventRegistry;
 import org.wso2.emm.agent.events.beans.ApplicationStatus;
 import org.wso2.emm.agent.events.beans.EventPayload;
-import org.wso2.emm.agent.events.publisher.HttpDataPublisher;
 import org.wso2.emm.agent.utils.CommonUtils;
 import org.wso2.emm.agent.utils.Constants;
 
@@ -63,8 +63,7 @@ public class ApplicationStateListener extends BroadcastReceiver implements Alert
                 EventPayload eventPayload = new EventPayload();
                 eventPayload.setPayload(payload);
                 eventPayload.setType(type);
-                HttpDataPublisher httpDataPublisher = new HttpDataPublisher();
-                httpDataPublisher.publish(eventPayload);
+                EventPipeline.getInstance(EventRegistry.context).publish(eventPayload);
             }
         }
     }
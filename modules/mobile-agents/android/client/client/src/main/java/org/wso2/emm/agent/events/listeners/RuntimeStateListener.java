@@ -22,9 +22,9 @@ import android.util.Log;
 import org.wso2.emm.agent.AndroidAgentException;
 import org.wso2.emm.agent.api.RuntimeInfo;
 import org.wso2.emm.agent.beans.Application;
+import org.wso2.emm.agent.events.EventPipeline;
 import org.wso2.emm.agent.events.EventRegistry;
 import org.wso2.emm.agent.events.beans.EventPayload;
-import org.wso2.emm.agent.events.publisher.HttpDataPublisher;
 import org.wso2.emm.agent.utils.CommonUtils;
 import org.wso2.emm.agent.utils.Constants;
 
@@ -37,11 +37,9 @@ public class RuntimeStateListener implements AlertEventListener {
 
     @Override
     public void startListening() {
-        RuntimeInfo runtimeInfo = new RuntimeInfo(EventRegistry.context,
-                                                  new String[]{"top", "-n", "1",
-                                                               "-m", "1", "-s", "cpu"});
+        RuntimeInfo runtimeInfo = new RuntimeInfo(EventRegistry.context);
         Application application = runtimeInfo.getHighestCPU();
-        if (application.getCpu() > CPU_THRESHOLD) {
+        if (application != null && application.getCpu() > CPU_THRESHOLD) {
             try {
                 String appState = CommonUtils.toJSON(application);
                 publishEvent(appState, Constants.EventListeners.RUNTIME_STATE);
@@ -63,7 +61,6 @@ public class RuntimeStateListener implements AlertEventListener {
         EventPayload eventPayload = new EventPayload();
         eventPayload.setPayload(payload);
         eventPayload.setType(type);
-        HttpDataPublisher httpDataPublisher = new HttpDataPublisher();
-        httpDataPublisher.publish(eventPayload);
+        EventPipeline.getInstance(EventRegistry.context).publish(eventPayload);
     }
 }
@@ -20,9 +20,35 @@ package org.wso2.emm.agent.events.publisher;
 
 import org.wso2.emm.agent.events.beans.EventPayload;
 
+import java.util.List;
+
 /**
  * When data needs to be published, it can be done by implementing this interface.
  */
 public interface DataPublisher {
     void publish(EventPayload eventPayload);
+
+    /**
+     * Publishes a batch of events, oldest first.
+     *
+     * @param eventPayloads events to be published.
+     * @param callBack      callback to report the outcome of the batch to.
+     */
+    void publish(List<EventPayload> eventPayloads, PublishCallBack callBack);
+
+    /**
+     * Receives the outcome of publishing a batch of events.
+     */
+    interface PublishCallBack {
+
+        /**
+         * Called once the whole batch has been accepted.
+         */
+        void onPublished();
+
+        /**
+         * Called if any event of the batch could not be published.
+         */
+        void onFailed();
+    }
 }
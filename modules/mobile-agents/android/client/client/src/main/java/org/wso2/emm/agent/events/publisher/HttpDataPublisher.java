@@ -25,10 +25,13 @@ import org.wso2.emm.agent.beans.ServerConfig;
 import org.wso2.emm.agent.events.EventRegistry;
 import org.wso2.emm.agent.events.beans.EventPayload;
 import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
+import org.wso2.emm.agent.proxy.interfaces.APIStreamResultCallBack;
 import org.wso2.emm.agent.utils.CommonUtils;
 import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
 
+import java.io.InputStream;
+import java.util.List;
 import java.util.Map;
 
 public class HttpDataPublisher implements APIResultCallBack, DataPublisher {
@@ -49,6 +52,10 @@ public class HttpDataPublisher implements APIResultCallBack, DataPublisher {
     }
 
     public void publish(EventPayload eventPayload) {
+        publish(eventPayload, HttpDataPublisher.this);
+    }
+
+    private void publish(EventPayload eventPayload, APIResultCallBack callBack) {
         if (EventRegistry.context != null) {
             eventPayload.setDeviceIdentifier(deviceIdentifier);
             try {
@@ -57,7 +64,7 @@ public class HttpDataPublisher implements APIResultCallBack, DataPublisher {
                                            utils.getAPIServerURL(EventRegistry.context) +
                                            Constants.EVENT_ENDPOINT, org.wso2.emm.agent.proxy.utils.
                                                    Constants.HTTP_METHODS.POST,
-                                           responsePayload, HttpDataPublisher.this,
+                                           responsePayload, callBack,
                                            Constants.EVENT_REQUEST_CODE);
             } catch (AndroidAgentException e) {
                 Log.e(TAG, "Cannot convert event data to JSON");
@@ -65,6 +72,39 @@ public class HttpDataPublisher implements APIResultCallBack, DataPublisher {
         }
     }
 
+    /**
+     * Publishes a batch of events. The batch is sent as a JSON array in one request if batch
+     * publishing is enabled, and as one request per event otherwise.
+     */
+    public void publish(List<EventPayload> eventPayloads, PublishCallBack callBack) {
+        if (EventRegistry.context == null) {
+            callBack.onFailed();
+            return;
+        }
+        if (!Constants.EventListeners.EVENT_BATCH_PUBLISHING_ENABLED || eventPayloads.size() == 1) {
+            BatchCallBack batchCallBack = new BatchCallBack(callBack, eventPayloads.size());
+            for (EventPayload eventPayload : eventPayloads) {
+                publish(eventPayload, batchCallBack);
+            }
+            return;
+        }
+        for (EventPayload eventPayload : eventPayloads) {
+            eventPayload.setDeviceIdentifier(deviceIdentifier);
+        }
+        try {
+            String responsePayload = CommonUtils.toJSON(eventPayloads);
+            CommonUtils.callSecuredAPI(EventRegistry.context,
+                                       utils.getAPIServerURL(EventRegistry.context) +
+                                       Constants.EVENT_ENDPOINT, org.wso2.emm.agent.proxy.utils.
+                                               Constants.HTTP_METHODS.POST,
+                                       responsePayload, new BatchCallBack(callBack, 1),
+                                       Constants.EVENT_REQUEST_CODE);
+        } catch (AndroidAgentException e) {
+            Log.e(TAG, "Cannot convert event data to JSON");
+            callBack.onFailed();
+        }
+    }
+
     @Override
     public void onReceiveAPIResult(Map<String, String> result, int requestCode) {
         if (Constants.DEBUG_MODE_ENABLED) {
@@ -72,4 +112,51 @@ public class HttpDataPublisher implements APIResultCallBack, DataPublisher {
             Log.d(TAG, "Result for request: " + requestCode + " is " + status);
         }
     }
+
+    /**
+     * Reports the outcome of the requests of a batch once all of them have been answered, as
+     * failed if any of them failed.
+     */
+    private static class BatchCallBack implements APIStreamResultCallBack {
+        private PublishCallBack callBack;
+        private int remainingRequests;
+        private boolean failed;
+
+        BatchCallBack(PublishCallBack callBack, int requests) {
+            this.callBack = callBack;
+            this.remainingRequests = requests;
+        }
+
+        @Override
+        public void onReceiveAPIStream(String status, Map<String, String> headers, InputStream response,
+                                       int requestCode) {
+            complete(status != null && status.startsWith("2"));
+        }
+
+        @Override
+        public void onReceiveAPIError(String status, Map<String, String> headers, int requestCode) {
+            Log.w(TAG, "Failed to publish events, status: " + status);
+            complete(false);
+        }
+
+        @Override
+        public void onReceiveAPIResult(Map<String, String> result, int requestCode) {
+            // Responses are always delivered as streams.
+        }
+
+        private void complete(boolean published) {
+            boolean done;
+            synchronized (this) {
+                failed |= !published;
+                done = --remainingRequests == 0;
+            }
+            if (done) {
+                if (failed) {
+                    callBack.onFailed();
+                } else {
+                    callBack.onPublished();
+                }
+            }
+        }
+    }
 }
@@ -25,6 +25,7 @@ import org.wso2.emm.agent.events.beans.EventPayload;
 import org.wso2.emm.agent.utils.Constants;
 
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * This class handles publishing of device logs to Splunk.
@@ -45,4 +46,12 @@ public class SplunkLogPublisher implements DataPublisher {
         payload.put("log", eventPayload.getPayload());
         Mint.logEvent("EMM Logs", MintLogLevel.Info, payload);
     }
+
+    @Override
+    public void publish(List<EventPayload> eventPayloads, PublishCallBack callBack) {
+        for (EventPayload eventPayload : eventPayloads) {
+            publish(eventPayload);
+        }
+        callBack.onPublished();
+    }
 }
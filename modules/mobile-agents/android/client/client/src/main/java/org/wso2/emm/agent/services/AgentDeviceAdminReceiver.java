@@ -66,6 +66,8 @@ public class AgentDeviceAdminReceiver extends DeviceAdminReceiver implements API
 		String notifier = Preference.getString(context, Constants.PreferenceFlag.NOTIFIER_TYPE);
 		if(Constants.NOTIFIER_LOCAL.equals(notifier)) {
 			LocalNotification.startPolling(context);
+		} else if (Constants.NOTIFIER_LONG_POLL.equals(notifier)) {
+			LongPollNotification.startPolling(context);
 		}
 	}
 
@@ -110,6 +112,7 @@ public class AgentDeviceAdminReceiver extends DeviceAdminReceiver implements API
 				                           Constants.UNREGISTER_REQUEST_CODE);
 				try {
 					LocalNotification.stopPolling(context);
+					LongPollNotification.stopPolling(context);
 					CommonUtils.unRegisterClientApp(context, AgentDeviceAdminReceiver.this);
 					CommonUtils.clearAppData(context);
 				} catch (AndroidAgentException e) {
@@ -61,7 +61,7 @@ public class AlarmReceiver extends BroadcastReceiver {
 				applicationManager.uninstallApplication(packageUri, null);
 			}
 
-		} else {
+		} else if (LocalNotification.onPollStarted(context)) {
 			OperationTask operationTask = new OperationTask();
 			operationTask.execute(context);
 		}
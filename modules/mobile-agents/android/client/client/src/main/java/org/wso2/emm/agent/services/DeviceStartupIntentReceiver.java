@@ -17,8 +17,6 @@
  */
 package org.wso2.emm.agent.services;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
@@ -42,8 +40,6 @@ import java.util.Locale;
  * notification service at device startup.
  */
 public class DeviceStartupIntentReceiver extends BroadcastReceiver {
-	private static final int DEFAULT_TIME_MILLISECONDS = 0;
-	private static final int DEFAULT_REQUEST_CODE = 0;
 	public static final int DEFAULT_INDEX = 0;
 	public static final int DEFAULT_ID = -1;
 	public static final int DEFAULT_INTERVAL = 30000;
@@ -91,30 +87,19 @@ public class DeviceStartupIntentReceiver extends BroadcastReceiver {
 			}
 		}
 
-		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
-		if(interval == DEFAULT_INDEX){
-			interval = DEFAULT_INTERVAL;
-		}
-
 		if(mode == null) {
 			mode = Constants.NOTIFIER_LOCAL;
 		}
 
 		if (Preference.getBoolean(context, Constants.PreferenceFlag.REGISTERED) && Constants.NOTIFIER_LOCAL.equals(
 				mode.trim().toUpperCase(Locale.ENGLISH))) {
-			long startTime =  DEFAULT_TIME_MILLISECONDS;
-
-			Intent alarmIntent = new Intent(context, AlarmReceiver.class);
-			PendingIntent recurringAlarmIntent =
-					PendingIntent.getBroadcast(context,
-					                           DEFAULT_REQUEST_CODE,
-					                           alarmIntent,
-					                           PendingIntent.FLAG_CANCEL_CURRENT);
-			AlarmManager alarmManager =
-					(AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			alarmManager.setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, startTime,
-			                          interval, recurringAlarmIntent);
-			Log.d(TAG, "Setting up alarm manager for polling every " + interval + " milliseconds.");
+			// Alarms do not survive a reboot, hence the adaptive poll schedule is started over
+			LocalNotification.startPolling(context);
+			Log.d(TAG, "Local notification polling started at device startup.");
+		} else if (Preference.getBoolean(context, Constants.PreferenceFlag.REGISTERED) &&
+		           Constants.NOTIFIER_LONG_POLL.equals(mode.trim().toUpperCase(Locale.ENGLISH))) {
+			LongPollNotification.startPolling(context);
+			Log.d(TAG, "Long polling started at device startup.");
 		}
 	}
 
@@ -159,6 +159,9 @@ public class EnrollmentService extends IntentService implements APIResultCallBac
         if(Constants.NOTIFIER_LOCAL.equals(notifier)) {
             Log.i(TAG, "EMM auto enrollment, initiating polling task.");
             LocalNotification.startPolling(context);
+        } else if (Constants.NOTIFIER_LONG_POLL.equals(notifier)) {
+            Log.i(TAG, "EMM auto enrollment, initiating long polling.");
+            LongPollNotification.startPolling(context);
         }
     }
 
@@ -222,6 +225,9 @@ public class EnrollmentService extends IntentService implements APIResultCallBac
                                     if(type.equals(String.valueOf(Constants.NOTIFIER_CHECK))) {
                                         Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
                                                              Constants.NOTIFIER_GCM);
+                                    } else if (type.equals(String.valueOf(Constants.NOTIFIER_LONG_POLL_CHECK))) {
+                                        Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
+                                                             Constants.NOTIFIER_LONG_POLL);
                                     }else{
                                         Preference.putString(context, Constants.PreferenceFlag.NOTIFIER_TYPE,
                                                              Constants.NOTIFIER_LOCAL);
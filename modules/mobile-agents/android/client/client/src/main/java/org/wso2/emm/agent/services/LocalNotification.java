@@ -21,14 +21,25 @@ import android.app.AlarmManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.android.volley.toolbox.HttpHeaderParser;
+
 import org.wso2.emm.agent.R;
+import org.wso2.emm.agent.utils.CommonUtils;
+import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
 
+import java.util.Map;
+import java.util.Random;
+
 /**
  * Local notification is a communication mechanism that essentially,
  * polls to server based on a predefined to retrieve pending data.
+ * The poll interval adapts to the server: it is shortened right after operations
+ * have been received, backs off exponentially while there is nothing pending,
+ * honours Retry-After hints and polling is paused while the device is offline.
  */
 public class LocalNotification {
 
@@ -39,22 +50,24 @@ public class LocalNotification {
 	public static final int DEFAULT_BUFFER = 10000;
 	public static final int REQUEST_CODE = 0;
 	public static final String LOCAL_NOTIFIER_INVOKED_PREF_KEY = "localNoticicationInvoked";
+	// Interval used right after operations have been received, as more are likely to follow
+	public static final int ACTIVE_INTERVAL = 10000;
+	// Upper bound of the interval while backing off
+	public static final int MAX_INTERVAL = 15 * 60 * 1000;
+	private static final int MAX_BACKOFF_STEP = 10;
+	private static final double JITTER_FACTOR = 0.2;
+	private static final String BACKOFF_STEP_PREF_KEY = "localNotificationBackoffStep";
+	private static final String POLLING_PAUSED_PREF_KEY = "localNotificationPaused";
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static final Random random = new Random();
 
 	public static void startPolling(Context context) {
-		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
-		if(interval == DEFAULT_INDEX){
-			interval = DEFAULT_INTERVAL;
-		}
-		long currentTime = DEFAULT_BUFFER;
 		stopPolling(context);
 		if (!Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
 			Preference.putBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY, true);
-			Intent alarm = new Intent(context, AlarmReceiver.class);
-			PendingIntent recurringAlarm = PendingIntent.getBroadcast(context, REQUEST_CODE, alarm,
-							PendingIntent.FLAG_CANCEL_CURRENT);
-			AlarmManager alarms = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			alarms.setRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP, currentTime, interval,
-					recurringAlarm);
+			Preference.putInt(context, BACKOFF_STEP_PREF_KEY, DEFAULT_INDEX);
+			Preference.putBoolean(context, POLLING_PAUSED_PREF_KEY, false);
+			scheduleNextPoll(context, DEFAULT_BUFFER);
 			Log.d(TAG, "Polling started!");
 		}
 	}
@@ -62,11 +75,119 @@ public class LocalNotification {
 	public static void stopPolling(Context context) {
 		if (Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
 			Preference.putBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY, false);
-			Intent alarm = new Intent(context, AlarmReceiver.class);
-			PendingIntent sender = PendingIntent.getBroadcast(context, REQUEST_CODE, alarm, DEFAULT_INDEX);
-			AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-			alarmManager.cancel(sender);
+			cancelNextPoll(context);
 			Log.d(TAG, "Polling stopped!");
 		}
 	}
+
+	/**
+	 * Called when a poll alarm goes off. Backs off and schedules the following poll up front,
+	 * so that polling goes on even if the server does not answer. If the device is offline
+	 * polling is paused until connectivity is restored.
+	 *
+	 * @param context - Application context.
+	 * @return - true if the server should be polled now.
+	 */
+	public static boolean onPollStarted(Context context) {
+		if (!Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
+			return true;
+		}
+		if (!CommonUtils.isNetworkAvailable(context)) {
+			cancelNextPoll(context);
+			Preference.putBoolean(context, POLLING_PAUSED_PREF_KEY, true);
+			Log.d(TAG, "Polling paused until network is available.");
+			return false;
+		}
+		int step = Math.min(Preference.getInt(context, BACKOFF_STEP_PREF_KEY) + 1, MAX_BACKOFF_STEP);
+		Preference.putInt(context, BACKOFF_STEP_PREF_KEY, step);
+		scheduleNextPoll(context, getBackoffInterval(context, step));
+		return true;
+	}
+
+	/**
+	 * Called when the server has answered a poll, to schedule the following poll.
+	 *
+	 * @param context            - Application context.
+	 * @param operationsReceived - Whether the server sent pending operations.
+	 * @param headers            - Response headers, which may carry a Retry-After hint.
+	 */
+	public static void onPollCompleted(Context context, boolean operationsReceived, Map<String, String> headers) {
+		if (!Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY)) {
+			return;
+		}
+		long interval;
+		if (operationsReceived) {
+			Preference.putInt(context, BACKOFF_STEP_PREF_KEY, DEFAULT_INDEX);
+			interval = Math.min(ACTIVE_INTERVAL, getBaseInterval(context));
+		} else {
+			interval = getBackoffInterval(context, Preference.getInt(context, BACKOFF_STEP_PREF_KEY));
+		}
+		scheduleNextPoll(context, Math.max(interval, getRetryAfter(headers)));
+	}
+
+	/**
+	 * Called when connectivity changes, to resume polling if it was paused while offline.
+	 *
+	 * @param context - Application context.
+	 */
+	public static void onConnectivityChanged(Context context) {
+		if (Preference.getBoolean(context, LOCAL_NOTIFIER_INVOKED_PREF_KEY) &&
+		    Preference.getBoolean(context, POLLING_PAUSED_PREF_KEY) && CommonUtils.isNetworkAvailable(context)) {
+			Preference.putBoolean(context, POLLING_PAUSED_PREF_KEY, false);
+			Preference.putInt(context, BACKOFF_STEP_PREF_KEY, DEFAULT_INDEX);
+			scheduleNextPoll(context, DEFAULT_BUFFER);
+		}
+	}
+
+	private static int getBaseInterval(Context context) {
+		int interval = Preference.getInt(context, context.getResources().getString(R.string.shared_pref_frequency));
+		if(interval == DEFAULT_INDEX){
+			interval = DEFAULT_INTERVAL;
+		}
+		return interval;
+	}
+
+	private static long getBackoffInterval(Context context, int step) {
+		long interval = Math.min((long) getBaseInterval(context) << step, MAX_INTERVAL);
+		double jitter = 1 - JITTER_FACTOR + (2 * JITTER_FACTOR * random.nextDouble());
+		return (long) (interval * jitter);
+	}
+
+	private static long getRetryAfter(Map<String, String> headers) {
+		String retryAfter = null;
+		if (headers != null) {
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				if (RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+					retryAfter = header.getValue().trim();
+				}
+			}
+		}
+		if (retryAfter == null) {
+			return DEFAULT_INDEX;
+		}
+		try {
+			return Math.min(Long.parseLong(retryAfter) * 1000, MAX_INTERVAL);
+		} catch (NumberFormatException e) {
+			long retryAt = HttpHeaderParser.parseDateAsEpoch(retryAfter);
+			return Math.min(Math.max(retryAt - System.currentTimeMillis(), DEFAULT_INDEX), MAX_INTERVAL);
+		}
+	}
+
+	private static void scheduleNextPoll(Context context, long interval) {
+		Intent alarm = new Intent(context, AlarmReceiver.class);
+		PendingIntent nextAlarm = PendingIntent.getBroadcast(context, REQUEST_CODE, alarm,
+		                                                     PendingIntent.FLAG_CANCEL_CURRENT);
+		AlarmManager alarms = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		alarms.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + interval, nextAlarm);
+		if (Constants.DEBUG_MODE_ENABLED) {
+			Log.d(TAG, "Next poll in " + interval + " milliseconds.");
+		}
+	}
+
+	private static void cancelNextPoll(Context context) {
+		Intent alarm = new Intent(context, AlarmReceiver.class);
+		PendingIntent sender = PendingIntent.getBroadcast(context, REQUEST_CODE, alarm, DEFAULT_INDEX);
+		AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		alarmManager.cancel(sender);
+	}
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.wso2.emm.agent.AndroidAgentException;
+import org.wso2.emm.agent.api.DeviceInfo;
+import org.wso2.emm.agent.beans.ServerConfig;
+import org.wso2.emm.agent.proxy.interfaces.APIStreamResultCallBack;
+import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
+import org.wso2.emm.agent.utils.CommonUtils;
+import org.wso2.emm.agent.utils.Constants;
+import org.wso2.emm.agent.utils.Preference;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Long poll notification is a communication mechanism for deployments without GCM. The agent
+ * keeps a single request open against the server, which answers it as soon as operations are
+ * pending, or with 204 No Content once the heartbeat interval has passed. Only in the former
+ * case the pending operations are retrieved, after which the request is opened again.
+ */
+public class LongPollNotification {
+
+	private static final String TAG = LongPollNotification.class.getSimpleName();
+
+	public static final int HEARTBEAT_INTERVAL = 4 * 60 * 1000;
+	// Time allowed on top of the heartbeat before a connection is considered to be dead
+	public static final int HEARTBEAT_GRACE_PERIOD = 30000;
+	public static final int INITIAL_RETRY_INTERVAL = 5000;
+	public static final int MAX_RETRY_INTERVAL = 15 * 60 * 1000;
+	public static final int REQUEST_CODE = 1;
+	public static final String LONG_POLL_INVOKED_PREF_KEY = "longPollNotificationInvoked";
+	private static final String DEVICE_ID_PREFERENCE_KEY = "deviceId";
+	private static final String HEARTBEAT_PARAM = "?timeout=";
+	private static final String NO_CONTENT = "204";
+	private static final int MAX_RETRY_STEP = 10;
+	private static final double JITTER_FACTOR = 0.2;
+	private static final Random random = new Random();
+
+	// Identifies the current connection, so that answers to abandoned connections are ignored
+	private static int connection;
+	// Time the current connection was opened at, or 0 if no connection is open
+	private static long connectionStarted;
+	private static int retryStep;
+	private static boolean resultsPending;
+	// Sends the results kept in the preferences as soon as they are written
+	private static SharedPreferences.OnSharedPreferenceChangeListener resultListener;
+
+	public static void startPolling(Context context) {
+		stopPolling(context);
+		if (!Preference.getBoolean(context, LONG_POLL_INVOKED_PREF_KEY)) {
+			Preference.putBoolean(context, LONG_POLL_INVOKED_PREF_KEY, true);
+			connect(context.getApplicationContext());
+			Log.d(TAG, "Long polling started!");
+		}
+	}
+
+	public static void stopPolling(Context context) {
+		if (Preference.getBoolean(context, LONG_POLL_INVOKED_PREF_KEY)) {
+			Preference.putBoolean(context, LONG_POLL_INVOKED_PREF_KEY, false);
+			synchronized (LongPollNotification.class) {
+				connection++;
+				connectionStarted = 0;
+				if (resultListener != null) {
+					Preference.unregisterListener(context, resultListener);
+					resultListener = null;
+				}
+			}
+			AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+			alarmManager.cancel(getAlarmIntent(context));
+			Log.d(TAG, "Long polling stopped!");
+		}
+	}
+
+	/**
+	 * Called when the reconnect or watchdog alarm goes off, and when connectivity changes.
+	 * Opens a new connection unless polling has been stopped or the device is offline, in which
+	 * case the connection is opened once connectivity has been restored. A connection which is
+	 * still within its timeout is kept, since the request blocks a dispatcher thread until it
+	 * times out even if it were abandoned.
+	 *
+	 * @param context - Application context.
+	 */
+	public static void reconnect(Context context) {
+		if (Preference.getBoolean(context, LONG_POLL_INVOKED_PREF_KEY)) {
+			connect(context.getApplicationContext());
+		}
+	}
+
+	private static void connect(Context context) {
+		if (!CommonUtils.isNetworkAvailable(context)) {
+			Log.d(TAG, "Long polling paused until network is available.");
+			return;
+		}
+		int currentConnection;
+		synchronized (LongPollNotification.class) {
+			watchLocalResults(context);
+			long now = SystemClock.elapsedRealtime();
+			if (connectionStarted != 0 && now - connectionStarted < HEARTBEAT_INTERVAL + HEARTBEAT_GRACE_PERIOD) {
+				Log.d(TAG, "Long poll connection is still open.");
+				return;
+			}
+			currentConnection = ++connection;
+			connectionStarted = now;
+		}
+		// Watchdog which reconnects if the server does not answer within the heartbeat
+		scheduleReconnect(context, HEARTBEAT_INTERVAL + HEARTBEAT_GRACE_PERIOD);
+
+		String deviceId = Preference.getString(context, DEVICE_ID_PREFERENCE_KEY);
+		if (deviceId == null) {
+			deviceId = new DeviceInfo(context).getDeviceId();
+		}
+		ServerConfig utils = new ServerConfig();
+		String url = utils.getAPIServerURL(context) + Constants.DEVICES_ENDPOINT + deviceId +
+		             Constants.LONG_POLL_ENDPOINT + HEARTBEAT_PARAM + (HEARTBEAT_INTERVAL / 1000);
+		CommonUtils.callSecuredAPI(context, url, HTTP_METHODS.GET, null,
+		                           new LongPollCallBack(context, currentConnection),
+		                           Constants.LONG_POLL_REQUEST_CODE, HEARTBEAT_INTERVAL + HEARTBEAT_GRACE_PERIOD);
+	}
+
+	/**
+	 * Sends the operation results stored in the outbox to the server, as the server is only
+	 * contacted when it has operations pending while long polling.
+	 *
+	 * @param context - Application context.
+	 */
+	public static void sendPendingResults(Context context) {
+		if (!Preference.getBoolean(context, LONG_POLL_INVOKED_PREF_KEY)) {
+			return;
+		}
+		synchronized (LongPollNotification.class) {
+			// Results stored until the task starts are sent with the same request
+			if (resultsPending) {
+				return;
+			}
+			resultsPending = true;
+		}
+		new OperationTask(false).execute(context.getApplicationContext());
+	}
+
+	/**
+	 * Watches the results which are kept in the preferences instead of the outbox, like the
+	 * status of an app installation, so that they are sent as soon as they are written. Called
+	 * with every connection, as the listener does not outlive the process.
+	 */
+	private static void watchLocalResults(final Context context) {
+		if (resultListener != null) {
+			return;
+		}
+		resultListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+			@Override
+			public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+				if (MessageProcessor.isLocalResultKey(context, key) && preferences.getString(key, null) != null) {
+					sendPendingResults(context);
+				}
+			}
+		};
+		Preference.registerListener(context, resultListener);
+	}
+
+	/**
+	 * Ends the given connection if it is the current one.
+	 *
+	 * @param callConnection - Connection which has been answered.
+	 * @return - True if the connection was the current one.
+	 */
+	private static boolean finish(int callConnection) {
+		synchronized (LongPollNotification.class) {
+			if (callConnection != connection) {
+				return false;
+			}
+			connectionStarted = 0;
+			return true;
+		}
+	}
+
+	private static synchronized long getRetryInterval() {
+		long interval = Math.min((long) INITIAL_RETRY_INTERVAL << retryStep, MAX_RETRY_INTERVAL);
+		retryStep = Math.min(retryStep + 1, MAX_RETRY_STEP);
+		double jitter = 1 - JITTER_FACTOR + (2 * JITTER_FACTOR * random.nextDouble());
+		return (long) (interval * jitter);
+	}
+
+	private static synchronized void resetRetryInterval() {
+		retryStep = 0;
+	}
+
+	private static void scheduleReconnect(Context context, long interval) {
+		AlarmManager alarms = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+		alarms.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, SystemClock.elapsedRealtime() + interval,
+		           getAlarmIntent(context));
+	}
+
+	private static PendingIntent getAlarmIntent(Context context) {
+		Intent alarm = new Intent(context, LongPollReceiver.class);
+		return PendingIntent.getBroadcast(context, REQUEST_CODE, alarm, PendingIntent.FLAG_UPDATE_CURRENT);
+	}
+
+	/**
+	 * Receives the answer to a single long poll connection.
+	 */
+	private static class LongPollCallBack implements APIStreamResultCallBack {
+
+		private Context context;
+		private int connection;
+
+		LongPollCallBack(Context context, int connection) {
+			this.context = context;
+			this.connection = connection;
+		}
+
+		@Override
+		public void onReceiveAPIStream(String status, Map<String, String> headers, InputStream response,
+		                               int requestCode) {
+			if (!finish(connection)) {
+				return;
+			}
+			resetRetryInterval();
+			if (!NO_CONTENT.equals(status)) {
+				if (Constants.DEBUG_MODE_ENABLED) {
+					Log.d(TAG, "Operations pending, retrieving them.");
+				}
+				new OperationTask(false).execute(context);
+			} else {
+				// The heartbeat doubles as a low-frequency poll for work left behind, such as
+				// results whose upload failed or a queued app installation.
+				new OperationTask(true).execute(context);
+			}
+			connect(context);
+		}
+
+		@Override
+		public void onReceiveAPIError(String status, Map<String, String> headers, int requestCode) {
+			if (!finish(connection)) {
+				return;
+			}
+			long interval = getRetryInterval();
+			Log.w(TAG, "Long poll failed with status " + status + ", reconnecting in " + interval + " milliseconds.");
+			scheduleReconnect(context, interval);
+		}
+
+		@Override
+		public void onReceiveAPIResult(Map<String, String> result, int requestCode) {
+			// Responses are always delivered as streams.
+		}
+	}
+
+	private static class OperationTask extends AsyncTask<Context, Void, Void> {
+
+		private boolean onlyIfPending;
+
+		OperationTask(boolean onlyIfPending) {
+			this.onlyIfPending = onlyIfPending;
+		}
+
+		@Override
+		protected Void doInBackground(Context... params) {
+			if (onlyIfPending) {
+				if (params == null || !MessageProcessor.hasLocalResults(params[0])) {
+					return null;
+				}
+			} else {
+				synchronized (LongPollNotification.class) {
+					resultsPending = false;
+				}
+			}
+			if (params != null) {
+				MessageProcessor messageProcessor = new MessageProcessor(params[0]);
+				try {
+					messageProcessor.getMessages();
+				} catch (AndroidAgentException e) {
+					Log.e(TAG, "Failed to perform operation", e);
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import org.wso2.emm.agent.utils.Constants;
+
+/**
+ * This class is a broadcast receiver which triggers on long poll reconnect and watchdog timeouts.
+ */
+public class LongPollReceiver extends BroadcastReceiver {
+
+	private static final String TAG = LongPollReceiver.class.getSimpleName();
+
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		if (Constants.DEBUG_MODE_ENABLED) {
+			Log.d(TAG, "Long poll alarm; reconnecting.");
+		}
+		LongPollNotification.reconnect(context);
+	}
+}
@@ -17,23 +17,31 @@
  */
 package org.wso2.emm.agent.services;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import android.app.admin.DevicePolicyManager;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.wso2.emm.agent.AndroidAgentException;
 import org.wso2.emm.agent.R;
+import org.wso2.emm.agent.api.AppBundleInstaller;
 import org.wso2.emm.agent.api.ApplicationManager;
 import org.wso2.emm.agent.api.DeviceInfo;
 import org.wso2.emm.agent.beans.AppInstallRequest;
 import org.wso2.emm.agent.beans.Operation;
 import org.wso2.emm.agent.beans.ServerConfig;
-import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
+import org.wso2.emm.agent.dao.OperationResultDAO;
+import org.wso2.emm.agent.proxy.interfaces.APIStreamResultCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
+import org.wso2.emm.agent.services.operation.OperationExecutor;
 import org.wso2.emm.agent.services.operation.OperationProcessor;
 import org.wso2.emm.agent.utils.AppInstallRequestUtil;
 import org.wso2.emm.agent.utils.Constants;
@@ -43,28 +51,33 @@ import org.wso2.emm.agent.utils.CommonUtils;
 import android.content.Context;
 import android.util.Log;
 
-import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.gson.Gson;
 
 /**
  * This class handles all the functionalities related to coordinating the retrieval
  * and processing of messages from the server.
  */
-public class MessageProcessor implements APIResultCallBack {
+public class MessageProcessor implements APIStreamResultCallBack {
 
 	private String TAG = MessageProcessor.class.getSimpleName();
 	private Context context;
 	private String deviceId;
 	private static final String DEVICE_ID_PREFERENCE_KEY = "deviceId";
-	private static List<org.wso2.emm.agent.beans.Operation> replyPayload;
 	private OperationProcessor operationProcessor;
-	private ObjectMapper mapper;
+	private OperationResultDAO operationResultDAO;
+	private Set<Long> sentResultIds = new HashSet<>();
+	private static final ObjectReader OPERATION_READER = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+			.readerFor(Operation.class);
 	private boolean isWipeTriggered = false;
+	// Whether the reply carries results of security operations, such as lock or wipe
+	private boolean hasSecurityResults = false;
 	private boolean isRebootTriggered = false;
 	private int operationId;
 	private boolean isUpgradeTriggered = false;
@@ -73,6 +86,10 @@ public class MessageProcessor implements APIResultCallBack {
 	private static final int ACTIVATION_REQUEST = 47;
 	private static final String ERROR_STATE = "ERROR";
 	private String shellCommand = null;
+	private static final String OPERATION_ID_KEY = "id";
+	private static final String OPERATION_CODE_KEY = "code";
+	private static final String OPERATION_STATUS_KEY = "status";
+	private static final String OPERATION_PAYLOAD_KEY = "payLoad";
 
 	/**
 	 * Local notification message handler.
@@ -84,9 +101,7 @@ public class MessageProcessor implements APIResultCallBack {
 
 		deviceId = Preference.getString(context, DEVICE_ID_PREFERENCE_KEY);
 		operationProcessor = new OperationProcessor(context.getApplicationContext());
-		mapper = new ObjectMapper();
-		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-		mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+		operationResultDAO = new OperationResultDAO(context.getApplicationContext());
 		this.devicePolicyManager =
 				(DevicePolicyManager) context.getSystemService(Context.DEVICE_POLICY_SERVICE);
 
@@ -105,39 +120,216 @@ public class MessageProcessor implements APIResultCallBack {
 	 *                 and applied to the device.
 	 */
 	public void performOperation(String response) {
+		if (response != null) {
+			performOperation(new ByteArrayInputStream(response.getBytes(Charset.forName("UTF-8"))));
+		}
+	}
 
-		List<org.wso2.emm.agent.beans.Operation> operations = new ArrayList<>();
+	/**
+	 * This method decodes the pending operations received from the backend server one at a
+	 * time, and queues each operation for execution as soon as it has been read from the
+	 * response. The result of each operation is stored as soon as it has completed, so that a
+	 * slow operation does not hold back the results of operations on other lanes.
+	 *
+	 * @param response Response body received from the server that needs to be processed
+	 *                 and applied to the device.
+	 * @return Number of operations received.
+	 */
+	public int performOperation(InputStream response) {
+		try {
+			// check whether if there are any dismissed notifications to be sent
+			operationProcessor.checkPreviousNotifications();
+		} catch (AndroidAgentException e) {
+			Log.e(TAG, "Error occurred while checking previous notification", e);
+		}
 
+		Runnable storeCompletedResults = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (storeResults(operationProcessor.takeResults())) {
+						LongPollNotification.sendPendingResults(context);
+					}
+				} catch (AndroidAgentException e) {
+					Log.e(TAG, "Failed to store operation results", e);
+				}
+			}
+		};
+		int operationCount = 0;
+		MappingIterator<Operation> operations = null;
 		try {
-			if (response != null) {
-				operations = mapper.readValue(
-						response,
-						mapper.getTypeFactory().constructCollectionType(List.class,
-								org.wso2.emm.agent.beans.Operation.class));
+			operations = OPERATION_READER.readValues(response);
+			while (operations.hasNextValue()) {
+				operationProcessor.submitTask(operations.nextValue(), storeCompletedResults);
+				operationCount++;
 			}
-
-
-		// check whether if there are any dismissed notifications to be sent
-		operationProcessor.checkPreviousNotifications();
-
 		} catch (JsonProcessingException e) {
 			Log.e(TAG,  "Issue in json parsing", e);
 		} catch (IOException e) {
 			Log.e(TAG, "Issue in stream parsing", e);
-		} catch (AndroidAgentException e) {
-			Log.e(TAG, "Error occurred while checking previous notification", e);
+		} finally {
+			if (operations != null) {
+				try {
+					operations.close();
+				} catch (IOException e) {
+					Log.e(TAG, "Issue in closing stream", e);
+				}
+			}
 		}
+		return operationCount;
+	}
 
-		for (org.wso2.emm.agent.beans.Operation op : operations) {
+	/**
+	 * Appends operation results to the outbox, from which they are uploaded with the
+	 * following notification requests until the server acknowledges them.
+	 *
+	 * @param results Operation results to be sent to the server.
+	 * @return True if any results were stored.
+	 */
+	private synchronized boolean storeResults(List<Operation> results) throws AndroidAgentException {
+		if (results == null || results.isEmpty()) {
+			return false;
+		}
+		try {
+			operationResultDAO.open();
+			for (Operation result : results) {
+				operationResultDAO.addResult(result);
+			}
+			results.clear();
+		} finally {
+			operationResultDAO.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Builds the reply payload from the oldest operation results in the outbox which are not
+	 * being sent by another request, limited to a single batch, and marks the system operations
+	 * which have to be triggered once the results have been reported.
+	 *
+	 * @return Reply payload, or null if there are no results to be reported.
+	 */
+	private String buildResultBatch() throws AndroidAgentException {
+		hasSecurityResults = false;
+		Map<Long, String> results;
+		try {
+			operationResultDAO.open();
+			results = operationResultDAO.claimPendingResults(Constants.OPERATION_RESULT_BATCH_SIZE);
+		} finally {
+			operationResultDAO.close();
+		}
+		if (results.isEmpty()) {
+			return null;
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		StringBuilder payload = new StringBuilder("[");
+		for (Map.Entry<Long, String> result : results.entrySet()) {
+			if (payload.length() > 1) {
+				payload.append(",");
+			}
+			payload.append(result.getValue());
+			sentResultIds.add(result.getKey());
+
+			JsonNode operation;
 			try {
-				operationProcessor.doTask(op);
-			} catch (AndroidAgentException e) {
-				Log.e(TAG, "Failed to perform operation", e);
+				operation = mapper.readTree(result.getValue());
+			} catch (IOException e) {
+				throw new AndroidAgentException("Issue in parsing stream", e);
+			}
+			String code = operation.path(OPERATION_CODE_KEY).asText();
+			if (OperationExecutor.getLane(code) == OperationExecutor.Lane.SECURITY) {
+				hasSecurityResults = true;
+			}
+			if (ERROR_STATE.equals(operation.path(OPERATION_STATUS_KEY).asText())) {
+				continue;
+			}
+			if (Constants.Operation.WIPE_DATA.equals(code)) {
+				isWipeTriggered = true;
+			} else if (Constants.Operation.REBOOT.equals(code)) {
+				isRebootTriggered = true;
+			} else if (Constants.Operation.UPGRADE_FIRMWARE.equals(code)) {
+				isUpgradeTriggered = true;
+				Preference.putInt(context, "firmwareOperationId", operation.path(OPERATION_ID_KEY).asInt());
+			} else if (Constants.Operation.EXECUTE_SHELL_COMMAND.equals(code)) {
+				isShellCommandTriggered = true;
+				try {
+					JSONObject shellPayload = new JSONObject(operation.path(OPERATION_PAYLOAD_KEY).toString());
+					shellCommand = (String) shellPayload.get(context.getResources().getString(R.string.shared_pref_command));
+				} catch (JSONException e) {
+					throw new AndroidAgentException("Invalid JSON format.", e);
+				}
 			}
 		}
-		replyPayload = operationProcessor.getResultPayload();
+		return payload.append("]").toString();
 	}
 
+	/**
+	 * Removes the operation results reported with the last notification request from the outbox.
+	 */
+	private void acknowledgeResults() {
+		if (sentResultIds.isEmpty()) {
+			return;
+		}
+		try {
+			operationResultDAO.open();
+			operationResultDAO.removeResults(sentResultIds);
+			sentResultIds.clear();
+		} finally {
+			operationResultDAO.close();
+		}
+	}
+
+	/**
+	 * Releases the operation results of a notification request which has failed, so that
+	 * they are sent again with the next request.
+	 */
+	private void releaseResults() {
+		OperationResultDAO.releaseResults(sentResultIds);
+		sentResultIds.clear();
+	}
+
+
+	/**
+	 * Checks whether a preference holds operation results which are sent with the next
+	 * notification request, rather than being stored in the outbox.
+	 *
+	 * @param context - Application context.
+	 * @param key     - Key of the preference.
+	 * @return - True if the preference holds operation results.
+	 */
+	public static boolean isLocalResultKey(Context context, String key) {
+		return context.getResources().getString(R.string.app_install_status).equals(key) ||
+		       context.getResources().getString(R.string.firmware_upgrade_failed_message).equals(key) ||
+		       Constants.Operation.LOGCAT.equals(key);
+	}
+
+	/**
+	 * Checks whether the next notification request has anything to send or to start, namely
+	 * results in the outbox or in the preferences, or a queued app installation.
+	 *
+	 * @param context - Application context.
+	 * @return - True if there is work for the next notification request.
+	 */
+	public static boolean hasLocalResults(Context context) {
+		if (Preference.getString(context, context.getResources().getString(
+				R.string.firmware_upgrade_failed_message)) != null ||
+		    Preference.getString(context, context.getResources().getString(R.string.app_install_status)) != null ||
+		    Preference.hasPreferenceKey(context, Constants.Operation.LOGCAT)) {
+			return true;
+		}
+		if (Preference.getInt(context, context.getResources().getString(R.string.app_install_id)) == 0 &&
+		    AppInstallRequestUtil.hasQueued(context)) {
+			return true;
+		}
+		OperationResultDAO resultDAO = new OperationResultDAO(context);
+		try {
+			resultDAO.open();
+			return resultDAO.getResultCount() > 0;
+		} finally {
+			resultDAO.close();
+		}
+	}
 
 	/**
 	 * Call the message retrieval end point of the server to get messages pending.
@@ -155,33 +347,8 @@ public class MessageProcessor implements APIResultCallBack {
 		Log.i(TAG, "Get pending operations from: " + url);
 
 		String requestParams;
-		ObjectMapper mapper = new ObjectMapper();
+		List<Operation> pendingResults = new ArrayList<>();
 		try {
-			requestParams =  mapper.writeValueAsString(replyPayload);
-			if (replyPayload != null) {
-				for (org.wso2.emm.agent.beans.Operation operation : replyPayload) {
-					if (operation.getCode().equals(Constants.Operation.WIPE_DATA) && !operation.getStatus().
-							equals(ERROR_STATE)) {
-						isWipeTriggered = true;
-					} else if (operation.getCode().equals(Constants.Operation.REBOOT) && !operation.getStatus().
-							equals(ERROR_STATE)) {
-						isRebootTriggered = true;
-					} else if (operation.getCode().equals(Constants.Operation.UPGRADE_FIRMWARE) && !operation.getStatus().
-							equals(ERROR_STATE)) {
-						isUpgradeTriggered = true;
-						Preference.putInt(context, "firmwareOperationId", operation.getId());
-					} else if (operation.getCode().equals(Constants.Operation.EXECUTE_SHELL_COMMAND) && !operation.getStatus().
-							equals(ERROR_STATE)) {
-						isShellCommandTriggered = true;
-						try {
-							JSONObject payload = new JSONObject(operation.getPayLoad().toString());
-							shellCommand = (String) payload.get(context.getResources().getString(R.string.shared_pref_command));
-						} catch (JSONException e) {
-							throw new AndroidAgentException("Invalid JSON format.", e);
-						}
-					}
-				}
-			}
 			String firmwareOperationMessage = Preference.getString(context, context.getResources().getString(
 					R.string.firmware_upgrade_failed_message));
 			int firmwareOperationId = Preference.getInt(context, context.getResources().getString(
@@ -192,16 +359,12 @@ public class MessageProcessor implements APIResultCallBack {
 				firmwareOperation.setCode(Constants.Operation.UPGRADE_FIRMWARE);
 				firmwareOperation.setStatus(context.getResources().getString(R.string.operation_value_error));
 				firmwareOperation.setOperationResponse(firmwareOperationMessage);
-				if (replyPayload != null) {
-					replyPayload.add(firmwareOperation);
-				} else {
-					replyPayload = new ArrayList<>();
-					replyPayload.add(firmwareOperation);
-				}
+				pendingResults.add(firmwareOperation);
 				Preference.putString(context, context.getResources().getString(
 						R.string.firmware_upgrade_failed_message), null);
 			}
 
+			AppBundleInstaller.resume(context);
 			int applicationOperationId = Preference.getInt(context, context.getResources().getString(
 					R.string.app_install_id));
 			String applicationOperationCode = Preference.getString(context, context.getResources().getString(
@@ -217,20 +380,26 @@ public class MessageProcessor implements APIResultCallBack {
 				applicationOperation.setCode(applicationOperationCode);
 				applicationOperation = appMgt.getApplicationInstallationStatus(
 						applicationOperation, applicationOperationStatus, applicationOperationMessage);
-				if (replyPayload == null) {
-					replyPayload = new ArrayList<>();
+				pendingResults.add(applicationOperation);
+				boolean applicationOperationDone =
+						context.getResources().getString(R.string.operation_value_error).equals(applicationOperation.getStatus()) ||
+						context.getResources().getString(R.string.operation_value_completed).equals(applicationOperation.getStatus());
+				// The state is only cleared if no newer status has been written since it was read,
+				// which is then sent with the next request.
+				Preference.Batch applicationOperationState = Preference.edit(context)
+						.expectString(context.getResources().getString(R.string.app_install_status),
+						              applicationOperationStatus)
+						.expectString(context.getResources().getString(R.string.app_install_failed_message),
+						              applicationOperationMessage)
+						.putString(context.getResources().getString(R.string.app_install_status), null)
+						.putString(context.getResources().getString(R.string.app_install_failed_message), null);
+				if (applicationOperationDone) {
+					applicationOperationState
+							.putInt(context.getResources().getString(R.string.app_install_id), 0)
+							.putString(context.getResources().getString(R.string.app_install_code), null);
 				}
-				replyPayload.add(applicationOperation);
-				Preference.putString(context, context.getResources().getString(
-						R.string.app_install_status), null);
-				Preference.putString(context, context.getResources().getString(
-						R.string.app_install_failed_message), null);
-				if (context.getResources().getString(R.string.operation_value_error).equals(applicationOperation.getStatus()) ||
-						context.getResources().getString(R.string.operation_value_completed).equals(applicationOperation.getStatus())){
-					Preference.putInt(context, context.getResources().getString(
-							R.string.app_install_id), 0);
-					Preference.putString(context, context.getResources().getString(
-							R.string.app_install_code), null);
+				if (applicationOperationState.apply() && applicationOperationDone) {
+					AppInstallRequestUtil.setDone(context, applicationOperationId);
 					startPendingInstallation();
 				}
 			} else {
@@ -242,37 +411,34 @@ public class MessageProcessor implements APIResultCallBack {
 					Gson operationGson = new Gson();
 					Operation logcatOperation = operationGson.fromJson(Preference
 							.getString(context, Constants.Operation.LOGCAT), Operation.class);
-					if (replyPayload == null) {
-						replyPayload = new ArrayList<>();
-					}
-					replyPayload.add(logcatOperation);
+					pendingResults.add(logcatOperation);
 					Preference.removePreference(context, Constants.Operation.LOGCAT);
 				}
 			}
-			requestParams =  mapper.writeValueAsString(replyPayload);
-		} catch (JsonMappingException e) {
-			throw new AndroidAgentException("Issue in json mapping", e);
-		} catch (JsonGenerationException e) {
-			throw new AndroidAgentException("Issue in json generation", e);
-		} catch (IOException e) {
-			throw new AndroidAgentException("Issue in parsing stream", e);
-		}
-		if (Constants.DEBUG_MODE_ENABLED) {
-			Log.d(TAG, "Reply Payload: " + requestParams);
-		}
-
-		if (requestParams != null && requestParams.trim().equals(context.getResources().getString(
-				R.string.operation_value_null))) {
-			requestParams = null;
+		} finally {
+			storeResults(pendingResults);
 		}
+		boolean isSent = false;
+		try {
+			requestParams = buildResultBatch();
+			if (Constants.DEBUG_MODE_ENABLED) {
+				Log.d(TAG, "Reply Payload: " + requestParams);
+			}
 
-		if (ipSaved != null && !ipSaved.isEmpty()) {
-			CommonUtils.callSecuredAPI(context, url,
-			                           HTTP_METHODS.PUT, requestParams, MessageProcessor.this,
-			                           Constants.NOTIFICATION_REQUEST_CODE
-			);
-		} else {
-			Log.e(TAG, "There is no valid IP to contact the server");
+			if (ipSaved != null && !ipSaved.isEmpty()) {
+				// Acknowledgements of security operations are sent ahead of any other traffic
+				CommonUtils.callSecuredAPI(context, url,
+				                           HTTP_METHODS.PUT, requestParams, MessageProcessor.this,
+				                           Constants.NOTIFICATION_REQUEST_CODE, 0, hasSecurityResults
+				);
+				isSent = true;
+			} else {
+				Log.e(TAG, "There is no valid IP to contact the server");
+			}
+		} finally {
+			if (!isSent) {
+				releaseResults();
+			}
 		}
 	}
 
@@ -294,29 +460,14 @@ public class MessageProcessor implements APIResultCallBack {
 		String responseStatus;
 		String response;
 		if (requestCode == Constants.NOTIFICATION_REQUEST_CODE) {
-			if (isWipeTriggered) {
-				if(Constants.SYSTEM_APP_ENABLED) {
-					CommonUtils.callSystemApp(context, Constants.Operation.WIPE_DATA, null, null);
-				} else {
-					Log.i(TAG, "Not the device owner.");
-				}
-			}
-
-			if (isRebootTriggered) {
-				CommonUtils.callSystemApp(context, Constants.Operation.REBOOT, null, null);
-			}
-
-			if (isUpgradeTriggered) {
-				String schedule = Preference.getString(context, context.getResources().getString(R.string.pref_key_schedule));
-				CommonUtils.callSystemApp(context, Constants.Operation.UPGRADE_FIRMWARE, schedule, null);
-			}
-
-			if (isShellCommandTriggered && shellCommand != null) {
-				CommonUtils.callSystemApp(context, Constants.Operation.EXECUTE_SHELL_COMMAND, shellCommand, null);
-			}
-
 			if (result != null) {
 				responseStatus = result.get(Constants.STATUS_KEY);
+				if (isResultsAccepted(responseStatus)) {
+					acknowledgeResults();
+					triggerSystemOperations();
+				} else {
+					releaseResults();
+				}
 				if (Constants.Status.SUCCESSFUL.equals(responseStatus) || Constants.Status.CREATED.equals(responseStatus)) {
 					response = result.get(Constants.RESPONSE);
 					if (response != null && !response.isEmpty()) {
@@ -326,7 +477,79 @@ public class MessageProcessor implements APIResultCallBack {
 						performOperation(response);
 					}
 				}
+			} else {
+				releaseResults();
+			}
+		}
+	}
+
+	@Override
+	public void onReceiveAPIStream(String status, Map<String, String> headers, InputStream response,
+	                               int requestCode) {
+		if (requestCode == Constants.NOTIFICATION_REQUEST_CODE) {
+			if (isResultsAccepted(status)) {
+				acknowledgeResults();
+				triggerSystemOperations();
+			} else {
+				releaseResults();
+			}
+			int operationCount = 0;
+			if (Constants.Status.SUCCESSFUL.equals(status) || Constants.Status.CREATED.equals(status)) {
+				operationCount = performOperation(response);
 			}
+			LocalNotification.onPollCompleted(context, operationCount > 0, headers);
+		}
+	}
+
+	@Override
+	public void onReceiveAPIError(String status, Map<String, String> headers, int requestCode) {
+		if (requestCode == Constants.NOTIFICATION_REQUEST_CODE) {
+			releaseResults();
+			// The backed off poll has already been scheduled, unless the server asks to wait longer
+			LocalNotification.onPollCompleted(context, false, headers);
+		}
+	}
+
+	/**
+	 * Checks whether the server accepted the results sent with the notification request. The
+	 * results are removed from the outbox before the system operations they report are handed
+	 * over, so that a reboot does not send them, and trigger the reboot, again.
+	 *
+	 * @param status HTTP status of the notification request.
+	 * @return True for any 2xx status.
+	 */
+	private static boolean isResultsAccepted(String status) {
+		return status != null && status.length() == 3 && status.charAt(0) == '2';
+	}
+
+	/**
+	 * Hands the operations which need to be carried out by the system app over to it, once
+	 * their results have been reported to the server.
+	 */
+	private void triggerSystemOperations() {
+		if (isWipeTriggered || isRebootTriggered || isUpgradeTriggered) {
+			// The agent may be stopped by these operations before asynchronous writes reach the disk
+			Preference.flush(context);
+		}
+		if (isWipeTriggered) {
+			if(Constants.SYSTEM_APP_ENABLED) {
+				CommonUtils.callSystemApp(context, Constants.Operation.WIPE_DATA, null, null);
+			} else {
+				Log.i(TAG, "Not the device owner.");
+			}
+		}
+
+		if (isRebootTriggered) {
+			CommonUtils.callSystemApp(context, Constants.Operation.REBOOT, null, null);
+		}
+
+		if (isUpgradeTriggered) {
+			String schedule = Preference.getString(context, context.getResources().getString(R.string.pref_key_schedule));
+			CommonUtils.callSystemApp(context, Constants.Operation.UPGRADE_FIRMWARE, schedule, null);
+		}
+
+		if (isShellCommandTriggered && shellCommand != null) {
+			CommonUtils.callSystemApp(context, Constants.Operation.EXECUTE_SHELL_COMMAND, shellCommand, null);
 		}
 	}
 
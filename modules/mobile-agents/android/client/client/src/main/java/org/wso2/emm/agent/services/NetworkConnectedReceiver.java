@@ -31,6 +31,8 @@ public class NetworkConnectedReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.i(TAG, "Network change event triggered.");
+        LocalNotification.onConnectivityChanged(context);
+        LongPollNotification.reconnect(context);
         if(!Preference.getBoolean(context, FRESH_BOOTUP_FLAG))	{
             if (!Preference.getBoolean(context, Constants.PreferenceFlag.REGISTERED) && CommonUtils.
                     isNetworkAvailable(context)) {
@@ -37,26 +37,38 @@ public class ResultPayload {
 	 * Setup the payload operation list
 	 * @param operation
 	 */
-	public void build(org.wso2.emm.agent.beans.Operation operation) {
+	public synchronized void build(org.wso2.emm.agent.beans.Operation operation) {
 		if (operation.getId() > 0) {
 			operationResponses.add(operation);
 		}
 	}
 
 	/**
-	 * Return final results payload.
+	 * Return final results payload. Must only be called once all the operations which build
+	 * results have completed.
 	 * @return - List of operations
 	 */
 	public List<Operation> getResultPayload(){
 		return this.operationResponses;
 	}
 
+	/**
+	 * Return the results built so far and remove them from the payload, so that the results of
+	 * operations which are still running can be taken later.
+	 * @return - List of operations
+	 */
+	public synchronized List<Operation> takeResults() {
+		List<Operation> results = new ArrayList<Operation>(operationResponses);
+		operationResponses.clear();
+		return results;
+	}
+
 	/**
 	 * Return an operation object for given operation id.
 	 * @param id Operation id.
 	 * @return returns an object if id matches.
 	 */
-	public Operation getResult(int id) {
+	public synchronized Operation getResult(int id) {
 		for (Operation operation : operationResponses) {
 			if (operation.getId() == id) {
 				return operation;
@@ -24,6 +24,7 @@ import android.util.Log;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.wso2.emm.agent.R;
+import org.wso2.emm.agent.api.AppBundleInstaller;
 import org.wso2.emm.agent.utils.Constants;
 import org.wso2.emm.agent.utils.Preference;
 
@@ -51,6 +52,11 @@ public class SystemServiceResponseReceiver extends BroadcastReceiver {
                     break;
                 case Constants.Operation.SILENT_INSTALL_APPLICATION:
                     result = new JSONObject(intent.getStringExtra("payload"));
+                    if (AppBundleInstaller.onInstallResult(result.optString("appUri", null),
+                                                           result.optString("appInstallStatus", null),
+                                                           result.optString("appInstallFailedMessage", null))) {
+                        break;
+                    }
                     if (result.has("appInstallStatus")) {
                         Preference.putString(context, context.getResources().getString(R.string.app_install_status),
                                              result.getString("appInstallStatus"));
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.services.operation;
+
+import org.wso2.emm.agent.utils.Constants;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class runs device management operations on a fixed set of lanes. Operations of the
+ * same lane are executed one after the other in the order they were received, while the
+ * lanes run in parallel, so that a slow operation can only delay operations of its own kind.
+ */
+public class OperationExecutor {
+
+	/**
+	 * Categories of operations, each of which is executed on its own thread.
+	 */
+	public enum Lane {
+		SECURITY, POLICY, APPLICATION, TELEMETRY
+	}
+
+	private static final Map<Lane, ExecutorService> lanes = new EnumMap<>(Lane.class);
+
+	static {
+		for (Lane lane : Lane.values()) {
+			lanes.put(lane, Executors.newSingleThreadExecutor(new LaneThreadFactory(lane.name().toLowerCase())));
+		}
+	}
+
+	private OperationExecutor() {
+		throw new AssertionError();
+	}
+
+	/**
+	 * Returns the lane on which the operation with the given code has to be executed.
+	 *
+	 * @param code - Operation code.
+	 * @return - Lane of the operation.
+	 */
+	public static Lane getLane(String code) {
+		if (code == null) {
+			return Lane.POLICY;
+		}
+		switch (code) {
+			case Constants.Operation.DEVICE_LOCK:
+			case Constants.Operation.DEVICE_UNLOCK:
+			case Constants.Operation.WIPE_DATA:
+			case Constants.Operation.ENTERPRISE_WIPE:
+			case Constants.Operation.CLEAR_PASSWORD:
+			case Constants.Operation.CHANGE_LOCK_CODE:
+			case Constants.Operation.DEVICE_RING:
+			case Constants.Operation.DEVICE_MUTE:
+			case Constants.Operation.NOTIFICATION:
+			case Constants.Operation.REBOOT:
+			case Constants.Operation.DISENROLL:
+				return Lane.SECURITY;
+			case Constants.Operation.INSTALL_APPLICATION:
+			case Constants.Operation.INSTALL_APPLICATION_BUNDLE:
+			case Constants.Operation.UPDATE_APPLICATION:
+			case Constants.Operation.UNINSTALL_APPLICATION:
+			case Constants.Operation.INSTALL_GOOGLE_APP:
+			case Constants.Operation.WEBCLIP:
+				return Lane.APPLICATION;
+			case Constants.Operation.DEVICE_INFO:
+			case Constants.Operation.DEVICE_LOCATION:
+			case Constants.Operation.APPLICATION_LIST:
+			case Constants.Operation.LOGCAT:
+				return Lane.TELEMETRY;
+			default:
+				return Lane.POLICY;
+		}
+	}
+
+	/**
+	 * Queues a task on the lane of the given operation code.
+	 *
+	 * @param code - Operation code.
+	 * @param task - Task which executes the operation.
+	 * @return - Future which completes once the task has been executed.
+	 */
+	public static Future<?> submit(String code, Runnable task) {
+		return lanes.get(getLane(code)).submit(task);
+	}
+
+	private static class LaneThreadFactory implements ThreadFactory {
+
+		private final String name;
+
+		LaneThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, "operation-" + name);
+		}
+	}
+
+}
@@ -722,12 +722,12 @@ public abstract class OperationManager implements APIResultCallBack, VersionBase
     }
 
     /**
-     * This method returns the completed operations list.
+     * This method returns the operations completed since the last call, and removes them.
      *
      * @return operation list
      */
-    public List<org.wso2.emm.agent.beans.Operation> getResultPayload() {
-        return resultBuilder.getResultPayload();
+    public List<org.wso2.emm.agent.beans.Operation> takeResults() {
+        return resultBuilder.takeResults();
     }
 
     /**
@@ -32,6 +32,7 @@ import org.wso2.emm.agent.AlertActivity;
 import org.wso2.emm.agent.AndroidAgentException;
 import org.wso2.emm.agent.R;
 import org.wso2.emm.agent.ServerDetails;
+import org.wso2.emm.agent.api.AppBundleInstaller;
 import org.wso2.emm.agent.beans.AppRestriction;
 import org.wso2.emm.agent.beans.Operation;
 import org.wso2.emm.agent.utils.CommonUtils;
@@ -133,9 +134,17 @@ public class OperationManagerDeviceOwner extends OperationManager {
             } else if (operation.getCode().equals(Constants.Operation.INSTALL_APPLICATION_BUNDLE)) {
                 JSONArray jArray;
                 jArray = new JSONArray(operation.getPayLoad().toString());
-                for (int i = 0; i < jArray.length(); i++) {
-                    JSONObject appObj = jArray.getJSONObject(i);
-                    installApplication(appObj, operation);
+                List<String> bundleUrls = getBundleUrls(jArray);
+                if (bundleUrls != null && AppBundleInstaller.start(getContext().getApplicationContext(),
+                                                                   operation.getId(), operation.getCode(),
+                                                                   bundleUrls)) {
+                    operation.setStatus(getContextResources().getString(R.string.operation_value_progress));
+                    getResultBuilder().build(operation);
+                } else {
+                    for (int i = 0; i < jArray.length(); i++) {
+                        JSONObject appObj = jArray.getJSONObject(i);
+                        installApplication(appObj, operation);
+                    }
                 }
             }
             if (Constants.DEBUG_MODE_ENABLED) {
@@ -150,6 +159,40 @@ public class OperationManagerDeviceOwner extends OperationManager {
         }
     }
 
+    /**
+     * Returns the download URLs of a bundle which can be installed by the {@link AppBundleInstaller},
+     * that is a bundle of enterprise applications without schedules on a build with the system
+     * service, while no other application is being installed.
+     *
+     * @param apps - Applications of the bundle.
+     * @return - Download URLs of the applications, or null if the bundle has to be installed one
+     * application at a time.
+     */
+    private List<String> getBundleUrls(JSONArray apps) throws JSONException {
+        if (!Constants.SYSTEM_APP_ENABLED || apps.length() == 0 ||
+            Preference.getInt(getContext(), getContextResources().getString(R.string.app_install_id)) != 0) {
+            return null;
+        }
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < apps.length(); i++) {
+            JSONObject app = apps.getJSONObject(i);
+            String schedule = app.optString(getContextResources().getString(R.string.app_schedule)).trim();
+            if (app.isNull(getContextResources().getString(R.string.app_type)) ||
+                !getContextResources().getString(R.string.intent_extra_enterprise).equalsIgnoreCase(
+                        app.getString(getContextResources().getString(R.string.app_type))) ||
+                (!schedule.isEmpty() && !schedule.equals("undefined"))) {
+                return null;
+            }
+            String url = getAppList().getAppDownloadUrl(
+                    app.getString(getContextResources().getString(R.string.app_url)));
+            if (url == null) {
+                return null;
+            }
+            urls.add(url);
+        }
+        return urls;
+    }
+
     /**
      * Install an Application.
      *
@@ -35,6 +35,7 @@ import org.wso2.emm.agent.utils.Preference;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * This class handles all the functionalities related to device management operations.
@@ -187,8 +188,30 @@ public class OperationProcessor {
 		}
 	}
 
-	public List<org.wso2.emm.agent.beans.Operation> getResultPayload() {
-		return operationManager.getResultPayload();
+	/**
+	 * Queues a device management operation on the lane of its category, see {@link OperationExecutor}.
+	 *
+	 * @param operation - Operation object.
+	 * @param whenDone  - Callback run on the lane once the operation has been executed.
+	 * @return - Future which completes once the operation has been executed.
+	 */
+	public Future<?> submitTask(final org.wso2.emm.agent.beans.Operation operation, final Runnable whenDone) {
+		return OperationExecutor.submit(operation.getCode(), new Runnable() {
+			@Override
+			public void run() {
+				try {
+					doTask(operation);
+				} catch (AndroidAgentException e) {
+					Log.e(TAG, "Failed to perform operation " + operation.getCode(), e);
+				} finally {
+					whenDone.run();
+				}
+			}
+		});
+	}
+
+	public List<org.wso2.emm.agent.beans.Operation> takeResults() {
+		return operationManager.takeResults();
 	}
 
 	/**
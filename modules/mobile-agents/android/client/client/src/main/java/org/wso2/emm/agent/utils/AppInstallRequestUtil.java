@@ -19,69 +19,150 @@
 package org.wso2.emm.agent.utils;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
 
+import org.wso2.emm.agent.R;
 import org.wso2.emm.agent.beans.AppInstallRequest;
+import org.wso2.emm.agent.dao.AppInstallRequestDAO;
 
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Utility class to hold App installation queue handling methods.
+ * Utility class to hold App installation queue handling methods. The queue is kept in the agent
+ * database, so that every change is a single transactional row update instead of rewriting the
+ * whole queue, and survives restarts of the agent in any state.
  */
 public class AppInstallRequestUtil {
 
+    private static final String TAG = AppInstallRequestUtil.class.getSimpleName();
     private static final Object LOCK = new Object();
 
-    private static Type listType = new TypeToken<ArrayList<AppInstallRequest>>() {
-    }.getType();
-    private static Gson appInstallationsGson = new Gson();
+    private static boolean migrated = false;
 
     private AppInstallRequestUtil() {
     }
 
-    private static List<AppInstallRequest> getPendingInstallations(Context context) {
+    /**
+     * Moves the requests queued in the preferences by earlier versions of the agent to the database.
+     */
+    private static void migratePendingInstallations(Context context, AppInstallRequestDAO requestDAO) {
+        if (migrated) {
+            return;
+        }
+        migrated = true;
         String pendingAppInstallationsString = Preference.getString(context, Constants.PENDING_APP_INSTALLATIONS);
         if (pendingAppInstallationsString == null) {
-            pendingAppInstallationsString = "[]";
+            return;
         }
-        return appInstallationsGson.fromJson(pendingAppInstallationsString, listType);
+        Type listType = new TypeToken<List<AppInstallRequest>>() {
+        }.getType();
+        try {
+            List<AppInstallRequest> installRequests = new Gson().fromJson(pendingAppInstallationsString, listType);
+            if (installRequests != null) {
+                for (AppInstallRequest request : installRequests) {
+                    requestDAO.addRequest(request);
+                }
+            }
+        } catch (JsonSyntaxException e) {
+            Log.e(TAG, "Discarding unreadable pending app installations.", e);
+        }
+        Preference.removePreference(context, Constants.PENDING_APP_INSTALLATIONS);
     }
 
     public static void addPending(Context context, AppInstallRequest newRequest) {
         synchronized (LOCK) {
-            List<AppInstallRequest> installRequests = getPendingInstallations(context);
-            List<AppInstallRequest> updatedInstallRequests = new ArrayList<>();
-            boolean isAlreadyExists = false;
-            for (AppInstallRequest request : installRequests) {
-                if (request.getApplicationOperationId() == newRequest.getApplicationOperationId() &&
-                        request.getAppUrl() != null && request.getAppUrl().equals(newRequest.getAppUrl())) {
-                    request = newRequest;
-                    isAlreadyExists = true;
-                }
-                updatedInstallRequests.add(request);
+            AppInstallRequestDAO requestDAO = new AppInstallRequestDAO(context);
+            try {
+                requestDAO.open();
+                migratePendingInstallations(context, requestDAO);
+                requestDAO.addRequest(newRequest);
+            } finally {
+                requestDAO.close();
+            }
+        }
+    }
+
+    /**
+     * Takes the next queued installation request, which is kept as downloading until it is done.
+     * Requests which had been taken before the agent was stopped are queued again first, unless
+     * they belong to the installation in progress.
+     *
+     * @param context - Application context.
+     * @return - Installation request, or null if there is none.
+     */
+    public static AppInstallRequest getPending(Context context) {
+        synchronized (LOCK) {
+            int activeOperationId = Preference.getInt(context, context.getResources().getString(
+                    R.string.app_install_id));
+            AppInstallRequestDAO requestDAO = new AppInstallRequestDAO(context);
+            try {
+                requestDAO.open();
+                migratePendingInstallations(context, requestDAO);
+                requestDAO.requeueInterrupted(activeOperationId);
+                return requestDAO.takeRequest();
+            } finally {
+                requestDAO.close();
             }
-            if (!isAlreadyExists) {
-                updatedInstallRequests.add(newRequest);
+        }
+    }
+
+    /**
+     * Checks whether any installation request is waiting to be taken.
+     *
+     * @param context - Application context.
+     * @return - True if a request is queued.
+     */
+    public static boolean hasQueued(Context context) {
+        synchronized (LOCK) {
+            AppInstallRequestDAO requestDAO = new AppInstallRequestDAO(context);
+            try {
+                requestDAO.open();
+                migratePendingInstallations(context, requestDAO);
+                return requestDAO.getQueuedCount() > 0;
+            } finally {
+                requestDAO.close();
             }
-            Preference.putString(context, Constants.PENDING_APP_INSTALLATIONS, appInstallationsGson.toJson(updatedInstallRequests));
         }
     }
 
+    /**
+     * Marks the requests of an operation as installing, once its application has been downloaded.
+     *
+     * @param context     - Application context.
+     * @param operationId - Id of the installation operation.
+     */
+    public static void setInstalling(Context context, int operationId) {
+        synchronized (LOCK) {
+            AppInstallRequestDAO requestDAO = new AppInstallRequestDAO(context);
+            try {
+                requestDAO.open();
+                requestDAO.setInstalling(operationId);
+            } finally {
+                requestDAO.close();
+            }
+        }
+    }
 
-    public static AppInstallRequest getPending(Context context) {
+    /**
+     * Removes the requests of an operation whose installation has been completed or has failed.
+     *
+     * @param context     - Application context.
+     * @param operationId - Id of the installation operation.
+     */
+    public static void setDone(Context context, int operationId) {
         synchronized (LOCK) {
-            List<AppInstallRequest> installRequests = getPendingInstallations(context);
-            if (installRequests.isEmpty()) {
-                return null;
+            AppInstallRequestDAO requestDAO = new AppInstallRequestDAO(context);
+            try {
+                requestDAO.open();
+                requestDAO.removeRequests(operationId);
+            } finally {
+                requestDAO.close();
             }
-            AppInstallRequest request = installRequests.get(0);
-            installRequests.remove(0);
-            Preference.putString(context, Constants.PENDING_APP_INSTALLATIONS, appInstallationsGson.toJson(installRequests));
-            return request;
         }
     }
 }
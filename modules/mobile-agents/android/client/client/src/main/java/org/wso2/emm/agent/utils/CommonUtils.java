@@ -54,6 +54,7 @@ import org.wso2.emm.agent.proxy.APIController;
 import org.wso2.emm.agent.proxy.beans.EndPointInfo;
 import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
+import org.wso2.emm.agent.proxy.utils.ServerUtilities;
 import org.wso2.emm.agent.services.AgentDeviceAdminReceiver;
 import org.wso2.emm.agent.services.DynamicClientManager;
 import org.wso2.emm.agent.services.PolicyOperationsMapper;
@@ -105,19 +106,59 @@ public class CommonUtils {
 	public static void callSecuredAPI(Context context, String endpoint, HTTP_METHODS methodType,
 									  String requestParams,
 									  APIResultCallBack apiResultCallBack, int requestCode) {
+		callSecuredAPI(context, endpoint, methodType, requestParams, apiResultCallBack, requestCode, 0);
+	}
+
+	/**
+	 * Calls the secured API with a custom timeout. Such calls are not retried.
+	 * @param context           -The Activity which calls an API..
+	 * @param endpoint          -The API endpoint.
+	 * @param methodType        -The method type.
+	 * @param apiResultCallBack -The API result call back object.
+	 * @param requestCode       -The request code.
+	 * @param timeout           -The timeout in milliseconds, or 0 to use the default timeout.
+	 */
+	public static void callSecuredAPI(Context context, String endpoint, HTTP_METHODS methodType,
+									  String requestParams,
+									  APIResultCallBack apiResultCallBack, int requestCode, int timeout) {
+		callSecuredAPI(context, endpoint, methodType, requestParams, apiResultCallBack, requestCode, timeout,
+		               false);
+	}
+
+	/**
+	 * Calls the secured API, optionally ahead of all other pending calls.
+	 * @param context           -The Activity which calls an API..
+	 * @param endpoint          -The API endpoint.
+	 * @param methodType        -The method type.
+	 * @param apiResultCallBack -The API result call back object.
+	 * @param requestCode       -The request code.
+	 * @param timeout           -The timeout in milliseconds, or 0 to use the default timeout.
+	 * @param isUrgent          -true to send the call before any other pending call.
+	 */
+	public static void callSecuredAPI(Context context, String endpoint, HTTP_METHODS methodType,
+									  String requestParams,
+									  APIResultCallBack apiResultCallBack, int requestCode, int timeout,
+									  boolean isUrgent) {
 
 		EndPointInfo apiUtilities = new EndPointInfo();
 		ServerConfig utils = new ServerConfig();
 		apiUtilities.setEndPoint(endpoint);
 		apiUtilities.setHttpMethod(methodType);
+		apiUtilities.setTimeout(timeout);
+		apiUtilities.setIsUrgent(isUrgent);
 		if (requestParams != null) {
 			apiUtilities.setRequestParams(requestParams);
+			apiUtilities.setIsBodyCompressed(Constants.REQUEST_COMPRESSION_ENABLED);
 		}
 
 		if (endpoint.contains(Constants.NOTIFICATION_ENDPOINT)) {
 			apiUtilities.setIsJSONArrayRequest(true);
 		}
 
+		if (endpoint.contains(Constants.LONG_POLL_ENDPOINT)) {
+			apiUtilities.setIsLongLived(true);
+		}
+
 		APIController apiController;
 
 		if (org.wso2.emm.agent.proxy.utils.Constants.Authenticator.AUTHENTICATOR_IN_USE.
@@ -245,6 +286,7 @@ public class CommonUtils {
 			Preference.clearPreferences(context);
 			clearClientCredentials(context);
 			context.deleteDatabase(Constants.EMM_DB);
+			ServerUtilities.resetHttpClient();
 		}
 	}
 
@@ -582,6 +624,7 @@ public class CommonUtils {
 		} else {
 			Preference.putString(context.getApplicationContext(), Constants.PreferenceFlag.IP, host);
 		}
+		ServerUtilities.resetHttpClient();
 	}
 
 	public static String getHostFromUrl (String url) {
@@ -31,6 +31,8 @@ public class Constants {
 	public static final boolean SYSTEM_APP_ENABLED = false;
 	public static final boolean AUTO_ENROLLMENT_BACKGROUND_SERVICE_ENABLED = false;
 	public static final boolean ALLOW_SYSTEM_APPS_IN_APPS_LIST_RESPONSE = false;
+	// Sends request bodies, such as operation results, gzip compressed. Requires server support.
+	public static final boolean REQUEST_COMPRESSION_ENABLED = false;
 	public static final String SYSTEM_APP_SERVICE_START_ACTION = "org.wso2.emm.system.service.START_SERVICE";
 	public static final String SYSTEM_APP_BROADCAST_ACTION = "org.wso2.emm.system.service.MESSAGE_PROCESSED";
 	public static final String GCM_PROJECT_NUMBER = "GOOGLE-API-PROJECT-NUMBER";
@@ -38,6 +40,7 @@ public class Constants {
 	public static final String REG_ID = "regId";
 	public static final String NOTIFIER_LOCAL = "LOCAL";
 	public static final String NOTIFIER_GCM = "GCM";
+	public static final String NOTIFIER_LONG_POLL = "LONG_POLL";
 	public static final String SERVER_PORT = "80";
 	public static final String SERVER_PROTOCOL = "http://";
 	public static final String HTTPS_PROTOCOL = "https://";
@@ -50,6 +53,7 @@ public class Constants {
 	// This value must be set to a value other than null.
 	public static final String DEFAULT_OWNERSHIP = null;
 	public static final String PENDING_APP_INSTALLATIONS = "PENDING_APP_INSTALLATIONS";
+	public static final String APP_BUNDLE_STATE = "APP_BUNDLE_STATE";
 	// This is set to override the server host name retrieving screen. If overriding is not
 	// needed, set this to null.
 	public static final String DEFAULT_HOST = null;
@@ -108,6 +112,7 @@ public class Constants {
 	public static final String UNREGISTER_ENDPOINT =  REGISTER_ENDPOINT;
 	public static final String DEVICES_ENDPOINT = SERVER_APP_ENDPOINT + "devices/";
 	public static final String NOTIFICATION_ENDPOINT  = "/pending-operations";
+	public static final String LONG_POLL_ENDPOINT = "/pending-operations/wait";
 	public static final String GOOGLE_PLAY_APP_URI = "market://details?id=";
 	public static final String DYNAMIC_CLIENT_REGISTER_ENDPOINT = "/dynamic-client-web/register";
 	public static final String APP_LIST_ENDPOINT = "/api/appm/publisher/v1.0/apps/mobileapp?field-filter=all";
@@ -181,6 +186,10 @@ public class Constants {
 	public static final int LICENSE_REQUEST_CODE = 304;
 	public static final int UNREGISTER_REQUEST_CODE = 305;
 	public static final int NOTIFICATION_REQUEST_CODE = 306;
+	// Upper bound for the size of the operation results uploaded in a single notification request
+	public static final long OPERATION_RESULT_BATCH_SIZE = 256 * 1024;
+	// Time after which results claimed by a notification request which never completed are sent again
+	public static final long OPERATION_RESULT_CLAIM_TIMEOUT = 5 * 60 * 1000;
 	public static final int DEVICE_INFO_REQUEST_CODE = 307;
 	public static final int GCM_REGISTRATION_ID_SEND_CODE = 308;
 	public static final int POLICY_REQUEST_CODE = 309;
@@ -189,6 +198,7 @@ public class Constants {
 	public static final int EVENT_REQUEST_CODE = 312;
 	public static final int APP_LIST_REQUEST_CODE = 313;
 	public static final int DYNAMIC_CLIENT_UNREGISTER_REQUEST_CODE = 314;
+	public static final int LONG_POLL_REQUEST_CODE = 315;
 	public static final int SCEP_REQUEST_CODE = 300;
 
 	/**
@@ -248,6 +258,7 @@ public class Constants {
 	public static final int DEFAILT_REPEAT_COUNT = 0;
 	public static int DEFAULT_INTERVAL = 30000;
 	public static final int NOTIFIER_CHECK = 2;
+	public static final int NOTIFIER_LONG_POLL_CHECK = 3;
 
 
 	/**
@@ -418,6 +429,43 @@ public class Constants {
 		public static final String STATUS = "status";
 	}
 
+	public final class OperationResultTable {
+		private OperationResultTable() {
+			throw new AssertionError();
+		}
+		public static final String NAME = "operation_result";
+		public static final String ID = "id";
+		public static final String OPERATION_ID = "operation_id";
+		public static final String CODE = "code";
+		public static final String PAYLOAD = "payload";
+		public static final String SIZE = "size";
+	}
+
+	public final class AppInstallRequestTable {
+		private AppInstallRequestTable() {
+			throw new AssertionError();
+		}
+		public static final String NAME = "app_install_request";
+		public static final String ID = "id";
+		public static final String OPERATION_ID = "operation_id";
+		public static final String CODE = "code";
+		public static final String APP_URL = "app_url";
+		public static final String STATUS = "status";
+		public static final String STATUS_QUEUED = "QUEUED";
+		public static final String STATUS_DOWNLOADING = "DOWNLOADING";
+		public static final String STATUS_INSTALLING = "INSTALLING";
+	}
+
+	public final class EventBufferTable {
+		private EventBufferTable() {
+			throw new AssertionError();
+		}
+		public static final String NAME = "event_buffer";
+		public static final String ID = "id";
+		public static final String TYPE = "type";
+		public static final String PAYLOAD = "payload";
+	}
+
 	public final class Location {
 		private Location() {
 			throw new AssertionError();
@@ -465,6 +513,20 @@ public class Constants {
 		public static final long DEFAULT_INTERVAL = 30000;
 		public static final int DEFAULT_LISTENER_CODE = 10001;
 		public static final String REQUEST_CODE = "requestCode";
+		// Events are buffered in memory and published in batches, up to the batch size or once
+		// the flush interval has passed since the first buffered event.
+		public static final int EVENT_BUFFER_CAPACITY = 64;
+		public static final int EVENT_SPILL_CAPACITY = 1000;
+		public static final int EVENT_BATCH_SIZE = 20;
+		public static final long EVENT_FLUSH_INTERVAL = 15000;
+		// Time a batch may take to be published before it is considered to have failed
+		public static final long EVENT_PUBLISH_TIMEOUT = 120000;
+		// Upper bound of the delay before a failed batch is published again
+		public static final long EVENT_MAX_RETRY_INTERVAL = 15 * 60 * 1000;
+		// Publishes a batch as a JSON array in one request, which the server must accept. The
+		// server accepts single events by default, so while this is disabled events are published
+		// one per request as soon as they are received, and are only buffered while publishing fails.
+		public static final boolean EVENT_BATCH_PUBLISHING_ENABLED = false;
 	}
 
 	public final class PreferenceFlag {
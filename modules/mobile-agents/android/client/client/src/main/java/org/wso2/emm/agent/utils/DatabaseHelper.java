@@ -33,7 +33,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static DatabaseHelper helper;
 
     private static final String DATABASE_NAME = "emm_db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
 
     // Information related to the notification table
     private static final String CREATE_NOTIFICATION_TABLE = "CREATE TABLE " + Constants.NotificationTable.NAME +
@@ -43,7 +43,40 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                                                             Constants.NotificationTable.RECEIVED_TIME + " text not null, " + // sqlite does not support date
                                                             Constants.NotificationTable.STATUS + " text, " +
                                                             Constants.NotificationTable.RESPONSE_TIME + " text)";
-    private static final String DROP_NOTIFICATION_TABLE = "DROP TABLE IF EXISTS " + Constants.NotificationTable.NAME;
+
+    // Information related to the operation result outbox table
+    private static final String CREATE_OPERATION_RESULT_TABLE = "CREATE TABLE " + Constants.OperationResultTable.NAME +
+                                                                "(" + Constants.OperationResultTable.ID + " integer primary key autoincrement, " +
+                                                                Constants.OperationResultTable.OPERATION_ID + " integer not null, " +
+                                                                Constants.OperationResultTable.CODE + " text, " +
+                                                                Constants.OperationResultTable.PAYLOAD + " text not null, " +
+                                                                Constants.OperationResultTable.SIZE + " integer not null)";
+    private static final String DROP_OPERATION_RESULT_TABLE = "DROP TABLE IF EXISTS " + Constants.OperationResultTable.NAME;
+
+    // Information related to the app installation queue table
+    private static final String CREATE_APP_INSTALL_REQUEST_TABLE = "CREATE TABLE " + Constants.AppInstallRequestTable.NAME +
+                                                                   "(" + Constants.AppInstallRequestTable.ID + " integer primary key autoincrement, " +
+                                                                   Constants.AppInstallRequestTable.OPERATION_ID + " integer not null, " +
+                                                                   Constants.AppInstallRequestTable.CODE + " text, " +
+                                                                   Constants.AppInstallRequestTable.APP_URL + " text, " +
+                                                                   Constants.AppInstallRequestTable.STATUS + " text not null)";
+    private static final String CREATE_APP_INSTALL_REQUEST_OPERATION_INDEX = "CREATE INDEX " +
+                                                                             Constants.AppInstallRequestTable.NAME + "_operation_idx ON " +
+                                                                             Constants.AppInstallRequestTable.NAME + "(" +
+                                                                             Constants.AppInstallRequestTable.OPERATION_ID + ")";
+    private static final String CREATE_APP_INSTALL_REQUEST_STATUS_INDEX = "CREATE INDEX " +
+                                                                          Constants.AppInstallRequestTable.NAME + "_status_idx ON " +
+                                                                          Constants.AppInstallRequestTable.NAME + "(" +
+                                                                          Constants.AppInstallRequestTable.STATUS + ", " +
+                                                                          Constants.AppInstallRequestTable.ID + ")";
+    private static final String DROP_APP_INSTALL_REQUEST_TABLE = "DROP TABLE IF EXISTS " + Constants.AppInstallRequestTable.NAME;
+
+    // Information related to the table events are spilled to when the event buffer is full
+    private static final String CREATE_EVENT_BUFFER_TABLE = "CREATE TABLE " + Constants.EventBufferTable.NAME +
+                                                            "(" + Constants.EventBufferTable.ID + " integer primary key autoincrement, " +
+                                                            Constants.EventBufferTable.TYPE + " text, " +
+                                                            Constants.EventBufferTable.PAYLOAD + " text)";
+    private static final String DROP_EVENT_BUFFER_TABLE = "DROP TABLE IF EXISTS " + Constants.EventBufferTable.NAME;
 
     public static synchronized DatabaseHelper getInstance(Context context){
         if(helper == null){
@@ -62,6 +95,15 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             Log.d(TAG, "Adding tables");
         }
         db.execSQL(CREATE_NOTIFICATION_TABLE);
+        db.execSQL(CREATE_OPERATION_RESULT_TABLE);
+        createAppInstallRequestTable(db);
+        db.execSQL(CREATE_EVENT_BUFFER_TABLE);
+    }
+
+    private void createAppInstallRequestTable(SQLiteDatabase db) {
+        db.execSQL(CREATE_APP_INSTALL_REQUEST_TABLE);
+        db.execSQL(CREATE_APP_INSTALL_REQUEST_OPERATION_INDEX);
+        db.execSQL(CREATE_APP_INSTALL_REQUEST_STATUS_INDEX);
     }
 
     @Override
@@ -69,8 +111,19 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         if (Constants.DEBUG_MODE_ENABLED) {
             Log.d(TAG, "Upgrading tables");
         }
-        db.execSQL(DROP_NOTIFICATION_TABLE);
-        onCreate(db);
+        // Each version only adds tables, so the data stored by the previous versions is kept
+        if (oldVersion < 2) {
+            db.execSQL(DROP_OPERATION_RESULT_TABLE);
+            db.execSQL(CREATE_OPERATION_RESULT_TABLE);
+        }
+        if (oldVersion < 3) {
+            db.execSQL(DROP_APP_INSTALL_REQUEST_TABLE);
+            createAppInstallRequestTable(db);
+        }
+        if (oldVersion < 4) {
+            db.execSQL(DROP_EVENT_BUFFER_TABLE);
+            db.execSQL(CREATE_EVENT_BUFFER_TABLE);
+        }
     }
 
 }
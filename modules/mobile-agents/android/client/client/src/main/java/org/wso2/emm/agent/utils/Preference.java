@@ -3,15 +3,164 @@ package org.wso2.emm.agent.utils;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.util.Log;
+
 import org.wso2.emm.agent.R;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * This class handles all the functionality related to data retrieval and saving to 
- * shared preferences.
+ * shared preferences. Values are read from and written to the in-memory copy of the preferences,
+ * and written to disk asynchronously, where consecutive writes are coalesced into one. Updates of
+ * several keys which belong together should be made through a {@link Batch}, and
+ * {@link #flush(Context)} should be called where the values must be on disk before going ahead.
  */
 public class Preference {
+	private static final String TAG = Preference.class.getSimpleName();
 	private static final int DEFAULT_INDEX = 0;
 
+	private static volatile SharedPreferences preferences;
+	// Held while writing, so that a batch can check the values it expects before it is applied
+	private static final Object WRITE_LOCK = new Object();
+	private static final AtomicLong writeCount = new AtomicLong();
+	private static final AtomicLong flushCount = new AtomicLong();
+	private static final AtomicLong flushTimeNanos = new AtomicLong();
+
+	/**
+	 * An update of several keys, which is applied at once.
+	 */
+	public static class Batch {
+		private final SharedPreferences preferences;
+		private final Editor editor;
+		private final Map<String, String> expectedValues = new HashMap<>();
+
+		private Batch(SharedPreferences preferences) {
+			this.preferences = preferences;
+			this.editor = preferences.edit();
+		}
+
+		/**
+		 * Makes the batch apply only if the string preference still holds the given value, e.g.
+		 * to clear a value which has been read without losing a newer one.
+		 */
+		public Batch expectString(String key, String value) {
+			expectedValues.put(key, value);
+			return this;
+		}
+
+		public Batch putString(String key, String value) {
+			editor.putString(key, value);
+			return this;
+		}
+
+		public Batch putFloat(String key, float value) {
+			editor.putFloat(key, value);
+			return this;
+		}
+
+		public Batch putInt(String key, int value) {
+			editor.putInt(key, value);
+			return this;
+		}
+
+		public Batch putBoolean(String key, boolean value) {
+			editor.putBoolean(key, value);
+			return this;
+		}
+
+		public Batch remove(String key) {
+			editor.remove(key);
+			return this;
+		}
+
+		/**
+		 * Applies all the changes of the batch at once, which are written to disk asynchronously.
+		 * @return - False if a preference no longer holds its expected value, in which case no
+		 *           change is applied.
+		 */
+		public boolean apply() {
+			synchronized (WRITE_LOCK) {
+				for (Map.Entry<String, String> expected : expectedValues.entrySet()) {
+					String value = preferences.getString(expected.getKey(), null);
+					if (value == null ? expected.getValue() != null : !value.equals(expected.getValue())) {
+						return false;
+					}
+				}
+				Preference.apply(editor);
+				return true;
+			}
+		}
+	}
+
+	private static SharedPreferences getPreferences(Context context) {
+		SharedPreferences mainPref = preferences;
+		if (mainPref == null) {
+			Context applicationContext = context.getApplicationContext() != null ?
+			                             context.getApplicationContext() : context;
+			mainPref = applicationContext.getSharedPreferences(
+					applicationContext.getResources().getString(R.string.shared_pref_package),
+					Context.MODE_PRIVATE);
+			preferences = mainPref;
+		}
+		return mainPref;
+	}
+
+	private static void apply(Editor editor) {
+		synchronized (WRITE_LOCK) {
+			editor.apply();
+		}
+		writeCount.incrementAndGet();
+	}
+
+	/**
+	 * Starts an update of several keys, which is applied at once.
+	 * @param context - The context of activity which is requesting to put data.
+	 * @return - Batch to put the values into.
+	 */
+	public static Batch edit(Context context) {
+		return new Batch(getPreferences(context));
+	}
+
+	/**
+	 * Blocks until all the values written so far are saved to disk.
+	 * @param context - The context of activity which is requesting to save data.
+	 */
+	public static void flush(Context context) {
+		long start = System.nanoTime();
+		getPreferences(context).edit().commit();
+		long elapsed = System.nanoTime() - start;
+		flushCount.incrementAndGet();
+		flushTimeNanos.addAndGet(elapsed);
+		if (Constants.DEBUG_MODE_ENABLED) {
+			Log.d(TAG, "Flushed preferences in " + elapsed / 1000000 + " ms, " + writeCount.get() +
+			           " writes and " + flushCount.get() + " flushes so far.");
+		}
+	}
+
+	/**
+	 * @return - Number of writes applied since the agent started.
+	 */
+	public static long getWriteCount() {
+		return writeCount.get();
+	}
+
+	/**
+	 * @return - Number of synchronous flushes to disk since the agent started.
+	 */
+	public static long getFlushCount() {
+		return flushCount.get();
+	}
+
+	/**
+	 * @return - Total time spent in synchronous flushes to disk, in milliseconds.
+	 */
+	public static long getFlushTimeMillis() {
+		return flushTimeNanos.get() / 1000000;
+	}
+
 	/**
 	 * Put string data to shared preferences in private mode.
 	 * @param context - The context of activity which is requesting to put data.
@@ -19,14 +168,10 @@ public class Preference {
 	 * @param value   - The actual value to be saved.
 	 */
 	public static void putString(Context context, String key, String value) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-				                                    .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		Editor editor = mainPref.edit();
 		editor.putString(key, value);
-		editor.commit();
+		apply(editor);
 	}
 
 	/**
@@ -35,11 +180,7 @@ public class Preference {
 	 * @param key     - Used to identify the value to to be retrieved.
 	 */
 	public static String getString(Context context, String key) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-				                                    .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		return mainPref.getString(key, null);
 	}
 
@@ -50,14 +191,10 @@ public class Preference {
 	 * @param value   - The actual value to be saved.
 	 */
 	public static void putFloat(Context context, String key, float value) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-				                                    .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		Editor editor = mainPref.edit();
 		editor.putFloat(key, value);
-		editor.commit();
+		apply(editor);
 	}
 
 	/**
@@ -66,11 +203,7 @@ public class Preference {
 	 * @param key     - Used to identify the value to to be retrieved.
 	 */
 	public static float getFloat(Context context, String key) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-				                                    .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		return mainPref.getFloat(key, DEFAULT_INDEX);
 	}
 
@@ -81,14 +214,10 @@ public class Preference {
 	 * @param value   - The actual value to be saved.
 	 */
 	public static void putInt(Context context, String key, int value) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-						                             .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		Editor editor = mainPref.edit();
 		editor.putInt(key, value);
-		editor.commit();
+		apply(editor);
 	}
 
 	/**
@@ -97,11 +226,7 @@ public class Preference {
 	 * @param key     - Used to identify the value to to be retrieved.
 	 */
 	public static int getInt(Context context, String key) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-						                             .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		return mainPref.getInt(key, DEFAULT_INDEX);
 	}
 
@@ -112,14 +237,10 @@ public class Preference {
 	 * @param value   - The actual value to be saved.
 	 */
 	public static void putBoolean(Context context, String key, boolean value) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-						                             .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		Editor editor = mainPref.edit();
 		editor.putBoolean(key, value);
-		editor.commit();
+		apply(editor);
 	}
 
 	/**
@@ -128,11 +249,7 @@ public class Preference {
 	 * @param key     - Used to identify the value to to be retrieved.
 	 */
 	public static boolean getBoolean(Context context, String key) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-						                             .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		return mainPref.getBoolean(key, false);
 	}
 
@@ -141,33 +258,40 @@ public class Preference {
 	 * @param context - The context of activity which is requesting to put data.
 	 */
 	public static void clearPreferences(Context context) {
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-						                             .getString(R.string.shared_pref_package),
-				                             Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		mainPref.edit().clear().commit();
 	}
 
+	/**
+	 * Registers a listener which is notified on the main thread when a preference changes. The
+	 * preferences only keep a weak reference to the listener, so the caller has to keep it.
+	 * @param context  - The context of activity which is registering the listener.
+	 * @param listener - Listener to be notified.
+	 */
+	public static void registerListener(Context context, SharedPreferences.OnSharedPreferenceChangeListener listener) {
+		getPreferences(context).registerOnSharedPreferenceChangeListener(listener);
+	}
+
+	/**
+	 * Unregisters a listener registered with {@link #registerListener(Context, SharedPreferences.OnSharedPreferenceChangeListener)}.
+	 * @param context  - The context of activity which registered the listener.
+	 * @param listener - Listener to be removed.
+	 */
+	public static void unregisterListener(Context context, SharedPreferences.OnSharedPreferenceChangeListener listener) {
+		getPreferences(context).unregisterOnSharedPreferenceChangeListener(listener);
+	}
+
 	public static boolean hasPreferenceKey(Context context, String key){
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-								.getString(R.string.shared_pref_package),
-						Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		return mainPref.contains(key);
 	}
 
 	public static void removePreference(Context context, String key){
-		SharedPreferences mainPref =
-				context.getSharedPreferences(context.getResources()
-								.getString(R.string.shared_pref_package),
-						Context.MODE_PRIVATE
-				);
+		SharedPreferences mainPref = getPreferences(context);
 		if (mainPref.contains(key)) {
 			Editor editor = mainPref.edit();
 			editor.remove(key);
-			editor.commit();
+			apply(editor);
 		}
 	}
 
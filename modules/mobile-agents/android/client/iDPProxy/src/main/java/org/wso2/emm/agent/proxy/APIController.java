@@ -26,6 +26,7 @@ import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpHeaderParser;
 import com.android.volley.toolbox.JsonArrayRequest;
 import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.StringRequest;
@@ -37,9 +38,11 @@ import org.wso2.emm.agent.proxy.utils.Constants.HTTP_METHODS;
 import org.wso2.emm.agent.proxy.beans.EndPointInfo;
 import org.wso2.emm.agent.proxy.beans.Token;
 import org.wso2.emm.agent.proxy.interfaces.APIResultCallBack;
+import org.wso2.emm.agent.proxy.interfaces.APIStreamResultCallBack;
 import org.wso2.emm.agent.proxy.interfaces.TokenCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants;
 import org.wso2.emm.agent.proxy.utils.ServerUtilities;
+import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,6 +57,7 @@ public class APIController implements TokenCallBack {
 	private APIResultCallBack apiResultCallback;
 	private EndPointInfo apiEndPointInfo;
 	private int requestMethod;
+	private int requestCode;
 	private boolean isStringRequest = false;
 	
 	public APIController(String clientKey, String clientSecret){
@@ -84,13 +88,12 @@ public class APIController implements TokenCallBack {
 
 		this.apiResultCallback = apiResultCallBack;
 		this.apiEndPointInfo = apiEndPointInfo;
+		this.requestCode = requestCode;
 
 		if (IdentityProxy.getInstance().getContext() == null) {
 			IdentityProxy.getInstance().setContext(context);
 		}
 
-		IdentityProxy.getInstance().setRequestCode(requestCode);
-
 		IdentityProxy.getInstance().requestToken(IdentityProxy.getInstance().getContext(), this,
 		                                         this.clientKey,
 		                                         this.clientSecret);
@@ -101,13 +104,12 @@ public class APIController implements TokenCallBack {
 		this.isStringRequest = isString;
 		this.apiResultCallback = apiResultCallBack;
 		this.apiEndPointInfo = apiEndPointInfo;
+		this.requestCode = requestCode;
 
 		if (IdentityProxy.getInstance().getContext() == null) {
 			IdentityProxy.getInstance().setContext(context);
 		}
 
-		IdentityProxy.getInstance().setRequestCode(requestCode);
-
 		IdentityProxy.getInstance().requestToken(IdentityProxy.getInstance().getContext(), this,
 				this.clientKey,
 				this.clientSecret);
@@ -119,20 +121,20 @@ public class APIController implements TokenCallBack {
 		this.token = token;
 		setRequestMethod(apiEndPointInfo.getHttpMethod());
 		if(isStringRequest) {
-			sendStringRequest(apiResultCallback, apiEndPointInfo, false);
+			sendStringRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 		} else {
 			if (apiEndPointInfo.getRequestParamsMap() != null) {
-				sendStringRequest(apiResultCallback, apiEndPointInfo, false);
+				sendStringRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 			} else if (apiEndPointInfo.getRequestParams() != null) {
 				if (isJSONObject(apiEndPointInfo.getRequestParams())) {
-					sendJsonObjectRequest(apiResultCallback, apiEndPointInfo, false);
+					sendJsonObjectRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 				} else {
-					sendJsonArrayRequest(apiResultCallback, apiEndPointInfo, false);
+					sendJsonArrayRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 				}
 			} else if (apiEndPointInfo.isJSONArrayRequest()) {
-				sendJsonArrayRequest(apiResultCallback, apiEndPointInfo, false);
+				sendJsonArrayRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 			} else {
-				sendJsonObjectRequest(apiResultCallback, apiEndPointInfo, false);
+				sendJsonObjectRequest(apiResultCallback, apiEndPointInfo, false, requestCode);
 			}
 		}
 	}
@@ -174,24 +176,24 @@ public class APIController implements TokenCallBack {
 			IdentityProxy.getInstance().setContext(context);
 		}
 		setRequestMethod(apiUtilities.getHttpMethod());
-		IdentityProxy.getInstance().setRequestCode(requestCode);
+		this.requestCode = requestCode;
 		if (apiUtilities.getRequestParamsMap() != null) {
-			sendStringRequest(callBack, apiUtilities, true);
+			sendStringRequest(callBack, apiUtilities, true, requestCode);
 		} else if (apiUtilities.getRequestParams() != null) {
 			if (isJSONObject(apiUtilities.getRequestParams())) {
-				sendJsonObjectRequest(callBack, apiUtilities, true);
+				sendJsonObjectRequest(callBack, apiUtilities, true, requestCode);
 			} else {
-				sendJsonArrayRequest(callBack, apiUtilities, true);
+				sendJsonArrayRequest(callBack, apiUtilities, true, requestCode);
 			}
 		} else if (apiUtilities.isJSONArrayRequest()) {
-			sendJsonArrayRequest(callBack, apiUtilities, true);
+			sendJsonArrayRequest(callBack, apiUtilities, true, requestCode);
 		} else {
-			sendJsonObjectRequest(callBack, apiUtilities, true);
+			sendJsonObjectRequest(callBack, apiUtilities, true, requestCode);
 		}
 	}
 
 	public void sendStringRequest(final APIResultCallBack callBack, final EndPointInfo apiUtilities,
-	                               final boolean isSecured) {
+	                              final boolean isSecured, final int requestCode) {
 		RequestQueue queue =  null;
 		try {
 			queue = ServerUtilities.getCertifiedHttpClient();
@@ -203,29 +205,25 @@ public class APIController implements TokenCallBack {
 		                                          new Response.Listener<String>() {
 			                                          @Override
 			                                          public void onResponse(String response) {
-				                                          Log.d(TAG, response);
+				                                          if (response != null) {
+					                                          Log.d(TAG, response);
+				                                          }
 			                                          }
 		                                          },
 		                                          new Response.ErrorListener() {
 			                                          @Override
 			                                          public void onErrorResponse(VolleyError error) {
 				                                          Log.e(TAG, error.toString());
+				                                          deliverError(callBack, error, requestCode);
 			                                          }
 		                                          })
 
 		{
 			@Override
 			protected Response<String> parseNetworkResponse(NetworkResponse response) {
-				String result = new String(response.data);
-				if(Constants.DEBUG_ENABLED) {
-					if(result != null && !result.isEmpty()) {
-						Log.d(TAG, "Result :" + result);
-					}
+				if (deliverResult(callBack, response, requestCode)) {
+					return Response.success(null, HttpHeaderParser.parseCacheHeaders(response));
 				}
-				Map<String, String> responseParams = new HashMap<>();
-				responseParams.put(Constants.SERVER_RESPONSE_BODY, result);
-				responseParams.put(Constants.SERVER_RESPONSE_STATUS, String.valueOf(response.statusCode));
-				callBack.onReceiveAPIResult(responseParams, IdentityProxy.getInstance().getRequestCode());
 				return super.parseNetworkResponse(response);
 			}
 
@@ -239,6 +237,11 @@ public class APIController implements TokenCallBack {
 				return apiUtilities.getRequestParamsMap();
 			}
 
+			@Override
+			public Priority getPriority() {
+				return getRequestPriority(apiUtilities);
+			}
+
 			@Override
 			public Map<String, String> getHeaders() throws AuthFailureError {
 				Map<String, String> headers = new HashMap<>();
@@ -253,15 +256,14 @@ public class APIController implements TokenCallBack {
 				return headers;
 			}
 		};
-		request.setRetryPolicy(new DefaultRetryPolicy(
-				Constants.HttpClient.DEFAULT_TIME_OUT,
-				DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-				DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+		request.setRetryPolicy(getRetryPolicy(apiUtilities));
+		request.setLongLived(apiUtilities.isLongLived());
+		request.setShouldCompressBody(apiUtilities.isBodyCompressed());
 		queue.add(request);
 	}
 
 	private void sendJsonObjectRequest(final APIResultCallBack callBack, final EndPointInfo apiUtilities,
-	                                   final boolean isSecured) {
+	                                   final boolean isSecured, final int requestCode) {
 		RequestQueue queue =  null;
 		try {
 			queue = ServerUtilities.getCertifiedHttpClient();
@@ -277,32 +279,33 @@ public class APIController implements TokenCallBack {
                                                       new Response.Listener<JSONObject>() {
                                                           @Override
                                                           public void onResponse(JSONObject response) {
-                                                              Log.d(TAG, response.toString());
+                                                              if (response != null) {
+                                                                  Log.d(TAG, response.toString());
+                                                              }
                                                           }
                                                       },
                                                       new Response.ErrorListener() {
                                                           @Override
                                                           public void onErrorResponse(VolleyError error) {
                                                               Log.e(TAG, error.toString());
+                                                              deliverError(callBack, error, requestCode);
                                                           }
                                                       })
 
             {
                 @Override
                 protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
-                    String result = new String(response.data);
-                    if(Constants.DEBUG_ENABLED) {
-                        if(result != null && !result.isEmpty()) {
-                            Log.d(TAG, "Result :" + result);
-                        }
+                    if (deliverResult(callBack, response, requestCode)) {
+                        return Response.success(null, HttpHeaderParser.parseCacheHeaders(response));
                     }
-                    Map<String, String> responseParams = new HashMap<>();
-                    responseParams.put(Constants.SERVER_RESPONSE_BODY, result);
-                    responseParams.put(Constants.SERVER_RESPONSE_STATUS, String.valueOf(response.statusCode));
-                    callBack.onReceiveAPIResult(responseParams, IdentityProxy.getInstance().getRequestCode());
                     return super.parseNetworkResponse(response);
                 }
 
+                @Override
+                public Priority getPriority() {
+                    return getRequestPriority(apiUtilities);
+                }
+
                 @Override
                 public Map<String, String> getHeaders() throws AuthFailureError {
                     Map<String, String> headers = new HashMap<>();
@@ -321,16 +324,15 @@ public class APIController implements TokenCallBack {
 			Log.e(TAG, "Failed to parse request JSON", e);
 		}
 
-		request.setRetryPolicy(new DefaultRetryPolicy(
-				Constants.HttpClient.DEFAULT_TIME_OUT,
-				DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-				DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+		request.setRetryPolicy(getRetryPolicy(apiUtilities));
+		request.setLongLived(apiUtilities.isLongLived());
+		request.setShouldCompressBody(apiUtilities.isBodyCompressed());
 
 		queue.add(request);
 	}
 
 	private void sendJsonArrayRequest(final APIResultCallBack callBack, final EndPointInfo apiUtilities,
-	                                   final boolean isSecured) {
+	                                  final boolean isSecured, final int requestCode) {
 		RequestQueue queue =  null;
 		try {
 			queue = ServerUtilities.getCertifiedHttpClient();
@@ -346,32 +348,33 @@ public class APIController implements TokenCallBack {
 			                                new Response.Listener<JSONArray>() {
 				                                @Override
 				                                public void onResponse(JSONArray response) {
-					                                Log.d(TAG, response.toString());
+					                                if (response != null) {
+						                                Log.d(TAG, response.toString());
+					                                }
 				                                }
 			                                },
 			                                new Response.ErrorListener() {
 				                                @Override
 				                                public void onErrorResponse(VolleyError error) {
 					                                Log.e(TAG, error.toString());
+					                                deliverError(callBack, error, requestCode);
 				                                }
 			                                })
 
 			{
 				@Override
 				protected Response<JSONArray> parseNetworkResponse(NetworkResponse response) {
-					String result = new String(response.data);
-					if(Constants.DEBUG_ENABLED) {
-						if(result != null && !result.isEmpty()) {
-							Log.d(TAG, "Result :" + result);
-						}
+					if (deliverResult(callBack, response, requestCode)) {
+						return Response.success(null, HttpHeaderParser.parseCacheHeaders(response));
 					}
-					Map<String, String> responseParams = new HashMap<>();
-					responseParams.put(Constants.SERVER_RESPONSE_BODY, result);
-					responseParams.put(Constants.SERVER_RESPONSE_STATUS, String.valueOf(response.statusCode));
-					callBack.onReceiveAPIResult(responseParams, IdentityProxy.getInstance().getRequestCode());
 					return super.parseNetworkResponse(response);
 				}
 
+				@Override
+				public Priority getPriority() {
+					return getRequestPriority(apiUtilities);
+				}
+
 				@Override
 				public Map<String, String> getHeaders() throws AuthFailureError {
 					Map<String, String> headers = new HashMap<>();
@@ -390,11 +393,69 @@ public class APIController implements TokenCallBack {
 			Log.e(TAG, "Failed to parse request JSON", e);
 		}
 
-		request.setRetryPolicy(new DefaultRetryPolicy(
-				Constants.HttpClient.DEFAULT_TIME_OUT,
-				DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-				DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+		request.setRetryPolicy(getRetryPolicy(apiUtilities));
+		request.setLongLived(apiUtilities.isLongLived());
+		request.setShouldCompressBody(apiUtilities.isBodyCompressed());
 		queue.add(request);
 	}
 
+	/**
+	 * Hands the server response over to the API result callback. Callbacks which can read the
+	 * body as a stream receive it as it was received, without copying it into a String.
+	 *
+	 * @param callBack    - API result callback.
+	 * @param response    - Network response received from the server.
+	 * @param requestCode - Request code of the API call.
+	 * @return - true if the response body was consumed as a stream.
+	 */
+	private boolean deliverResult(APIResultCallBack callBack, NetworkResponse response, int requestCode) {
+		if (callBack instanceof APIStreamResultCallBack) {
+			((APIStreamResultCallBack) callBack).onReceiveAPIStream(String.valueOf(response.statusCode),
+			                                                        response.headers,
+			                                                        new ByteArrayInputStream(response.data),
+			                                                        requestCode);
+			return true;
+		}
+		String result = new String(response.data);
+		if(Constants.DEBUG_ENABLED) {
+			if(result != null && !result.isEmpty()) {
+				Log.d(TAG, "Result :" + result);
+			}
+		}
+		Map<String, String> responseParams = new HashMap<>();
+		responseParams.put(Constants.SERVER_RESPONSE_BODY, result);
+		responseParams.put(Constants.SERVER_RESPONSE_STATUS, String.valueOf(response.statusCode));
+		callBack.onReceiveAPIResult(responseParams, requestCode);
+		return false;
+	}
+
+	/**
+	 * Hands the failure of an API call over to the API result callback, if it is interested.
+	 *
+	 * @param callBack    - API result callback.
+	 * @param error       - Error received while calling the API.
+	 * @param requestCode - Request code of the API call.
+	 */
+	private void deliverError(APIResultCallBack callBack, VolleyError error, int requestCode) {
+		if (callBack instanceof APIStreamResultCallBack) {
+			NetworkResponse response = error.networkResponse;
+			((APIStreamResultCallBack) callBack).onReceiveAPIError(
+					(response != null) ? String.valueOf(response.statusCode) : null,
+					(response != null) ? response.headers : null, requestCode);
+		}
+	}
+
+	private Request.Priority getRequestPriority(EndPointInfo apiUtilities) {
+		return apiUtilities.isUrgent() ? Request.Priority.IMMEDIATE : Request.Priority.NORMAL;
+	}
+
+	private DefaultRetryPolicy getRetryPolicy(EndPointInfo apiUtilities) {
+		if (apiUtilities.getTimeout() > 0) {
+			return new DefaultRetryPolicy(apiUtilities.getTimeout(), 0, DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+		}
+		return new DefaultRetryPolicy(Constants.HttpClient.DEFAULT_TIME_OUT,
+		                              DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+		                              DefaultRetryPolicy.DEFAULT_BACKOFF_MULT);
+	}
+
 }
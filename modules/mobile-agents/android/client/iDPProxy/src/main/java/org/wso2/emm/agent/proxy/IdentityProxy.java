@@ -29,8 +29,14 @@ import org.wso2.emm.agent.proxy.interfaces.TokenCallBack;
 import org.wso2.emm.agent.proxy.utils.Constants;
 import org.wso2.emm.agent.proxy.utils.ServerUtilities;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 /**
  * This class handles identity proxy library initialization and token validation.
+ * Token requests coming from concurrent API calls are served from a single in-flight
+ * refresh, and every caller waiting on that refresh is notified once it completes.
  */
 public class IdentityProxy implements CallBack {
 
@@ -42,8 +48,10 @@ public class IdentityProxy implements CallBack {
     private Context context;
     private static String accessTokenURL;
     private APIAccessCallBack apiAccessCallBack;
-    private TokenCallBack tokenCallBack;
-    private int requestCode = 0;
+    private final List<TokenCallBack> pendingTokenCallBacks = new ArrayList<>();
+    private boolean refreshInProgress = false;
+    private long refreshRetryDelay = 0;
+    private long nextRefreshTime = 0;
 
     private IdentityProxy() {
 
@@ -53,14 +61,6 @@ public class IdentityProxy implements CallBack {
         return identityProxy;
     }
 
-    public int getRequestCode() {
-        return requestCode;
-    }
-
-    public synchronized void setRequestCode(int requestCode) {
-        this.requestCode = requestCode;
-    }
-
     public String getAccessTokenURL() {
         return accessTokenURL;
     }
@@ -74,7 +74,9 @@ public class IdentityProxy implements CallBack {
         if (Constants.DEBUG_ENABLED && token != null) {
             Log.d(TAG, "receiveAccessToken");
         }
-        IdentityProxy.token = token;
+        synchronized (this) {
+            IdentityProxy.token = token;
+        }
         apiAccessCallBack.onAPIAccessReceive(status);
     }
 
@@ -83,8 +85,27 @@ public class IdentityProxy implements CallBack {
         if (Constants.DEBUG_ENABLED && token != null) {
             Log.d(TAG, "receiveNewAccessToken");
         }
-        IdentityProxy.token = token;
-        tokenCallBack.onReceiveTokenResult(token, status);
+        List<TokenCallBack> callBacks;
+        synchronized (this) {
+            IdentityProxy.token = token;
+            refreshInProgress = false;
+            if (Constants.REQUEST_SUCCESSFUL.equals(status)) {
+                refreshRetryDelay = 0;
+                nextRefreshTime = 0;
+            } else {
+                refreshRetryDelay = refreshRetryDelay == 0 ? Constants.ACCESS_TOKEN_REFRESH_RETRY_TIME :
+                                    Math.min(refreshRetryDelay * 2, Constants.ACCESS_TOKEN_REFRESH_AHEAD_TIME);
+                nextRefreshTime = System.currentTimeMillis() + refreshRetryDelay;
+            }
+            callBacks = new ArrayList<>(pendingTokenCallBacks);
+            pendingTokenCallBacks.clear();
+        }
+        if (Constants.DEBUG_ENABLED) {
+            Log.d(TAG, "Notifying " + callBacks.size() + " token requests.");
+        }
+        for (TokenCallBack callBack : callBacks) {
+            callBack.onReceiveTokenResult(token, status);
+        }
     }
 
     /**
@@ -114,90 +135,127 @@ public class IdentityProxy implements CallBack {
         accessTokenHandler.obtainAccessToken();
     }
 
+    /**
+     * Hands a valid access token to the given callback. A valid token is returned right away,
+     * and a token that is about to expire is renewed in the background, backing off after
+     * failed attempts. When the token has expired the callback waits for the refresh, and only one refresh is sent to the
+     * token endpoint no matter how many callers are waiting on it.
+     *
+     * @param context       - Application context.
+     * @param tokenCallBack - Callback of the caller which needs the token.
+     * @param clientID      - OAuth client ID.
+     * @param clientSecret  - OAuth client secret.
+     */
     public void requestToken(Context context, TokenCallBack tokenCallBack, String clientID,
                              String clientSecret) {
-        this.context = context;
-        this.tokenCallBack = tokenCallBack;
-        IdentityProxy.clientID = clientID;
-        IdentityProxy.clientSecret = clientSecret;
-        if (Constants.DEBUG_ENABLED) {
-            Log.d(TAG, "requestToken called.");
-            if(IdentityProxy.clientID == null || IdentityProxy.clientSecret == null) {
-                Log.d(TAG, "Client credentials are null.");
-            }
-        }
-        if (token == null) {
+        Token currentToken;
+        String status = null;
+        boolean startRefresh = false;
+        synchronized (this) {
+            this.context = context;
+            IdentityProxy.clientID = clientID;
+            IdentityProxy.clientSecret = clientSecret;
             if (Constants.DEBUG_ENABLED) {
-                Log.d(TAG, "token is null.");
+                Log.d(TAG, "requestToken called.");
+                if (IdentityProxy.clientID == null || IdentityProxy.clientSecret == null) {
+                    Log.d(TAG, "Client credentials are null.");
+                }
             }
-            validateStoredToken();
-        } else {
-            boolean isExpired = ServerUtilities.isValid(token.getDate());
-            if (Constants.DEBUG_ENABLED) {
-                Log.d(TAG, "token is expired "+ isExpired);
-                Log.d(TAG, "token expiry "+ token.getDate().toString());
+            if (token == null || isExpired(token)) {
+                if (Constants.DEBUG_ENABLED) {
+                    Log.d(TAG, "token is not available or expired, validating stored token.");
+                }
+                validateStoredToken();
             }
-            if (!isExpired) {
-                synchronized(this){
-                    IdentityProxy.getInstance().receiveNewAccessToken(Constants.REQUEST_SUCCESSFUL,
-                            "success", token);
+            currentToken = token;
+            if (currentToken == null) {
+                status = Constants.ACCESS_FAILURE;
+            } else if (!isExpired(currentToken)) {
+                status = Constants.REQUEST_SUCCESSFUL;
+                if (!refreshInProgress && isAboutToExpire(currentToken) &&
+                    System.currentTimeMillis() >= nextRefreshTime) {
+                    if (Constants.DEBUG_ENABLED) {
+                        Log.d(TAG, "token is about to expire, refreshing in background.");
+                    }
+                    refreshInProgress = true;
+                    startRefresh = true;
                 }
             } else {
-                validateStoredToken();
+                pendingTokenCallBacks.add(tokenCallBack);
+                if (!refreshInProgress) {
+                    if (Constants.DEBUG_ENABLED) {
+                        Log.d(TAG, "token is expired, refreshing.");
+                    }
+                    refreshInProgress = true;
+                    startRefresh = true;
+                }
             }
         }
+
+        if (startRefresh) {
+            refreshToken(currentToken);
+        }
+        if (status != null) {
+            tokenCallBack.onReceiveTokenResult(currentToken, status);
+        }
     }
 
+    /**
+     * Loads the token stored in the app preferences into memory.
+     */
     private void validateStoredToken() {
         if (Constants.DEBUG_ENABLED) {
             Log.d(TAG, "validateStoredToken.");
         }
         SharedPreferences mainPref = context.getSharedPreferences(Constants.APPLICATION_PACKAGE,
                 Context.MODE_PRIVATE);
-        String refreshToken = mainPref.getString(Constants.REFRESH_TOKEN, null).toString();
-        String accessToken = mainPref.getString(Constants.ACCESS_TOKEN, null).toString();
-        String date = mainPref.getString(Constants.DATE_LABEL, null).toString();
-        String endPoint = mainPref.getString(Constants.TOKEN_ENDPOINT, null).toString();
+        String refreshToken = mainPref.getString(Constants.REFRESH_TOKEN, null);
+        String accessToken = mainPref.getString(Constants.ACCESS_TOKEN, null);
+        String date = mainPref.getString(Constants.DATE_LABEL, null);
+        String endPoint = mainPref.getString(Constants.TOKEN_ENDPOINT, null);
         setAccessTokenURL(endPoint);
 
-        if (!refreshToken.isEmpty()) {
+        if (refreshToken != null && !refreshToken.isEmpty()) {
             if (Constants.DEBUG_ENABLED) {
                 Log.d(TAG, "refreshToken is not empty.");
             }
-            token = new Token();
-            token.setDate(date);
-            token.setRefreshToken(refreshToken);
-            token.setAccessToken(accessToken);
-            boolean isExpired = ServerUtilities.isValid(token.getDate());
-            if (!isExpired) {
-                if (Constants.DEBUG_ENABLED) {
-                    Log.d(TAG, "stored token is not expired.");
-                }
-                synchronized(this){
-                    IdentityProxy.getInstance().receiveNewAccessToken(Constants.REQUEST_SUCCESSFUL,
-                            Constants.SUCCESS_RESPONSE,
-                            token);
-                }
-            } else {
-                if (Constants.DEBUG_ENABLED) {
-                    Log.d(TAG, "stored token is expired, refreshing");
-                }
-                refreshToken();
-            }
-        } else {
-            if (Constants.DEBUG_ENABLED) {
-                Log.d(TAG, "refreshToken is empty.");
-            }
-            synchronized(this){
-                IdentityProxy.getInstance().receiveNewAccessToken(Constants.ACCESS_FAILURE,
-                        Constants.FAILURE_RESPONSE, token);
+            Token storedToken = new Token();
+            if (date != null) {
+                storedToken.setDate(date);
             }
+            storedToken.setRefreshToken(refreshToken);
+            storedToken.setAccessToken(accessToken);
+            token = storedToken;
+        } else if (Constants.DEBUG_ENABLED) {
+            Log.d(TAG, "refreshToken is empty.");
         }
     }
 
-    public void refreshToken() {
-        RefreshTokenHandler refreshTokenHandler = new RefreshTokenHandler(token);
-        refreshTokenHandler.obtainNewAccessToken();
+    private boolean isExpired(Token token) {
+        return token.getDate() == null || ServerUtilities.isValid(token.getDate());
+    }
+
+    private boolean isAboutToExpire(Token token) {
+        Date refreshDate = new Date(System.currentTimeMillis() +
+                                    Constants.ACCESS_TOKEN_REFRESH_AHEAD_TIME);
+        return !refreshDate.before(token.getDate());
+    }
+
+    /**
+     * Starts a refresh of the token. If the refresh cannot be sent, the callers waiting on it
+     * are failed right away, so that the next caller starts a new one.
+     */
+    private void refreshToken(Token token) {
+        boolean started = false;
+        try {
+            RefreshTokenHandler refreshTokenHandler = new RefreshTokenHandler(token);
+            started = refreshTokenHandler.obtainNewAccessToken();
+        } finally {
+            if (!started) {
+                Log.e(TAG, "Failed to send the token refresh request.");
+                receiveNewAccessToken(Constants.ACCESS_FAILURE, null, token);
+            }
+        }
     }
 
     public Context getContext() {
@@ -21,6 +21,8 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import com.android.volley.AuthFailureError;
 import com.android.volley.NetworkResponse;
@@ -42,6 +44,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This class handles the entire functionality of OAuth token expiration and 
@@ -56,12 +59,20 @@ public class RefreshTokenHandler {
 			new SimpleDateFormat("MM/dd/yyyy HH:mm:ss", Locale.getDefault());
 	private static final String COLON = ":";
 	private Token token;
+	// Set once the outcome of the refresh has been reported
+	private final AtomicBoolean completed = new AtomicBoolean();
 
 	public RefreshTokenHandler(Token token) {
 		this.token = token;
 	}
 
-	public void obtainNewAccessToken() {
+	/**
+	 * Sends the refresh request. Its outcome is reported to the identity proxy exactly once,
+	 * including when the request is cancelled as the shared request queue is stopped.
+	 *
+	 * @return - False if the request could not be sent, in which case nothing is reported.
+	 */
+	public boolean obtainNewAccessToken() {
 		if(Constants.DEBUG_ENABLED) {
 			Log.d(TAG, "Renewing tokens.");
 		}
@@ -71,6 +82,9 @@ public class RefreshTokenHandler {
 		} catch (IDPTokenManagerException e) {
 			Log.e(TAG, "Failed to retrieve HTTP client", e);
 		}
+		if (queue == null) {
+			return false;
+		}
 
 		StringRequest request = new StringRequest(Request.Method.POST, IdentityProxy.getInstance().getAccessTokenURL(),
 		                                          new Response.Listener<String>() {
@@ -83,10 +97,24 @@ public class RefreshTokenHandler {
 			                                          @Override
 			                                          public void onErrorResponse(VolleyError error) {
 				                                          Log.d(TAG, error.toString());
+				                                          complete(Constants.ACCESS_FAILURE, error.toString(), token);
 			                                          }
 		                                          })
 
 		{
+			@Override
+			public void cancel() {
+				super.cancel();
+				// Cancelled requests get no callback, so the waiting callers are failed from the
+				// main thread, as the queue may be being stopped on this one.
+				new Handler(Looper.getMainLooper()).post(new Runnable() {
+					@Override
+					public void run() {
+						complete(Constants.ACCESS_FAILURE, "Token refresh cancelled.", token);
+					}
+				});
+			}
+
 			@Override
 			protected Response<String> parseNetworkResponse(NetworkResponse response) {
 				processTokenResponse(String.valueOf(response.statusCode), new String(response.data));
@@ -120,6 +148,13 @@ public class RefreshTokenHandler {
 		};
 
 		queue.add(request);
+		return true;
+	}
+
+	private void complete(String status, String message, Token token) {
+		if (completed.compareAndSet(false, true)) {
+			IdentityProxy.getInstance().receiveNewAccessToken(status, message, token);
+		}
 	}
 
 	/**
@@ -133,7 +168,6 @@ public class RefreshTokenHandler {
 		String refreshToken;
 		String accessToken;
 		int timeToExpireSecond;
-		IdentityProxy identityProxy = IdentityProxy.getInstance();
 		try {
 			if (Constants.REQUEST_SUCCESSFUL.equals(responseCode)) {
 				JSONObject response = new JSONObject(result);
@@ -142,8 +176,9 @@ public class RefreshTokenHandler {
 				timeToExpireSecond =
 						Integer.parseInt(response.getString(Constants.EXPIRE_LABEL));
 
-				token.setRefreshToken(refreshToken);
-				token.setAccessToken(accessToken);
+				Token refreshedToken = new Token();
+				refreshedToken.setRefreshToken(refreshToken);
+				refreshedToken.setAccessToken(accessToken);
 
 				SharedPreferences mainPref =
 						IdentityProxy.getInstance()
@@ -158,23 +193,22 @@ public class RefreshTokenHandler {
 				long expiresIN = date.getTime() + (timeToExpireSecond * 1000);
 				Date expireDate = new Date(expiresIN);
 				String strDate = dateFormat.format(expireDate);
-				token.setDate(strDate);
+				refreshedToken.setDate(strDate);
 				editor.putString(Constants.DATE_LABEL, strDate);
 				editor.commit();
 
-				identityProxy
-						.receiveNewAccessToken(responseCode, Constants.SUCCESS_RESPONSE, token);
+				complete(responseCode, Constants.SUCCESS_RESPONSE, refreshedToken);
 
-			} else if (responseCode != null) {
-				if (result != null) {
-					JSONObject responseBody = new JSONObject(result);
-					String errorDescription =
-							responseBody.getString(Constants.ERROR_DESCRIPTION_LABEL);
-					identityProxy.receiveNewAccessToken(responseCode, errorDescription, token);
-				}
+			} else if (result != null) {
+				JSONObject responseBody = new JSONObject(result);
+				String errorDescription =
+						responseBody.getString(Constants.ERROR_DESCRIPTION_LABEL);
+				complete(responseCode, errorDescription, token);
+			} else {
+				complete(responseCode, null, token);
 			}
 		} catch (JSONException e) {
-			identityProxy.receiveNewAccessToken(responseCode, null, token);
+			complete(responseCode, null, token);
 			Log.e(TAG, "Invalid JSON." + e);
 		}
 	}
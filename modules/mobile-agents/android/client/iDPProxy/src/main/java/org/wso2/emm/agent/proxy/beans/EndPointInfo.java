@@ -30,6 +30,10 @@ public class EndPointInfo {
 	private String requestParams;
 	private Map<String, String> requestParamsMap;
 	private boolean isJSONArrayRequest;
+	private int timeout;
+	private boolean isBodyCompressed;
+	private boolean isUrgent;
+	private boolean isLongLived;
 
 	public Map<String, String> getRequestParamsMap() {
 		return requestParamsMap;
@@ -71,4 +75,60 @@ public class EndPointInfo {
 		this.isJSONArrayRequest = isJSONArrayRequest;
 	}
 
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Overrides the default socket timeout of the request. Requests with a custom timeout
+	 * are not retried.
+	 *
+	 * @param timeout - Timeout in milliseconds.
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	public boolean isBodyCompressed() {
+		return isBodyCompressed;
+	}
+
+	/**
+	 * Sends the request body gzip compressed, which the server has to support.
+	 *
+	 * @param isBodyCompressed - true to compress the request body.
+	 */
+	public void setIsBodyCompressed(boolean isBodyCompressed) {
+		this.isBodyCompressed = isBodyCompressed;
+	}
+
+	public boolean isUrgent() {
+		return isUrgent;
+	}
+
+	/**
+	 * Sends the request ahead of all other requests, regardless of the limit of concurrent
+	 * requests to the server.
+	 *
+	 * @param isUrgent - true to send the request first.
+	 */
+	public void setIsUrgent(boolean isUrgent) {
+		this.isUrgent = isUrgent;
+	}
+
+	public boolean isLongLived() {
+		return isLongLived;
+	}
+
+	/**
+	 * Marks the request as held open by the server until it has something to send, such as
+	 * a long poll, so that it does not count against the limit of concurrent requests to the
+	 * server.
+	 *
+	 * @param isLongLived - true if the server holds the request open.
+	 */
+	public void setIsLongLived(boolean isLongLived) {
+		this.isLongLived = isLongLived;
+	}
+
 }
@@ -21,6 +21,9 @@ package org.wso2.emm.agent.proxy.clients;
 import com.android.volley.RequestQueue;
 import org.wso2.emm.agent.proxy.IDPTokenManagerException;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.util.Map;
 
 /**
@@ -36,6 +39,16 @@ public interface CommunicationClient {
      */
     RequestQueue getHttpClient() throws IDPTokenManagerException;
 
+    /**
+     * Open a connection which uses the same secured communication medium as the http client,
+     * for transfers which are too large to be buffered in memory by the request queue.
+     * @param url URL to connect to.
+     * @return A connection which has not been connected yet.
+     * @throws IOException
+     * @throws IDPTokenManagerException
+     */
+    HttpURLConnection openConnection(URL url) throws IOException, IDPTokenManagerException;
+
 
     /**
      * When a request goes through a client addition, defined headers needs to be added and this
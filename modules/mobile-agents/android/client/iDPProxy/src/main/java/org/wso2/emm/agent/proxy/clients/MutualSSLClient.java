@@ -55,6 +55,14 @@ import java.util.Map;
 public class MutualSSLClient implements CommunicationClient {
     private static final String TAG = MutualSSLClient.class.getName();
     private static KeyStore localTrustStore;
+    private static final HostnameVerifier HOSTNAME_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+            HostnameVerifier hv = HttpsURLConnection.getDefaultHostnameVerifier();
+            return hv.verify(hostname, session);
+        }
+    };
+    private SSLSocketFactory sslSocketFactory;
 
     static {
         if (localTrustStore == null) {
@@ -81,41 +89,53 @@ public class MutualSSLClient implements CommunicationClient {
 
     public RequestQueue getHttpClient() throws IDPTokenManagerException {
         RequestQueue client;
+        if (Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
+            HurlStack hurlStack = new HurlStack(null, getSSLSocketFactory(), HOSTNAME_VERIFIER);
+            client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext(), hurlStack);
+        } else {
+            client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext());
+        }
+        return client;
+    }
+
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException, IDPTokenManagerException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection &&
+            Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
+            HttpsURLConnection httpsURLConnection = (HttpsURLConnection) connection;
+            httpsURLConnection.setSSLSocketFactory(getSSLSocketFactory());
+            httpsURLConnection.setHostnameVerifier(HOSTNAME_VERIFIER);
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the socket factory of this client, building the key and trust managers only the
+     * first time so that TLS sessions can be resumed across requests.
+     */
+    private synchronized SSLSocketFactory getSSLSocketFactory() throws IDPTokenManagerException {
+        if (sslSocketFactory != null) {
+            return sslSocketFactory;
+        }
         try {
-            if (Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
-                AuthenticatorFactory authenticatorFactory = new AuthenticatorFactory();
-                MutualSSLAuthenticator mutualSSLAuthenticator = (MutualSSLAuthenticator)
-                        authenticatorFactory.getClient(Constants.Authenticator.
-                                                               MUTUAL_SSL_AUTHENTICATOR, null,
-                                                       Constants.ADD_HEADER_CALLBACK);
-                String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-                TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
-                tmf.init(localTrustStore);
+            AuthenticatorFactory authenticatorFactory = new AuthenticatorFactory();
+            MutualSSLAuthenticator mutualSSLAuthenticator = (MutualSSLAuthenticator)
+                    authenticatorFactory.getClient(Constants.Authenticator.
+                                                           MUTUAL_SSL_AUTHENTICATOR, null,
+                                                   Constants.ADD_HEADER_CALLBACK);
+            String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
+            tmf.init(localTrustStore);
 
 
-                KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                kmf.init(mutualSSLAuthenticator.
-                        getCredentialCertificate(), Constants.KEYSTORE_PASSWORD.toCharArray());
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(mutualSSLAuthenticator.
+                    getCredentialCertificate(), Constants.KEYSTORE_PASSWORD.toCharArray());
 
-                SSLContext context = SSLContext.getInstance("TLS");
-                context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
-                final SSLSocketFactory socketFactory = context.getSocketFactory();
-                HurlStack hurlStack = new HurlStack() {
-                    @Override
-                    protected HttpURLConnection createConnection(URL url) throws IOException {
-                        HttpURLConnection connection = super.createConnection(url);
-                        if (connection instanceof HttpsURLConnection) {
-                            HttpsURLConnection httpsURLConnection = (HttpsURLConnection) connection;
-                            httpsURLConnection.setSSLSocketFactory(socketFactory);
-                            httpsURLConnection.setHostnameVerifier(getHostnameVerifier());
-                        }
-                        return connection;
-                    }
-                };
-                client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext(), hurlStack);
-            } else {
-                client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext());
-            }
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+            sslSocketFactory = context.getSocketFactory();
         } catch (KeyStoreException e) {
             String errorMsg = "Error occurred while accessing keystore.";
             Log.e(TAG, errorMsg);
@@ -133,17 +153,7 @@ public class MutualSSLClient implements CommunicationClient {
             Log.e(TAG, errorMsg);
             throw new IDPTokenManagerException(errorMsg, e);
         }
-        return client;
-    }
-
-    private HostnameVerifier getHostnameVerifier() {
-        return new HostnameVerifier() {
-            @Override
-            public boolean verify(String hostname, SSLSession session) {
-                HostnameVerifier hv = HttpsURLConnection.getDefaultHostnameVerifier();
-                return hv.verify(hostname, session);
-            }
-        };
+        return sslSocketFactory;
     }
 
     @Override
@@ -48,43 +48,68 @@ import java.util.Map;
 
 public class OAuthSSLClient implements CommunicationClient {
     private static final String TAG = OAuthSSLClient.class.getName();
+    private static final HostnameVerifier HOSTNAME_VERIFIER = new HostnameVerifier() {
+        @Override
+        public boolean verify(String hostname, SSLSession session) {
+            HostnameVerifier hv = HttpsURLConnection.getDefaultHostnameVerifier();
+            return hv.verify(hostname, session);
+        }
+    };
+    private SSLSocketFactory sslSocketFactory;
 
     @Override
     public RequestQueue getHttpClient() throws IDPTokenManagerException {
-        RequestQueue client = null;
-        InputStream inStream = null;
-        try {
-            if (Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
-                KeyStore localTrustStore = KeyStore.getInstance("BKS");
-                if (Constants.TRUSTSTORE_LOCATION != null) {
-                    inStream = new FileInputStream(new File(Constants.TRUSTSTORE_LOCATION));
-                } else {
-                    inStream = IdentityProxy.getInstance().getContext().getResources().
-                            openRawResource(R.raw.truststore);
-                }
-                localTrustStore.load(inStream, Constants.TRUSTSTORE_PASSWORD.toCharArray());
-                String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
-                TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
-                tmf.init(localTrustStore);
+        RequestQueue client;
+        if (Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
+            // The socket factory and verifier are the ones used by openConnection as well, so that
+            // queued requests and downloads share pooled connections and TLS sessions.
+            HurlStack hurlStack = new HurlStack(null, getSSLSocketFactory(), HOSTNAME_VERIFIER);
+            client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext(), hurlStack);
+        } else {
+            client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext());
+        }
+        return client;
+    }
 
+    @Override
+    public HttpURLConnection openConnection(URL url) throws IOException, IDPTokenManagerException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (connection instanceof HttpsURLConnection &&
+            Constants.SERVER_PROTOCOL.equalsIgnoreCase("https://")) {
+            HttpsURLConnection httpsURLConnection = (HttpsURLConnection) connection;
+            httpsURLConnection.setSSLSocketFactory(getSSLSocketFactory());
+            httpsURLConnection.setHostnameVerifier(HOSTNAME_VERIFIER);
+        }
+        return connection;
+    }
 
-                SSLContext context = SSLContext.getInstance("TLS");
-                context.init(null, tmf.getTrustManagers(), null);
-                final SSLSocketFactory socketFactory = context.getSocketFactory();
-                HurlStack hurlStack = new HurlStack() {
-                    @Override
-                    protected HttpURLConnection createConnection(URL url) throws IOException {
-                        HttpsURLConnection httpsURLConnection = (HttpsURLConnection) super.createConnection(url);
-                        httpsURLConnection.setSSLSocketFactory(socketFactory);
-                        httpsURLConnection.setHostnameVerifier(getHostnameVerifier());
-                        return httpsURLConnection;
-                    }
-                };
-                client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext(), hurlStack);
+    /**
+     * Returns the socket factory of this client, loading the trust store only the first time.
+     * Reusing the same factory lets HTTPS connections resume TLS sessions from its session cache
+     * instead of doing a full handshake every time.
+     */
+    private synchronized SSLSocketFactory getSSLSocketFactory() throws IDPTokenManagerException {
+        if (sslSocketFactory != null) {
+            return sslSocketFactory;
+        }
+        InputStream inStream = null;
+        try {
+            KeyStore localTrustStore = KeyStore.getInstance("BKS");
+            if (Constants.TRUSTSTORE_LOCATION != null) {
+                inStream = new FileInputStream(new File(Constants.TRUSTSTORE_LOCATION));
             } else {
-                client = Volley.newRequestQueue(IdentityProxy.getInstance().getContext());
+                inStream = IdentityProxy.getInstance().getContext().getResources().
+                        openRawResource(R.raw.truststore);
             }
+            localTrustStore.load(inStream, Constants.TRUSTSTORE_PASSWORD.toCharArray());
+            String tmfAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(tmfAlgorithm);
+            tmf.init(localTrustStore);
+
 
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, tmf.getTrustManagers(), null);
+            sslSocketFactory = context.getSocketFactory();
         } catch (KeyStoreException e) {
             String errorMsg = "Error occurred while accessing keystore.";
             Log.e(TAG, errorMsg);
@@ -108,17 +133,7 @@ public class OAuthSSLClient implements CommunicationClient {
         } finally {
             StreamHandlerUtil.closeInputStream(inStream, TAG);
         }
-        return client;
-    }
-
-    private HostnameVerifier getHostnameVerifier() {
-        return new HostnameVerifier() {
-            @Override
-            public boolean verify(String hostname, SSLSession session) {
-                HostnameVerifier hv = HttpsURLConnection.getDefaultHostnameVerifier();
-                return hv.verify(hostname, session);
-            }
-        };
+        return sslSocketFactory;
     }
 
     //TODO: Move oauth specific bits in Agent source to proxy.
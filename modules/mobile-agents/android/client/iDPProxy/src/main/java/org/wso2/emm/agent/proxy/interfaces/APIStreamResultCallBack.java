@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ * 
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.wso2.emm.agent.proxy.interfaces;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * This interface is implemented by API result callbacks which can consume the response
+ * body as a stream. The body is handed over as it was received from the server, so large
+ * responses are not copied into a String before they are parsed.
+ */
+public interface APIStreamResultCallBack extends APIResultCallBack {
+
+	/**
+	 * Receive the API response body as a stream.
+	 *
+	 * @param status      - HTTP status code of the response.
+	 * @param headers     - Headers of the response.
+	 * @param response    - Response body. It can only be read on the calling thread.
+	 * @param requestCode - Request code of the API call.
+	 */
+	void onReceiveAPIStream(String status, Map<String, String> headers, InputStream response, int requestCode);
+
+	/**
+	 * Receive the failure of the API call.
+	 *
+	 * @param status      - HTTP status code of the response, or null if no response was received.
+	 * @param headers     - Headers of the response, or null if no response was received.
+	 * @param requestCode - Request code of the API call.
+	 */
+	void onReceiveAPIError(String status, Map<String, String> headers, int requestCode);
+}
@@ -58,6 +58,9 @@ public class Constants {
 	public static final String KEYSTORE_LOCATION = null;
 	public static final boolean DEBUG_ENABLED = false;
 	public final static int ACCESS_TOKEN_AGE = 3000;
+	public final static long ACCESS_TOKEN_REFRESH_AHEAD_TIME = 60000;
+	// Delay before a failed background refresh is retried, doubled with every failure
+	public final static long ACCESS_TOKEN_REFRESH_RETRY_TIME = 5000;
 	public final static String GRANT_TYPE = "grant_type";
 	public final static String GRANT_TYPE_PASSWORD = "password";
 	public final static String GRANT_TYPE_AUTHORIZATION_CODE = "authorization_code";
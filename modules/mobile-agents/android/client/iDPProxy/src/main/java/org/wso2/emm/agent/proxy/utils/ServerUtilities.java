@@ -18,10 +18,14 @@
 package org.wso2.emm.agent.proxy.utils;
 
 import android.util.Log;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
 import org.wso2.emm.agent.proxy.IDPTokenManagerException;
 import org.wso2.emm.agent.proxy.clients.CommunicationClient;
 import org.wso2.emm.agent.proxy.clients.CommunicationClientFactory;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -46,7 +50,7 @@ public class ServerUtilities {
 	 * @param expirationDate - Token expiration date.
 	 * @return - Token status.
 	 */
-	public static boolean isValid(Date expirationDate) {
+	public static synchronized boolean isValid(Date expirationDate) {
 		Date currentDate = new Date();
 		String formattedDate = dateFormat.format(currentDate);
 		currentDate = convertDate(formattedDate);
@@ -63,7 +67,7 @@ public class ServerUtilities {
 	 * @param date - Date as a string.
 	 * @return - Formatted date.
 	 */
-	public static Date convertDate(String date) {
+	public static synchronized Date convertDate(String date) {
 		Date receivedDate = null;
 		try {
 			receivedDate = dateFormat.parse(date);
@@ -75,29 +79,97 @@ public class ServerUtilities {
 	}
 
 	public static void addHeaders(Map<String, String> headers) {
-		if (communicationClient == null) {
-			CommunicationClientFactory communicationClientFactory = new CommunicationClientFactory();
-			communicationClient = communicationClientFactory.
-					getClient(Constants.HttpClient.HTTP_CLIENT_IN_USE);
+		CommunicationClient client = getCommunicationClient();
+		if (client != null) {
+			client.addAdditionalHeader(headers);
+		}
+	}
+
+	/**
+	 * Get HTTP client object according to the calling protocol type. The request queue is
+	 * built once, on first use, and shared by every caller in the process so that connections
+	 * and TLS sessions to the server are reused between requests.
+	 */
+	public static synchronized RequestQueue getCertifiedHttpClient() throws IDPTokenManagerException {
+		if (requestQueue == null) {
+			startHttpClient();
 		}
-		if (communicationClient != null) {
-			communicationClient.addAdditionalHeader(headers);
+		return requestQueue;
+	}
+
+	/**
+	 * Open a connection to the given URL using the same protocol configuration as the shared
+	 * request queue. Responses read from the connection are not buffered in memory, hence this
+	 * is meant for large downloads.
+	 *
+	 * @param url - URL to connect to.
+	 * @return - Connection which has not been connected yet.
+	 */
+	public static HttpURLConnection openConnection(URL url) throws IOException, IDPTokenManagerException {
+		CommunicationClient client = getCommunicationClient();
+		if (client == null) {
+			throw new IDPTokenManagerException("No HTTP client is defined for " +
+			                                   Constants.HttpClient.HTTP_CLIENT_IN_USE);
 		}
+		return client.openConnection(url);
 	}
 
 	/**
-	 * Get HTTP client object according to the calling protocol type.
+	 * Build and start the shared request queue if it is not running already.
 	 */
-	public static RequestQueue getCertifiedHttpClient() throws IDPTokenManagerException {
+	public static synchronized void startHttpClient() throws IDPTokenManagerException {
+		if (requestQueue != null) {
+			return;
+		}
+		CommunicationClient client = getCommunicationClient();
+		if (client == null) {
+			throw new IDPTokenManagerException("No HTTP client is defined for " +
+			                                   Constants.HttpClient.HTTP_CLIENT_IN_USE);
+		}
+		requestQueue = client.getHttpClient();
+		if (Constants.DEBUG_ENABLED) {
+			Log.d(TAG, "Shared request queue started.");
+		}
+	}
+
+	/**
+	 * Cancel all pending requests and stop the dispatchers of the shared request queue.
+	 * The queue is built again on the next call to {@link #getCertifiedHttpClient()}.
+	 */
+	public static synchronized void stopHttpClient() {
+		if (requestQueue == null) {
+			return;
+		}
+		requestQueue.cancelAll(new RequestQueue.RequestFilter() {
+			@Override
+			public boolean apply(Request<?> request) {
+				return true;
+			}
+		});
+		requestQueue.stop();
+		requestQueue = null;
+		if (Constants.DEBUG_ENABLED) {
+			Log.d(TAG, "Shared request queue stopped.");
+		}
+	}
+
+	/**
+	 * Drop the shared request queue together with the cached SSL configuration of the
+	 * communication client. This needs to be called when the server the agent talks to
+	 * changes, so that pooled connections to the previous server are not reused.
+	 */
+	public static synchronized void resetHttpClient() {
+		stopHttpClient();
+		communicationClient = null;
+	}
+
+	private static synchronized CommunicationClient getCommunicationClient() {
 		if (communicationClient == null) {
 			CommunicationClientFactory communicationClientFactory = new CommunicationClientFactory();
 			communicationClient = communicationClientFactory.
 					getClient(Constants.HttpClient.HTTP_CLIENT_IN_USE);
 		}
-		if (requestQueue == null) {
-			requestQueue = communicationClient.getHttpClient();
-		}
-		return requestQueue;
+		return communicationClient;
 	}
 
 }
@@ -16,6 +16,7 @@
 
 package com.android.volley;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -65,9 +66,15 @@ public interface Cache {
      * Data and metadata for an entry returned by the cache.
      */
     public static class Entry {
-        /** The data returned from cache. */
+        /** The data returned from cache, null if it is held in {@link #dataBuffer} instead. */
         public byte[] data;
 
+        /**
+         * Read-only view of the data, set instead of {@link #data} by caches which map large
+         * entries into memory rather than copying them onto the heap.
+         */
+        public ByteBuffer dataBuffer;
+
         /** ETag for cache coherency. */
         public String etag;
 
@@ -86,6 +93,21 @@ public interface Cache {
         /** Immutable response headers as received from server; must be non-null. */
         public Map<String, String> responseHeaders = Collections.emptyMap();
 
+        /** Returns the size of the data in bytes. */
+        public int getDataLength() {
+            return data != null ? data.length : dataBuffer.remaining();
+        }
+
+        /** Returns the data as a byte array, copying it out of {@link #dataBuffer} if needed. */
+        public byte[] getData() {
+            if (data != null) {
+                return data;
+            }
+            byte[] bytes = new byte[dataBuffer.remaining()];
+            dataBuffer.duplicate().get(bytes);
+            return bytes;
+        }
+
         /** True if the entry is expired. */
         public boolean isExpired() {
             return this.ttl < System.currentTimeMillis();
@@ -18,6 +18,8 @@ package com.android.volley;
 
 import android.os.Process;
 
+import org.apache.http.HttpStatus;
+
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -115,8 +117,12 @@ public class CacheDispatcher extends Thread {
 
                 // We have a cache hit; parse its data for delivery back to the request.
                 request.addMarker("cache-hit");
+                if (entry.data == null && !request.shouldMapCachedData()) {
+                    // Copied once, so that a 304 on refresh does not copy the data again.
+                    entry.data = entry.getData();
+                }
                 Response<?> response = request.parseNetworkResponse(
-                        new NetworkResponse(entry.data, entry.responseHeaders));
+                        NetworkResponse.fromCacheEntry(request, HttpStatus.SC_OK, entry, false, 0));
                 request.addMarker("cache-hit-parsed");
 
                 if (!entry.refreshNeeded()) {
@@ -22,6 +22,8 @@ import android.os.Build;
 import android.os.Process;
 import android.os.SystemClock;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -41,8 +43,12 @@ public class NetworkDispatcher extends Thread {
     private final Cache mCache;
     /** For posting responses and errors. */
     private final ResponseDelivery mDelivery;
+    /** The scheduler which started this dispatcher, or null if it serves the queue directly. */
+    private final NetworkScheduler mScheduler;
     /** Used for telling us to die. */
     private volatile boolean mQuit = false;
+    /** Tasks run by this thread before it exits. */
+    private final List<Runnable> mExitTasks = new ArrayList<Runnable>();
 
     /**
      * Creates a new network dispatcher thread.  You must call {@link #start()}
@@ -56,10 +62,16 @@ public class NetworkDispatcher extends Thread {
     public NetworkDispatcher(BlockingQueue<Request<?>> queue,
             Network network, Cache cache,
             ResponseDelivery delivery) {
+        this(queue, network, cache, delivery, null);
+    }
+
+    NetworkDispatcher(BlockingQueue<Request<?>> queue, Network network, Cache cache,
+            ResponseDelivery delivery, NetworkScheduler scheduler) {
         mQueue = queue;
         mNetwork = network;
         mCache = cache;
         mDelivery = delivery;
+        mScheduler = scheduler;
     }
 
     /**
@@ -71,6 +83,17 @@ public class NetworkDispatcher extends Thread {
         interrupt();
     }
 
+    /**
+     * Runs the given task on this thread before it exits, either because it has been quit or
+     * because its scheduler no longer needs it, e.g. to release resources kept for this thread.
+     * Tasks added once the thread has exited are not run.
+     */
+    public void runBeforeExit(Runnable task) {
+        synchronized (mExitTasks) {
+            mExitTasks.add(task);
+        }
+    }
+
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
     private void addTrafficStatsTag(Request<?> request) {
         // Tag the request (if API >= 14)
@@ -79,15 +102,68 @@ public class NetworkDispatcher extends Thread {
         }
     }
 
+    /**
+     * Drops or demotes a request whose deadline has passed.
+     *
+     * @return true if the request was dropped or put back into the queue with a lower priority
+     */
+    static boolean expire(Request<?> request, BlockingQueue<Request<?>> queue,
+            ResponseDelivery delivery) {
+        if (!request.isPastDeadline() || request.isCanceled()) {
+            return false;
+        }
+        if (request.shouldDropAfterDeadline()) {
+            request.addMarker("network-deadline-dropped");
+            delivery.postError(request, new TimeoutError());
+            return true;
+        }
+        if (request.isDemoted()) {
+            return false;
+        }
+        request.addMarker("network-deadline-demoted");
+        request.demote();
+        queue.add(request);
+        return true;
+    }
+
     @Override
     public void run() {
+        try {
+            dispatch();
+        } finally {
+            List<Runnable> tasks;
+            synchronized (mExitTasks) {
+                tasks = new ArrayList<Runnable>(mExitTasks);
+                mExitTasks.clear();
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    private void dispatch() {
         Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        if (mScheduler != null) {
+            mScheduler.onDispatcherStarted();
+        }
         while (true) {
             long startTimeMs = SystemClock.elapsedRealtime();
             Request<?> request;
             try {
                 // Take a request from the queue.
-                request = mQueue.take();
+                if (mScheduler != null) {
+                    request = mScheduler.take(this);
+                    if (request == null) {
+                        // This dispatcher is no longer needed.
+                        return;
+                    }
+                } else {
+                    request = mQueue.take();
+                    if (expire(request, mQueue, mDelivery)) {
+                        continue;
+                    }
+                }
             } catch (InterruptedException e) {
                 // We may have been interrupted because it was time to quit.
                 if (mQuit) {
@@ -141,6 +217,10 @@ public class NetworkDispatcher extends Thread {
                 VolleyError volleyError = new VolleyError(e);
                 volleyError.setNetworkTimeMs(SystemClock.elapsedRealtime() - startTimeMs);
                 mDelivery.postError(request, volleyError);
+            } finally {
+                if (mScheduler != null) {
+                    mScheduler.finished(request);
+                }
             }
         }
     }
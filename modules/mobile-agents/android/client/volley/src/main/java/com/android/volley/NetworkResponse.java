@@ -18,6 +18,7 @@ package com.android.volley;
 
 import org.apache.http.HttpStatus;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Map;
 
@@ -35,11 +36,7 @@ public class NetworkResponse {
      */
     public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
             boolean notModified, long networkTimeMs) {
-        this.statusCode = statusCode;
-        this.data = data;
-        this.headers = headers;
-        this.notModified = notModified;
-        this.networkTimeMs = networkTimeMs;
+        this(statusCode, data, null, headers, notModified, networkTimeMs);
     }
 
     public NetworkResponse(int statusCode, byte[] data, Map<String, String> headers,
@@ -55,12 +52,56 @@ public class NetworkResponse {
         this(HttpStatus.SC_OK, data, headers, false, 0);
     }
 
+    private NetworkResponse(int statusCode, byte[] data, ByteBuffer dataBuffer,
+            Map<String, String> headers, boolean notModified, long networkTimeMs) {
+        this.statusCode = statusCode;
+        this.data = data;
+        this.dataBuffer = dataBuffer;
+        this.headers = headers;
+        this.notModified = notModified;
+        this.networkTimeMs = networkTimeMs;
+    }
+
+    /**
+     * Creates a response to a request from a cache entry. The memory-mapped data of the entry
+     * is only handed over if the request {@link Request#shouldMapCachedData() accepts} it,
+     * otherwise it is copied into {@link #data}.
+     * @param request The request the response is for
+     * @param statusCode the HTTP status code
+     * @param entry The cache entry holding the response
+     * @param notModified True if the server returned a 304 and the data was already in cache
+     * @param networkTimeMs Round-trip network time to receive network response
+     */
+    public static NetworkResponse fromCacheEntry(Request<?> request, int statusCode,
+            Cache.Entry entry, boolean notModified, long networkTimeMs) {
+        if (entry.data == null && request.shouldMapCachedData()) {
+            return new NetworkResponse(statusCode, null, entry.dataBuffer,
+                    entry.responseHeaders, notModified, networkTimeMs);
+        }
+        return new NetworkResponse(statusCode, entry.getData(), null, entry.responseHeaders,
+                notModified, networkTimeMs);
+    }
+
+    /**
+     * Returns a read-only view of the response body, which does not copy the body whether
+     * it is held in {@link #data} or in {@link #dataBuffer}.
+     */
+    public ByteBuffer getDataBuffer() {
+        if (dataBuffer != null) {
+            return dataBuffer.duplicate();
+        }
+        return data == null ? null : ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
     /** The HTTP status code. */
     public final int statusCode;
 
-    /** Raw data from this response. */
+    /** Raw data from this response, null if it is only available as {@link #dataBuffer}. */
     public final byte[] data;
 
+    /** Read-only data of a response read from the cache, set instead of {@link #data}. */
+    public final ByteBuffer dataBuffer;
+
     /** Response headers. */
     public final Map<String, String> headers;
 
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the requests of a {@link RequestQueue} on its network dispatchers.
+ *
+ * The number of dispatchers grows with the number of waiting requests, up to a maximum, and
+ * dispatchers above the minimum stop once they have been idle for a while. Requests to a single
+ * host are limited to a number of concurrent requests; further requests to that host are held
+ * back until one of them has finished, so that other hosts are still served. Requests of
+ * {@link Request.Priority#IMMEDIATE} priority and long-lived requests are exempt from that
+ * limit. Waiting requests, held back ones included, are dropped or demoted once their deadline
+ * has passed, without waiting for them to reach the head of the queue.
+ */
+class NetworkScheduler {
+
+    /** Time after which a dispatcher above the minimum pool size stops if it received no work. */
+    private static final long KEEP_ALIVE_MS = 30 * 1000;
+
+    /** Minimum time between two scans of the waiting requests for expired deadlines. */
+    private static final long EXPIRY_SCAN_INTERVAL_MS = 1000;
+
+    /** The queue of requests that are actually going out to the network. */
+    private final NetworkQueue mQueue = new NetworkQueue();
+
+    private final Network mNetwork;
+    private final Cache mCache;
+    private final ResponseDelivery mDelivery;
+    private final int mMinDispatchers;
+    private final int mMaxDispatchers;
+    private final int mMaxRequestsPerHost;
+
+    /** Guards the dispatchers and the per-host state below. */
+    private final Object mLock = new Object();
+    private final List<NetworkDispatcher> mDispatchers = new ArrayList<NetworkDispatcher>();
+    private int mIdleDispatchers;
+    private boolean mRunning;
+    private long mLastExpiryScan = -EXPIRY_SCAN_INTERVAL_MS;
+
+    /** Number of requests being performed, by host. */
+    private final Map<String, Integer> mActiveRequests = new HashMap<String, Integer>();
+
+    /** Requests held back because their host reached its limit, by host. */
+    private final Map<String, PriorityQueue<Request<?>>> mHeldRequests =
+            new HashMap<String, PriorityQueue<Request<?>>>();
+
+    /**
+     * The network queue, which starts another dispatcher if requests are waiting for one.
+     */
+    private class NetworkQueue extends PriorityBlockingQueue<Request<?>> {
+        @Override
+        public boolean offer(Request<?> request) {
+            boolean added = super.offer(request);
+            onRequestQueued();
+            return added;
+        }
+    }
+
+    NetworkScheduler(Network network, Cache cache, ResponseDelivery delivery,
+            int minDispatchers, int maxDispatchers, int maxRequestsPerHost) {
+        mNetwork = network;
+        mCache = cache;
+        mDelivery = delivery;
+        mMinDispatchers = minDispatchers;
+        mMaxDispatchers = maxDispatchers;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    PriorityBlockingQueue<Request<?>> getQueue() {
+        return mQueue;
+    }
+
+    /**
+     * Starts the minimum number of dispatchers.
+     */
+    void start() {
+        synchronized (mLock) {
+            mRunning = true;
+            while (mDispatchers.size() < mMinDispatchers) {
+                startDispatcher();
+            }
+        }
+        onRequestQueued();
+    }
+
+    /**
+     * Stops all the dispatchers.
+     */
+    void stop() {
+        synchronized (mLock) {
+            mRunning = false;
+            for (NetworkDispatcher dispatcher : mDispatchers) {
+                dispatcher.quit();
+            }
+            mDispatchers.clear();
+        }
+    }
+
+    /**
+     * Returns the number of running dispatchers.
+     */
+    int getDispatcherCount() {
+        synchronized (mLock) {
+            return mDispatchers.size();
+        }
+    }
+
+    /**
+     * Takes the next request the given dispatcher is allowed to perform, waiting for one if
+     * necessary. The dispatcher has to call {@link #finished(Request)} once it is done with it.
+     *
+     * @return the request, or null if the dispatcher should stop as it is no longer needed
+     */
+    Request<?> take(NetworkDispatcher dispatcher) throws InterruptedException {
+        while (true) {
+            Request<?> request;
+            synchronized (mLock) {
+                mIdleDispatchers++;
+            }
+            try {
+                request = mQueue.poll(KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+            } finally {
+                synchronized (mLock) {
+                    mIdleDispatchers--;
+                }
+            }
+            if (request == null) {
+                synchronized (mLock) {
+                    if (mDispatchers.size() > mMinDispatchers) {
+                        mDispatchers.remove(dispatcher);
+                        return null;
+                    }
+                }
+                continue;
+            }
+            expireWaiting();
+            if (NetworkDispatcher.expire(request, mQueue, mDelivery)) {
+                continue;
+            }
+            if (acquireHost(request)) {
+                return request;
+            }
+            request.addMarker("network-host-limit");
+        }
+    }
+
+    /**
+     * Called by the dispatcher once it is done with a request returned by {@link #take}.
+     */
+    void finished(Request<?> request) {
+        if (isExempt(request)) {
+            return;
+        }
+        String host = getHost(request);
+        Request<?> released = null;
+        List<Request<?>> expired = new ArrayList<Request<?>>();
+        synchronized (mLock) {
+            Integer active = mActiveRequests.get(host);
+            if (active == null || active <= 1) {
+                mActiveRequests.remove(host);
+            } else {
+                mActiveRequests.put(host, active - 1);
+            }
+            PriorityQueue<Request<?>> held = mHeldRequests.get(host);
+            if (held != null) {
+                // An expired request would be dropped once taken, leaving the others held.
+                while ((released = held.poll()) != null && isExpired(released)) {
+                    expired.add(released);
+                }
+                if (held.isEmpty()) {
+                    mHeldRequests.remove(host);
+                }
+            }
+        }
+        for (Request<?> expiredRequest : expired) {
+            NetworkDispatcher.expire(expiredRequest, mQueue, mDelivery);
+        }
+        if (released != null) {
+            mQueue.add(released);
+        }
+    }
+
+    /**
+     * Drops or demotes the waiting requests whose deadline has passed, wherever they are in the
+     * queue or among the held back requests. Runs at most once per
+     * {@link #EXPIRY_SCAN_INTERVAL_MS}.
+     */
+    private void expireWaiting() {
+        List<Request<?>> expired = new ArrayList<Request<?>>();
+        synchronized (mLock) {
+            if (mQueue.isEmpty() && mHeldRequests.isEmpty()) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (now - mLastExpiryScan < EXPIRY_SCAN_INTERVAL_MS) {
+                return;
+            }
+            mLastExpiryScan = now;
+            Iterator<PriorityQueue<Request<?>>> heldQueues = mHeldRequests.values().iterator();
+            while (heldQueues.hasNext()) {
+                PriorityQueue<Request<?>> held = heldQueues.next();
+                Iterator<Request<?>> requests = held.iterator();
+                while (requests.hasNext()) {
+                    Request<?> request = requests.next();
+                    if (isExpired(request)) {
+                        requests.remove();
+                        expired.add(request);
+                    }
+                }
+                if (held.isEmpty()) {
+                    heldQueues.remove();
+                }
+            }
+        }
+        for (Request<?> request : mQueue) {
+            // Another dispatcher may have taken the request meanwhile.
+            if (isExpired(request) && mQueue.remove(request)) {
+                expired.add(request);
+            }
+        }
+        for (Request<?> request : expired) {
+            NetworkDispatcher.expire(request, mQueue, mDelivery);
+        }
+    }
+
+    /**
+     * Counts the request against the limit of its host, or holds it back if the limit has been
+     * reached.
+     *
+     * @return whether the request may be performed now
+     */
+    private boolean acquireHost(Request<?> request) {
+        if (isExempt(request)) {
+            return true;
+        }
+        String host = getHost(request);
+        synchronized (mLock) {
+            Integer active = mActiveRequests.get(host);
+            int count = active == null ? 0 : active;
+            if (count < mMaxRequestsPerHost) {
+                mActiveRequests.put(host, count + 1);
+                return true;
+            }
+            PriorityQueue<Request<?>> held = mHeldRequests.get(host);
+            if (held == null) {
+                held = new PriorityQueue<Request<?>>();
+                mHeldRequests.put(host, held);
+            }
+            held.add(request);
+            return false;
+        }
+    }
+
+    private void onRequestQueued() {
+        synchronized (mLock) {
+            if (mRunning && mDispatchers.size() < mMaxDispatchers
+                    && mQueue.size() > mIdleDispatchers) {
+                startDispatcher();
+            }
+        }
+    }
+
+    private void startDispatcher() {
+        NetworkDispatcher dispatcher =
+                new NetworkDispatcher(mQueue, mNetwork, mCache, mDelivery, this);
+        mDispatchers.add(dispatcher);
+        // Counted as idle until it polls the queue, so that it is not started twice for a request.
+        mIdleDispatchers++;
+        dispatcher.start();
+    }
+
+    /**
+     * Called by a dispatcher started by {@link #startDispatcher()} once it is about to poll the
+     * queue for the first time.
+     */
+    void onDispatcherStarted() {
+        synchronized (mLock) {
+            mIdleDispatchers--;
+        }
+    }
+
+    /**
+     * Returns true if {@link NetworkDispatcher#expire} would drop or demote the request.
+     */
+    private static boolean isExpired(Request<?> request) {
+        return request.isPastDeadline() && !request.isCanceled()
+                && (request.shouldDropAfterDeadline() || !request.isDemoted());
+    }
+
+    private static boolean isExempt(Request<?> request) {
+        return request.isLongLived()
+                || (!request.isDemoted() && request.getPriority() == Request.Priority.IMMEDIATE);
+    }
+
+    private static String getHost(Request<?> request) {
+        String url = request.getUrl();
+        String host = url != null ? Uri.parse(url).getHost() : null;
+        return host != null ? host : "";
+    }
+}
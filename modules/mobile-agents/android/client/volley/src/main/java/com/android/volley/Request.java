@@ -20,6 +20,7 @@ import android.net.TrafficStats;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.android.volley.VolleyLog.MarkerLog;
@@ -83,6 +84,12 @@ public abstract class Request<T> implements Comparable<Request<T>> {
     /** Whether or not responses to this request should be cached. */
     private boolean mShouldCache = true;
 
+    /** Whether or not large cached responses may be handed over memory-mapped. */
+    private boolean mShouldMapCachedData = false;
+
+    /** Whether or not the request body may be sent gzip compressed. */
+    private boolean mShouldCompressBody = false;
+
     /** Whether or not this request has been canceled. */
     private boolean mCanceled = false;
 
@@ -92,6 +99,18 @@ public abstract class Request<T> implements Comparable<Request<T>> {
     /** Whether the request should be retried in the event of an HTTP 5xx (server) error. */
     private boolean mShouldRetryServerErrors = false;
 
+    /** Time by which the request should have been sent, in elapsed realtime; 0 if none. */
+    private long mDeadline = 0;
+
+    /** Whether the request should be dropped, rather than demoted, once its deadline passed. */
+    private boolean mShouldDropAfterDeadline = false;
+
+    /** Whether the request is held open by the server, like a long poll. */
+    private boolean mLongLived = false;
+
+    /** Whether the request has been demoted to the lowest priority after its deadline. */
+    private volatile boolean mDemoted = false;
+
     /** The retry policy for this request. */
     private RetryPolicy mRetryPolicy;
 
@@ -475,6 +494,45 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return mShouldCache;
     }
 
+    /**
+     * Set whether or not large responses read from the cache may be handed to
+     * {@link #parseNetworkResponse(NetworkResponse)} as a memory-mapped
+     * {@link NetworkResponse#dataBuffer}, with {@link NetworkResponse#data} being null.
+     * Only enable this for requests which parse responses through
+     * {@link NetworkResponse#getDataBuffer()}.
+     *
+     * @return This Request object to allow for chaining.
+     */
+    public final Request<?> setShouldMapCachedData(boolean shouldMapCachedData) {
+        mShouldMapCachedData = shouldMapCachedData;
+        return this;
+    }
+
+    /**
+     * Returns true if large cached responses may be handed over memory-mapped.
+     */
+    public final boolean shouldMapCachedData() {
+        return mShouldMapCachedData;
+    }
+
+    /**
+     * Set whether or not the request body may be sent with a gzip Content-Encoding. Only enable
+     * this for servers which decompress request bodies.
+     *
+     * @return This Request object to allow for chaining.
+     */
+    public final Request<?> setShouldCompressBody(boolean shouldCompressBody) {
+        mShouldCompressBody = shouldCompressBody;
+        return this;
+    }
+
+    /**
+     * Returns true if the request body may be sent gzip compressed.
+     */
+    public final boolean shouldCompressBody() {
+        return mShouldCompressBody;
+    }
+
     /**
      * Sets whether or not the request should be retried in the event of an HTTP 5xx (server) error.
      *
@@ -492,6 +550,86 @@ public abstract class Request<T> implements Comparable<Request<T>> {
         return mShouldRetryServerErrors;
     }
 
+    /**
+     * Sets whether or not this request is held open by the server until it has something to
+     * send, like a long poll. Such requests are not counted against the limit of concurrent
+     * requests to their host, so that they do not hold back other requests to it.
+     *
+     * @return This Request object to allow for chaining.
+     */
+    public final Request<?> setLongLived(boolean longLived) {
+        mLongLived = longLived;
+        return this;
+    }
+
+    /**
+     * Returns true if this request is held open by the server.
+     */
+    public final boolean isLongLived() {
+        return mLongLived;
+    }
+
+    /**
+     * Sets the time by which this request should have been sent to the network, as returned by
+     * {@link SystemClock#elapsedRealtime()}. Requests of the same priority are sent in the order
+     * of their deadlines. Once its deadline has passed, a waiting request is either demoted,
+     * which sorts it behind the requests of the lowest priority, or dropped with a
+     * {@link TimeoutError}, see {@link #setShouldDropAfterDeadline(boolean)}.
+     *
+     * @return This Request object to allow for chaining.
+     */
+    public final Request<?> setDeadline(long deadline) {
+        mDeadline = deadline;
+        return this;
+    }
+
+    /**
+     * Returns the deadline of this request, or 0 if it has none.
+     */
+    public final long getDeadline() {
+        return mDeadline;
+    }
+
+    /**
+     * Sets whether or not this request should be dropped, rather than demoted, once its
+     * deadline has passed before it was sent.
+     *
+     * @return This Request object to allow for chaining.
+     */
+    public final Request<?> setShouldDropAfterDeadline(boolean shouldDropAfterDeadline) {
+        mShouldDropAfterDeadline = shouldDropAfterDeadline;
+        return this;
+    }
+
+    /**
+     * Returns true if this request should be dropped once its deadline has passed.
+     */
+    public final boolean shouldDropAfterDeadline() {
+        return mShouldDropAfterDeadline;
+    }
+
+    /**
+     * Returns true if the deadline of this request has passed.
+     */
+    public final boolean isPastDeadline() {
+        return mDeadline > 0 && SystemClock.elapsedRealtime() > mDeadline;
+    }
+
+    /**
+     * Demotes this request to the lowest priority. Must not be called while the request is
+     * waiting in a priority queue.
+     */
+    void demote() {
+        mDemoted = true;
+    }
+
+    /**
+     * Returns true if this request has been demoted after its deadline.
+     */
+    public final boolean isDemoted() {
+        return mDemoted;
+    }
+
     /**
      * Priority values.  Requests will be processed from higher priorities to
      * lower priorities, in FIFO order.
@@ -585,19 +723,35 @@ public abstract class Request<T> implements Comparable<Request<T>> {
     }
 
     /**
-     * Our comparator sorts from high to low priority, and secondarily by
-     * sequence number to provide FIFO ordering.
+     * Our comparator sorts from high to low priority, with demoted requests last, secondarily by
+     * deadline, with requests without a deadline last, and finally by sequence number to provide
+     * FIFO ordering.
      */
     @Override
     public int compareTo(Request<T> other) {
-        Priority left = this.getPriority();
-        Priority right = other.getPriority();
+        Priority left = this.mDemoted ? Priority.LOW : this.getPriority();
+        Priority right = other.mDemoted ? Priority.LOW : other.getPriority();
 
         // High-priority requests are "lesser" so they are sorted to the front.
+        if (left != right) {
+            return right.ordinal() - left.ordinal();
+        }
+        // Demoted requests are sorted behind the requests of the lowest priority.
+        if (this.mDemoted != other.mDemoted) {
+            return this.mDemoted ? 1 : -1;
+        }
+        // Earlier deadlines are sorted to the front.
+        if (this.mDeadline != other.mDeadline) {
+            if (this.mDeadline == 0) {
+                return 1;
+            }
+            if (other.mDeadline == 0) {
+                return -1;
+            }
+            return this.mDeadline < other.mDeadline ? -1 : 1;
+        }
         // Equal priorities are sorted by sequence number to provide FIFO ordering.
-        return left == right ?
-                this.mSequence - other.mSequence :
-                right.ordinal() - left.ordinal();
+        return this.mSequence - other.mSequence;
     }
 
     @Override
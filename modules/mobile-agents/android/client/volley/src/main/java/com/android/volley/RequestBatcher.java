@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batching stage in front of a {@link RequestQueue}.
+ *
+ * Requests added through {@link #add(Request)} which a {@link BatchAdapter} considers compatible
+ * are held back for a short window, or until a batch is full, and are then sent as a single
+ * request. The response of that request is split into one response per original request, which
+ * is parsed and delivered to the listener of that request as if it had been sent on its own.
+ * Many small requests therefore cost a single connection and radio wake-up.
+ *
+ * A batch holding a single request sends that request unchanged. If the batch fails as a whole,
+ * every request of the batch receives the error. The requests of a batch can be cancelled on their
+ * own, through the queue as usual, and the batch itself is only cancelled once all of them are.
+ */
+public class RequestBatcher {
+
+    /**
+     * Combines requests into batches, and splits the response of a batch. The requests of a
+     * batch share the method and headers of its first request.
+     */
+    public interface BatchAdapter {
+        /**
+         * Returns the key of the batch the given request may join, or null if the request has
+         * to be sent on its own. Requests with equal keys are sent together.
+         */
+        public String getBatchKey(Request<?> request);
+
+        /**
+         * Returns the URL the batch with the given key is sent to.
+         */
+        public String getBatchUrl(String batchKey, List<Request<?>> requests);
+
+        /**
+         * Returns the body of a batch, combined from the bodies of its requests.
+         */
+        public byte[] getBatchBody(List<Request<?>> requests) throws AuthFailureError;
+
+        /**
+         * Splits the response of a batch into one response for each of its requests, in the
+         * order of the requests.
+         *
+         * @throws VolleyError if the response cannot be split
+         */
+        public List<NetworkResponse> splitResponse(NetworkResponse response,
+                List<Request<?>> requests) throws VolleyError;
+    }
+
+    /** Default time for which the first request of a batch waits for others to join it. */
+    public static final int DEFAULT_WINDOW_MS = 2000;
+
+    /** Default maximum number of requests of a batch. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+    private final RequestQueue mQueue;
+    private final BatchAdapter mAdapter;
+    private final int mWindowMs;
+    private final int mMaxBatchSize;
+    private final Handler mHandler;
+
+    /** Requests waiting to be sent, by batch key. */
+    private final Map<String, List<Request<?>>> mPendingBatches =
+            new HashMap<String, List<Request<?>>>();
+
+    /**
+     * @param queue The queue to send batches to
+     * @param adapter The adapter combining requests into batches
+     * @param windowMs The time for which the first request of a batch waits for others
+     * @param maxBatchSize The number of requests after which a batch is sent without waiting
+     * @param handler The handler which runs the timers of the batches
+     */
+    public RequestBatcher(RequestQueue queue, BatchAdapter adapter, int windowMs,
+            int maxBatchSize, Handler handler) {
+        mQueue = queue;
+        mAdapter = adapter;
+        mWindowMs = windowMs;
+        mMaxBatchSize = maxBatchSize;
+        mHandler = handler;
+    }
+
+    /**
+     * @param queue The queue to send batches to
+     * @param adapter The adapter combining requests into batches
+     */
+    public RequestBatcher(RequestQueue queue, BatchAdapter adapter) {
+        this(queue, adapter, DEFAULT_WINDOW_MS, DEFAULT_MAX_BATCH_SIZE,
+                new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Adds a request, which is either held back for a batch or added to the queue right away.
+     * @param request The request to service
+     * @return The passed-in request
+     */
+    public <T> Request<T> add(Request<T> request) {
+        final String batchKey = mAdapter.getBatchKey(request);
+        if (batchKey == null) {
+            return mQueue.add(request);
+        }
+        request.addMarker("add-to-batch");
+        mQueue.addBatched(request);
+        List<Request<?>> full = null;
+        synchronized (mPendingBatches) {
+            List<Request<?>> batch = mPendingBatches.get(batchKey);
+            if (batch == null) {
+                batch = new ArrayList<Request<?>>(mMaxBatchSize);
+                mPendingBatches.put(batchKey, batch);
+                final List<Request<?>> scheduled = batch;
+                mHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush(batchKey, scheduled);
+                    }
+                }, mWindowMs);
+            }
+            batch.add(request);
+            if (batch.size() >= mMaxBatchSize) {
+                full = mPendingBatches.remove(batchKey);
+            }
+        }
+        if (full != null) {
+            send(batchKey, full);
+        }
+        return request;
+    }
+
+    /**
+     * Sends all the pending batches without waiting for their windows to pass.
+     */
+    public void flushAll() {
+        Map<String, List<Request<?>>> batches;
+        synchronized (mPendingBatches) {
+            batches = new HashMap<String, List<Request<?>>>(mPendingBatches);
+            mPendingBatches.clear();
+        }
+        for (Map.Entry<String, List<Request<?>>> batch : batches.entrySet()) {
+            send(batch.getKey(), batch.getValue());
+        }
+    }
+
+    /**
+     * Sends the given batch when its window has passed, unless it has been sent already.
+     */
+    private void flush(String batchKey, List<Request<?>> batch) {
+        synchronized (mPendingBatches) {
+            if (mPendingBatches.get(batchKey) != batch) {
+                return;
+            }
+            mPendingBatches.remove(batchKey);
+        }
+        send(batchKey, batch);
+    }
+
+    private void send(String batchKey, List<Request<?>> batch) {
+        List<Request<?>> requests = new ArrayList<Request<?>>(batch.size());
+        for (Request<?> request : batch) {
+            if (request.isCanceled()) {
+                finishPart(request, "batch-discard-cancelled");
+            } else {
+                requests.add(request);
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        if (requests.size() == 1) {
+            mQueue.add(requests.get(0));
+            return;
+        }
+        String url = mAdapter.getBatchUrl(batchKey, requests);
+        mQueue.add(new BatchRequest(url, requests));
+    }
+
+    /**
+     * Finishes a request of a batch. The request has never been added to the queue, so it is
+     * finished without going through {@link RequestQueue#finish(Request)}.
+     */
+    private void finishPart(Request<?> request, String tag) {
+        request.finish(tag);
+        mQueue.finishBatched(request);
+    }
+
+    /**
+     * The single request sending a batch. It has no tag, as its requests may have different
+     * ones, and they are cancelled on their own.
+     */
+    private class BatchRequest extends Request<List<Response<?>>> {
+        private final List<Request<?>> mRequests;
+        private boolean mDelivered;
+
+        BatchRequest(String url, List<Request<?>> requests) {
+            super(requests.get(0).getMethod(), url, null);
+            mRequests = requests;
+            setShouldCache(false);
+            setRetryPolicy(requests.get(0).getRetryPolicy());
+            for (Request<?> request : requests) {
+                request.addMarker("batch-sent");
+            }
+        }
+
+        @Override
+        public void cancel() {
+            super.cancel();
+            for (Request<?> request : mRequests) {
+                request.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCanceled() {
+            if (super.isCanceled()) {
+                return true;
+            }
+            for (Request<?> request : mRequests) {
+                if (!request.isCanceled()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void finish(String tag) {
+            super.finish(tag);
+            // The requests have not been delivered to if the batch itself has been cancelled
+            if (!mDelivered) {
+                mDelivered = true;
+                for (Request<?> request : mRequests) {
+                    finishPart(request, tag);
+                }
+            }
+        }
+
+        @Override
+        public Map<String, String> getHeaders() throws AuthFailureError {
+            return mRequests.get(0).getHeaders();
+        }
+
+        @Override
+        public String getBodyContentType() {
+            return mRequests.get(0).getBodyContentType();
+        }
+
+        @Override
+        public byte[] getBody() throws AuthFailureError {
+            return mAdapter.getBatchBody(mRequests);
+        }
+
+        @Override
+        public Priority getPriority() {
+            Priority priority = Priority.LOW;
+            for (Request<?> request : mRequests) {
+                if (request.getPriority().ordinal() > priority.ordinal()) {
+                    priority = request.getPriority();
+                }
+            }
+            return priority;
+        }
+
+        @Override
+        protected Response<List<Response<?>>> parseNetworkResponse(NetworkResponse response) {
+            List<NetworkResponse> parts;
+            try {
+                parts = mAdapter.splitResponse(response, mRequests);
+            } catch (VolleyError e) {
+                return Response.error(e);
+            }
+            if (parts == null || parts.size() != mRequests.size()) {
+                return Response.error(new ParseError(response));
+            }
+            List<Response<?>> responses = new ArrayList<Response<?>>(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                Response<?> part = mRequests.get(i).parseNetworkResponse(parts.get(i));
+                responses.add(part != null ? part : Response.error(new ParseError(parts.get(i))));
+            }
+            return Response.success(responses, null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void deliverResponse(List<Response<?>> responses) {
+            mDelivered = true;
+            for (int i = 0; i < mRequests.size(); i++) {
+                Request<Object> request = (Request<Object>) mRequests.get(i);
+                Response<Object> response = (Response<Object>) responses.get(i);
+                if (request.isCanceled()) {
+                    finishPart(request, "canceled-at-delivery");
+                    continue;
+                }
+                request.markDelivered();
+                if (response.isSuccess()) {
+                    request.deliverResponse(response.result);
+                } else {
+                    request.deliverError(response.error);
+                }
+                finishPart(request, "done");
+            }
+        }
+
+        @Override
+        public void deliverError(VolleyError error) {
+            mDelivered = true;
+            for (Request<?> request : mRequests) {
+                if (request.isCanceled()) {
+                    finishPart(request, "canceled-at-delivery");
+                    continue;
+                }
+                request.deliverError(request.parseNetworkError(error));
+                finishPart(request, "done");
+            }
+        }
+    }
+}
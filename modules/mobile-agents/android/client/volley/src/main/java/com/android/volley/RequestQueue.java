@@ -73,12 +73,20 @@ public class RequestQueue {
         new PriorityBlockingQueue<Request<?>>();
 
     /** The queue of requests that are actually going out to the network. */
-    private final PriorityBlockingQueue<Request<?>> mNetworkQueue =
-        new PriorityBlockingQueue<Request<?>>();
+    private final PriorityBlockingQueue<Request<?>> mNetworkQueue;
 
-    /** Number of network request dispatcher threads to start. */
+    /** Maximum number of network request dispatcher threads to start. */
     private static final int DEFAULT_NETWORK_THREAD_POOL_SIZE = 4;
 
+    /** Number of network request dispatcher threads kept while the queue is idle. */
+    private static final int DEFAULT_MIN_NETWORK_THREAD_POOL_SIZE = 1;
+
+    /**
+     * Maximum number of concurrent requests to a single host, which leaves a dispatcher for
+     * other hosts.
+     */
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = DEFAULT_NETWORK_THREAD_POOL_SIZE - 1;
+
     /** Cache interface for retrieving and storing responses. */
     private final Cache mCache;
 
@@ -88,8 +96,8 @@ public class RequestQueue {
     /** Response delivery mechanism. */
     private final ResponseDelivery mDelivery;
 
-    /** The network dispatchers. */
-    private NetworkDispatcher[] mDispatchers;
+    /** Schedules requests on the network dispatchers. */
+    private final NetworkScheduler mNetworkScheduler;
 
     /** The cache dispatcher. */
     private CacheDispatcher mCacheDispatcher;
@@ -107,10 +115,28 @@ public class RequestQueue {
      */
     public RequestQueue(Cache cache, Network network, int threadPoolSize,
             ResponseDelivery delivery) {
+        this(cache, network, threadPoolSize, threadPoolSize, threadPoolSize, delivery);
+    }
+
+    /**
+     * Creates the worker pool. Processing will not begin until {@link #start()} is called.
+     * The number of network dispatcher threads grows with the number of waiting requests.
+     *
+     * @param cache A Cache to use for persisting responses to disk
+     * @param network A Network interface for performing HTTP requests
+     * @param minThreadPoolSize Number of network dispatcher threads kept while idle
+     * @param maxThreadPoolSize Maximum number of network dispatcher threads
+     * @param maxRequestsPerHost Maximum number of concurrent requests to a single host
+     * @param delivery A ResponseDelivery interface for posting responses and errors
+     */
+    public RequestQueue(Cache cache, Network network, int minThreadPoolSize,
+            int maxThreadPoolSize, int maxRequestsPerHost, ResponseDelivery delivery) {
         mCache = cache;
         mNetwork = network;
-        mDispatchers = new NetworkDispatcher[threadPoolSize];
         mDelivery = delivery;
+        mNetworkScheduler = new NetworkScheduler(network, cache, delivery, minThreadPoolSize,
+                maxThreadPoolSize, maxRequestsPerHost);
+        mNetworkQueue = mNetworkScheduler.getQueue();
     }
 
     /**
@@ -132,7 +158,9 @@ public class RequestQueue {
      * @param network A Network interface for performing HTTP requests
      */
     public RequestQueue(Cache cache, Network network) {
-        this(cache, network, DEFAULT_NETWORK_THREAD_POOL_SIZE);
+        this(cache, network, DEFAULT_MIN_NETWORK_THREAD_POOL_SIZE,
+                DEFAULT_NETWORK_THREAD_POOL_SIZE, DEFAULT_MAX_REQUESTS_PER_HOST,
+                new ExecutorDelivery(new Handler(Looper.getMainLooper())));
     }
 
     /**
@@ -144,13 +172,8 @@ public class RequestQueue {
         mCacheDispatcher = new CacheDispatcher(mCacheQueue, mNetworkQueue, mCache, mDelivery);
         mCacheDispatcher.start();
 
-        // Create network dispatchers (and corresponding threads) up to the pool size.
-        for (int i = 0; i < mDispatchers.length; i++) {
-            NetworkDispatcher networkDispatcher = new NetworkDispatcher(mNetworkQueue, mNetwork,
-                    mCache, mDelivery);
-            mDispatchers[i] = networkDispatcher;
-            networkDispatcher.start();
-        }
+        // Create network dispatchers (and corresponding threads) up to the minimum pool size.
+        mNetworkScheduler.start();
     }
 
     /**
@@ -160,11 +183,7 @@ public class RequestQueue {
         if (mCacheDispatcher != null) {
             mCacheDispatcher.quit();
         }
-        for (int i = 0; i < mDispatchers.length; i++) {
-            if (mDispatchers[i] != null) {
-                mDispatchers[i].quit();
-            }
-        }
+        mNetworkScheduler.stop();
     }
 
     /**
@@ -300,6 +319,32 @@ public class RequestQueue {
         }
     }
 
+    /**
+     * Tracks a request which is sent as part of a batch rather than through this queue, so that
+     * it can be cancelled with {@link #cancelAll(RequestFilter)}.
+     */
+    <T> void addBatched(Request<T> request) {
+        synchronized (mCurrentRequests) {
+            mCurrentRequests.add(request);
+        }
+    }
+
+    /**
+     * Called when a request sent as part of a batch has finished. Unlike
+     * {@link #finish(Request)}, does not release waiting requests, as the request has never
+     * gone through the cache.
+     */
+    <T> void finishBatched(Request<T> request) {
+        synchronized (mCurrentRequests) {
+            mCurrentRequests.remove(request);
+        }
+        synchronized (mFinishedListeners) {
+          for (RequestFinishedListener<T> listener : mFinishedListeners) {
+            listener.onRequestFinished(request);
+          }
+        }
+    }
+
     public  <T> void addRequestFinishedListener(RequestFinishedListener<T> listener) {
       synchronized (mFinishedListeners) {
         mFinishedListeners.add(listener);
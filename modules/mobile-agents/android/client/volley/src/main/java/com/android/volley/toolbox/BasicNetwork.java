@@ -59,7 +59,7 @@ public class BasicNetwork implements Network {
 
     private static int SLOW_REQUEST_THRESHOLD_MS = 3000;
 
-    private static int DEFAULT_POOL_SIZE = 4096;
+    private static int DEFAULT_POOL_SIZE = 64 * 1024;
 
     protected final HttpStack mHttpStack;
 
@@ -114,9 +114,20 @@ public class BasicNetwork implements Network {
                     // the new ones from the response.
                     // http://www.w3.org/Protocols/rfc2616/rfc2616-sec10.html#sec10.3.5
                     entry.responseHeaders.putAll(responseHeaders);
-                    return new NetworkResponse(HttpStatus.SC_NOT_MODIFIED, entry.data,
-                            entry.responseHeaders, true,
-                            SystemClock.elapsedRealtime() - requestStart);
+                    return NetworkResponse.fromCacheEntry(request, HttpStatus.SC_NOT_MODIFIED,
+                            entry, true, SystemClock.elapsedRealtime() - requestStart);
+                }
+
+                // Successful bodies of streaming requests are parsed without buffering them.
+                if (request instanceof StreamingRequest && statusCode >= 200 && statusCode <= 299
+                        && httpResponse.getEntity() != null) {
+                    NetworkResponse networkResponse = new NetworkResponse(statusCode, new byte[0],
+                            responseHeaders, false, SystemClock.elapsedRealtime() - requestStart);
+                    streamEntity((StreamingRequest<?>) request, networkResponse,
+                            httpResponse.getEntity());
+                    logSlowRequests(SystemClock.elapsedRealtime() - requestStart, request, null,
+                            statusLine);
+                    return networkResponse;
                 }
 
                 // Some responses such as 204s do not have content.  We must check.
@@ -264,6 +275,31 @@ public class BasicNetwork implements Network {
         }
     }
 
+    /** Hands the contents of HttpEntity to a streaming request. */
+    private void streamEntity(StreamingRequest<?> request, NetworkResponse response,
+            HttpEntity entity) throws IOException, VolleyError {
+        try {
+            InputStream in = entity.getContent();
+            if (in == null) {
+                throw new ServerError();
+            }
+            request.readStream(response, in);
+        } catch (IOException e) {
+            if (request.isCanceled()) {
+                // Retrying a cancelled request is pointless, its response is not delivered.
+                throw new VolleyError("Request cancelled", e);
+            }
+            throw e;
+        } finally {
+            try {
+                // Close the InputStream and release the resources by "consuming the content".
+                entity.consumeContent();
+            } catch (IOException e) {
+                VolleyLog.v("Error occured when calling consumingContent");
+            }
+        }
+    }
+
     /**
      * Converts Headers[] to Map<String, String>.
      */
@@ -16,11 +16,10 @@
 
 package com.android.volley.toolbox;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import com.android.volley.NetworkDispatcher;
+
 import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ByteArrayPool is a source and repository of <code>byte[]</code> objects. Its purpose is to
@@ -39,8 +38,16 @@ import java.util.List;
  * free to return buffers larger than the requested size. The caller needs to be able to gracefully
  * deal with getting buffers any size over the minimum.
  * <p>
- * If there is not a suitably-sized buffer in its recycling pool when a buffer is requested, this
- * class will allocate a new buffer and return it.
+ * Pooled buffers are kept in size classes of power-of-two ranges, each with its own lock, so a
+ * request only looks at the few buffers that can satisfy it. New buffers that fit in the pool are
+ * allocated with the size of their class rounded up to a power of two, which makes them reusable
+ * for any later request of that class. If there is not a suitably-sized buffer in its recycling
+ * pool when a buffer is requested, this class will allocate a new buffer and return it.
+ * <p>
+ * {@link NetworkDispatcher} threads additionally keep a few returned buffers in a cache of their
+ * own, which serves their next requests without taking any lock. These buffers are not counted
+ * against the size limit of the pool, but against a separate limit for each thread, and are
+ * returned to the pool when the thread exits.
  * <p>
  * This class has no special ownership of buffers it creates; the caller is free to take a buffer
  * it receives from this pool, use it permanently, and never return it to the pool; additionally,
@@ -52,12 +59,39 @@ import java.util.List;
  * least-recently-used buffers are disposed.
  */
 public class ByteArrayPool {
-    /** The buffer pool, arranged both by last use and by buffer size */
-    private List<byte[]> mBuffersByLastUse = new LinkedList<byte[]>();
-    private List<byte[]> mBuffersBySize = new ArrayList<byte[]>(64);
+    /** The number of size classes; class i holds buffers of 2^i up to 2^(i+1) - 1 bytes */
+    private static final int SIZE_CLASSES = 32;
+
+    /** The maximum number of buffers cached by a single network dispatcher thread */
+    private static final int THREAD_CACHE_SLOTS = 4;
+
+    /** The buffer pool, arranged by size class */
+    private final SizeClass[] mSizeClasses = new SizeClass[SIZE_CLASSES];
+
+    /** Buffers cached by the network dispatcher threads */
+    private final ThreadLocal<ThreadCache> mThreadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            final ThreadCache cache = new ThreadCache(mThreadCacheLimit);
+            ((NetworkDispatcher) Thread.currentThread()).runBeforeExit(new Runnable() {
+                @Override
+                public void run() {
+                    releaseThreadCache(cache);
+                }
+            });
+            return cache;
+        }
+    };
+
+    /** Orders the returned buffers by last use */
+    private final AtomicLong mClock = new AtomicLong();
 
     /** The total size of the buffers in the pool */
-    private int mCurrentSize = 0;
+    private final AtomicLong mCurrentSize = new AtomicLong();
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mBytesAllocated = new AtomicLong();
 
     /**
      * The maximum aggregate size of the buffers in the pool. Old buffers are discarded to stay
@@ -65,7 +99,14 @@ public class ByteArrayPool {
      */
     private final int mSizeLimit;
 
-    /** Compares buffers by size */
+    /** The maximum aggregate size of the buffers cached by a single network dispatcher thread */
+    private final int mThreadCacheLimit;
+
+    /**
+     * Compares buffers by size
+     * @deprecated No longer used by the pool, which keeps its buffers in size classes.
+     */
+    @Deprecated
     protected static final Comparator<byte[]> BUF_COMPARATOR = new Comparator<byte[]>() {
         @Override
         public int compare(byte[] lhs, byte[] rhs) {
@@ -77,7 +118,20 @@ public class ByteArrayPool {
      * @param sizeLimit the maximum size of the pool, in bytes
      */
     public ByteArrayPool(int sizeLimit) {
+        this(sizeLimit, sizeLimit / 4);
+    }
+
+    /**
+     * @param sizeLimit the maximum size of the pool, in bytes
+     * @param threadCacheLimit the maximum size, in bytes, of the buffers cached by each network
+     *        dispatcher thread, or 0 to disable those caches
+     */
+    public ByteArrayPool(int sizeLimit, int threadCacheLimit) {
         mSizeLimit = sizeLimit;
+        mThreadCacheLimit = threadCacheLimit;
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            mSizeClasses[i] = new SizeClass();
+        }
     }
 
     /**
@@ -88,17 +142,26 @@ public class ByteArrayPool {
      *        larger.
      * @return a byte[] buffer is always returned.
      */
-    public synchronized byte[] getBuf(int len) {
-        for (int i = 0; i < mBuffersBySize.size(); i++) {
-            byte[] buf = mBuffersBySize.get(i);
-            if (buf.length >= len) {
-                mCurrentSize -= buf.length;
-                mBuffersBySize.remove(i);
-                mBuffersByLastUse.remove(buf);
-                return buf;
-            }
+    public byte[] getBuf(int len) {
+        byte[] buf = null;
+        if (isThreadCached()) {
+            buf = mThreadCache.get().get(len);
+        }
+        if (buf == null) {
+            buf = getPooledBuf(len);
+        }
+        if (buf != null) {
+            mHits.incrementAndGet();
+            return buf;
         }
-        return new byte[len];
+        mMisses.incrementAndGet();
+        int size = len;
+        int rounded = roundUp(len);
+        if (rounded > 0 && rounded <= mSizeLimit) {
+            size = rounded;
+        }
+        mBytesAllocated.addAndGet(size);
+        return new byte[size];
     }
 
     /**
@@ -107,29 +170,216 @@ public class ByteArrayPool {
      *
      * @param buf the buffer to return to the pool.
      */
-    public synchronized void returnBuf(byte[] buf) {
-        if (buf == null || buf.length > mSizeLimit) {
+    public void returnBuf(byte[] buf) {
+        if (buf == null || buf.length == 0 || buf.length > mSizeLimit) {
+            return;
+        }
+        if (isThreadCached() && mThreadCache.get().put(buf)) {
             return;
         }
-        mBuffersByLastUse.add(buf);
-        int pos = Collections.binarySearch(mBuffersBySize, buf, BUF_COMPARATOR);
-        if (pos < 0) {
-            pos = -pos - 1;
+        returnPooledBuf(buf);
+    }
+
+    /**
+     * @return the number of requests served with a pooled buffer
+     */
+    public long getHitCount() {
+        return mHits.get();
+    }
+
+    /**
+     * @return the number of requests which had to allocate a new buffer
+     */
+    public long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the total size, in bytes, of the buffers allocated by this pool
+     */
+    public long getBytesAllocated() {
+        return mBytesAllocated.get();
+    }
+
+    private void returnPooledBuf(byte[] buf) {
+        mSizeClasses[sizeClassOf(buf.length)].add(buf, mClock.incrementAndGet());
+        if (mCurrentSize.addAndGet(buf.length) > mSizeLimit) {
+            trim();
         }
-        mBuffersBySize.add(pos, buf);
-        mCurrentSize += buf.length;
-        trim();
+    }
+
+    /**
+     * Returns the buffers cached by the current thread, which is about to exit, to the pool.
+     */
+    private void releaseThreadCache(ThreadCache cache) {
+        mThreadCache.remove();
+        byte[] buf;
+        while ((buf = cache.get(0)) != null) {
+            returnPooledBuf(buf);
+        }
+    }
+
+    private byte[] getPooledBuf(int len) {
+        int first = sizeClassOf(len);
+        // The class of the requested length may hold buffers shorter than it, unless the
+        // length is a power of two. All the buffers of the larger classes are long enough.
+        byte[] buf = mSizeClasses[first].poll(len);
+        for (int i = first + 1; buf == null && i < SIZE_CLASSES; i++) {
+            buf = mSizeClasses[i].poll(0);
+        }
+        if (buf != null) {
+            mCurrentSize.addAndGet(-buf.length);
+        }
+        return buf;
     }
 
     /**
      * Removes buffers from the pool until it is under its size limit.
      */
-    private synchronized void trim() {
-        while (mCurrentSize > mSizeLimit) {
-            byte[] buf = mBuffersByLastUse.remove(0);
-            mBuffersBySize.remove(buf);
-            mCurrentSize -= buf.length;
+    private void trim() {
+        while (mCurrentSize.get() > mSizeLimit) {
+            SizeClass oldest = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (SizeClass sizeClass : mSizeClasses) {
+                long lastUse = sizeClass.oldestUse();
+                if (lastUse < oldestUse) {
+                    oldest = sizeClass;
+                    oldestUse = lastUse;
+                }
+            }
+            if (oldest == null) {
+                // Buffers taken by concurrent requests have not been accounted for yet.
+                return;
+            }
+            byte[] buf = oldest.pollOldest();
+            if (buf != null) {
+                mCurrentSize.addAndGet(-buf.length);
+            }
         }
     }
 
+    private static boolean isThreadCached() {
+        return Thread.currentThread() instanceof NetworkDispatcher;
+    }
+
+    private static int sizeClassOf(int len) {
+        return len <= 1 ? 0 : 31 - Integer.numberOfLeadingZeros(len);
+    }
+
+    /** Returns the smallest power of two not less than len, or a negative value on overflow. */
+    private static int roundUp(int len) {
+        return len <= 1 ? 1 : Integer.highestOneBit(len - 1) << 1;
+    }
+
+    /**
+     * The pooled buffers of a single size class, kept in a ring in the order they were returned.
+     * Requests take the most recently returned buffer, trimming the least recently returned one.
+     */
+    private static class SizeClass {
+        private byte[][] mBuffers = new byte[4][];
+        private long[] mLastUse = new long[4];
+        private int mHead;
+        private int mCount;
+
+        synchronized void add(byte[] buf, long lastUse) {
+            if (mCount == mBuffers.length) {
+                byte[][] buffers = new byte[mCount * 2][];
+                long[] uses = new long[mCount * 2];
+                for (int i = 0; i < mCount; i++) {
+                    int index = (mHead + i) % mCount;
+                    buffers[i] = mBuffers[index];
+                    uses[i] = mLastUse[index];
+                }
+                mBuffers = buffers;
+                mLastUse = uses;
+                mHead = 0;
+            }
+            int index = (mHead + mCount) % mBuffers.length;
+            mBuffers[index] = buf;
+            mLastUse[index] = lastUse;
+            mCount++;
+        }
+
+        /** Takes the most recently returned buffer of at least len bytes. */
+        synchronized byte[] poll(int len) {
+            for (int i = mCount - 1; i >= 0; i--) {
+                int index = (mHead + i) % mBuffers.length;
+                byte[] buf = mBuffers[index];
+                if (buf.length >= len) {
+                    // Close the gap by moving the more recently returned buffers down.
+                    for (int j = i; j < mCount - 1; j++) {
+                        int to = (mHead + j) % mBuffers.length;
+                        int from = (to + 1) % mBuffers.length;
+                        mBuffers[to] = mBuffers[from];
+                        mLastUse[to] = mLastUse[from];
+                    }
+                    mCount--;
+                    mBuffers[(mHead + mCount) % mBuffers.length] = null;
+                    return buf;
+                }
+            }
+            return null;
+        }
+
+        synchronized long oldestUse() {
+            return mCount == 0 ? Long.MAX_VALUE : mLastUse[mHead];
+        }
+
+        synchronized byte[] pollOldest() {
+            if (mCount == 0) {
+                return null;
+            }
+            byte[] buf = mBuffers[mHead];
+            mBuffers[mHead] = null;
+            mHead = (mHead + 1) % mBuffers.length;
+            mCount--;
+            return buf;
+        }
+    }
+
+    /**
+     * The buffers cached by a single thread. Only that thread accesses it, so it needs no locking.
+     */
+    private static class ThreadCache {
+        private final byte[][] mBuffers = new byte[THREAD_CACHE_SLOTS][];
+        private final int mSizeLimit;
+        private int mCurrentSize;
+
+        ThreadCache(int sizeLimit) {
+            mSizeLimit = sizeLimit;
+        }
+
+        byte[] get(int len) {
+            // Prefer the shortest buffer which is long enough.
+            int best = -1;
+            for (int i = 0; i < THREAD_CACHE_SLOTS; i++) {
+                byte[] buf = mBuffers[i];
+                if (buf != null && buf.length >= len
+                        && (best < 0 || buf.length < mBuffers[best].length)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            byte[] buf = mBuffers[best];
+            mBuffers[best] = null;
+            mCurrentSize -= buf.length;
+            return buf;
+        }
+
+        boolean put(byte[] buf) {
+            if (mCurrentSize + buf.length > mSizeLimit) {
+                return false;
+            }
+            for (int i = 0; i < THREAD_CACHE_SLOTS; i++) {
+                if (mBuffers[i] == null) {
+                    mBuffers[i] = buf;
+                    mCurrentSize += buf.length;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -31,24 +31,64 @@ import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Cache implementation that caches files directly onto the hard disk in the specified
  * directory. The default disk usage size is 5MB, but is configurable.
+ *
+ * <p>The key, size, TTLs and ETag of every entry are indexed in a journal, which is replayed
+ * with a single sequential read on initialization instead of opening every cached file.
+ * Changes are appended to the journal, which is compacted in the background once most of
+ * its records have become redundant.
+ *
+ * <p>The cache can be used from several threads at once. Reads do not take any lock, while
+ * writes only lock the stripe of their key. Entries are written to a temporary file which is
+ * renamed into place, hence readers always see either the previous or the new entry.
+ *
+ * <p>The data of entries larger than {@link #MAPPED_DATA_THRESHOLD} is returned as a read-only
+ * {@link Entry#dataBuffer} mapped from the cache file. Since files are only ever replaced or
+ * deleted and never modified in place, a mapping stays valid after the entry changes.
  */
 public class DiskBasedCache implements Cache {
 
     /** Map of the Key, CacheHeader pairs */
-    private final Map<String, CacheHeader> mEntries =
-            new LinkedHashMap<String, CacheHeader>(16, .75f, true);
+    private final ConcurrentHashMap<String, CacheHeader> mEntries =
+            new ConcurrentHashMap<String, CacheHeader>(16, .75f, LOCK_STRIPES);
 
     /** Total amount of space currently used by the cache in bytes. */
-    private long mTotalSize = 0;
+    private final AtomicLong mTotalSize = new AtomicLong(0);
+
+    /** Source of the access sequence numbers which order the entries for pruning. */
+    private final AtomicLong mAccessCounter = new AtomicLong(0);
+
+    /** Source of the names of temporary files. */
+    private final AtomicLong mTempFileCounter = new AtomicLong(0);
+
+    /** Locks serializing modifications of the keys hashed to each stripe. */
+    private final ReentrantLock[] mLocks = new ReentrantLock[LOCK_STRIPES];
+
+    /** Lock allowing only one thread to prune the cache at a time. */
+    private final Object mPruneLock = new Object();
+
+    /** Lock guarding the journal, which is always taken after any stripe lock. */
+    private final Object mJournalLock = new Object();
 
     /** The root directory to use for the cache. */
     private final File mRootDirectory;
@@ -65,6 +105,54 @@ public class DiskBasedCache implements Cache {
     /** Magic number for current version of cache file format. */
     private static final int CACHE_MAGIC = 0x20150306;
 
+    /** Size of the data above which entries are memory-mapped instead of read onto the heap. */
+    static final int MAPPED_DATA_THRESHOLD = 128 * 1024;
+
+    /** Number of lock stripes, which must be a power of two. */
+    private static final int LOCK_STRIPES = 16;
+
+    /** Suffix of files which are being written. */
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /** Name of the journal file in the root directory. */
+    static final String JOURNAL_FILE = "journal";
+
+    /** Name of the journal file while it is being rewritten. */
+    static final String JOURNAL_FILE_TEMP = JOURNAL_FILE + TEMP_FILE_SUFFIX;
+
+    /** Magic number for current version of journal file format. */
+    private static final int JOURNAL_MAGIC = 0x20160901;
+
+    /** Journal record of an entry which has been added or updated. */
+    private static final int JOURNAL_PUT = 1;
+
+    /** Journal record of an entry which has been removed. */
+    private static final int JOURNAL_REMOVE = 2;
+
+    /** Minimum number of journal records before the journal is compacted. */
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 2000;
+
+    /** Stream appending records to the journal, null if the journal is not available. */
+    private OutputStream mJournalWriter;
+
+    /** Number of records in the journal. */
+    private int mJournalRecords = 0;
+
+    /** Whether a compaction of the journal has been scheduled. */
+    private boolean mCompactionScheduled = false;
+
+    /** Executor compacting the journal, without keeping a thread around while idle. */
+    private final ExecutorService mCompactionExecutor = new ThreadPoolExecutor(0, 1,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    /** Orders entries from the least to the most recently used one. */
+    private static final Comparator<CacheHeader> ACCESS_ORDER = new Comparator<CacheHeader>() {
+        @Override
+        public int compare(CacheHeader lhs, CacheHeader rhs) {
+            return lhs.lastAccess < rhs.lastAccess ? -1 : (lhs.lastAccess == rhs.lastAccess ? 0 : 1);
+        }
+    };
+
     /**
      * Constructs an instance of the DiskBasedCache at the specified directory.
      * @param rootDirectory The root directory of the cache.
@@ -73,6 +161,9 @@ public class DiskBasedCache implements Cache {
     public DiskBasedCache(File rootDirectory, int maxCacheSizeInBytes) {
         mRootDirectory = rootDirectory;
         mMaxCacheSizeInBytes = maxCacheSizeInBytes;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            mLocks[i] = new ReentrantLock();
+        }
     }
 
     /**
@@ -88,15 +179,24 @@ public class DiskBasedCache implements Cache {
      * Clears the cache. Deletes all cached files from disk.
      */
     @Override
-    public synchronized void clear() {
-        File[] files = mRootDirectory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                file.delete();
+    public void clear() {
+        lockAll();
+        try {
+            synchronized (mJournalLock) {
+                closeJournal();
+                File[] files = mRootDirectory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                mEntries.clear();
+                mTotalSize.set(0);
+                rebuildJournal();
             }
+        } finally {
+            unlockAll();
         }
-        mEntries.clear();
-        mTotalSize = 0;
         VolleyLog.d("Cache cleared.");
     }
 
@@ -104,23 +204,44 @@ public class DiskBasedCache implements Cache {
      * Returns the cache entry with the specified key if it exists, null otherwise.
      */
     @Override
-    public synchronized Entry get(String key) {
+    public Entry get(String key) {
         CacheHeader entry = mEntries.get(key);
         // if the entry does not exist, return.
         if (entry == null) {
             return null;
         }
+        entry.lastAccess = mAccessCounter.incrementAndGet();
 
         File file = getFileForKey(key);
         CountingInputStream cis = null;
         try {
-            cis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
-            CacheHeader.readHeader(cis); // eat header
-            byte[] data = streamToBytes(cis, (int) (file.length() - cis.bytesRead));
-            return entry.toCacheEntry(data);
+            FileInputStream fis = new FileInputStream(file);
+            // The size of the opened file, which a concurrent put may replace meanwhile.
+            long length = fis.getChannel().size();
+            cis = new CountingInputStream(new BufferedInputStream(fis), length);
+            // The response headers are only kept in the file, not in the journal.
+            CacheHeader header = CacheHeader.readHeader(cis);
+            long dataLength = length - cis.bytesRead;
+            if (dataLength > MAPPED_DATA_THRESHOLD) {
+                ByteBuffer dataBuffer = fis.getChannel()
+                        .map(FileChannel.MapMode.READ_ONLY, cis.bytesRead, dataLength)
+                        .asReadOnlyBuffer();
+                return header.toCacheEntry(null, dataBuffer);
+            }
+            byte[] data = streamToBytes(cis, (int) dataLength);
+            return header.toCacheEntry(data, null);
         } catch (IOException e) {
             VolleyLog.d("%s: %s", file.getAbsolutePath(), e.toString());
-            remove(key);
+            ReentrantLock lock = getLock(key);
+            lock.lock();
+            try {
+                // Only remove the entry if it has not been replaced since it was looked up.
+                if (mEntries.get(key) == entry) {
+                    removeLocked(key);
+                }
+            } finally {
+                lock.unlock();
+            }
             return null;
         } finally {
             if (cis != null) {
@@ -134,28 +255,83 @@ public class DiskBasedCache implements Cache {
     }
 
     /**
-     * Initializes the DiskBasedCache by scanning for all files currently in the
-     * specified root directory. Creates the root directory if necessary.
+     * Initializes the DiskBasedCache by replaying the journal of the root directory. If there
+     * is no valid journal, e.g. for a cache written by a previous version, all files currently
+     * in the root directory are scanned instead and the journal is rebuilt from them.
+     * Creates the root directory if necessary.
      */
     @Override
-    public synchronized void initialize() {
+    public void initialize() {
+        lockAll();
+        try {
+            synchronized (mJournalLock) {
+                initializeLocked();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private void initializeLocked() {
         if (!mRootDirectory.exists()) {
             if (!mRootDirectory.mkdirs()) {
                 VolleyLog.e("Unable to create cache dir %s", mRootDirectory.getAbsolutePath());
+                return;
             }
+            rebuildJournal();
             return;
         }
 
+        File journal = new File(mRootDirectory, JOURNAL_FILE);
+        if (journal.exists()) {
+            try {
+                if (readJournal(journal)) {
+                    openJournal();
+                    if (isCompactionNeeded()) {
+                        scheduleCompaction();
+                    }
+                } else {
+                    // The last record is incomplete, appending to it would corrupt the journal.
+                    rebuildJournal();
+                }
+                return;
+            } catch (IOException e) {
+                VolleyLog.d("Rebuilding corrupt journal %s: %s", journal.getAbsolutePath(),
+                        e.toString());
+                mEntries.clear();
+                mTotalSize.set(0);
+            }
+        }
+        scanDirectory();
+        rebuildJournal();
+    }
+
+    /**
+     * Loads the entries of the cache by reading the header of every file in the root directory.
+     */
+    private void scanDirectory() {
         File[] files = mRootDirectory.listFiles();
         if (files == null) {
             return;
         }
         for (File file : files) {
-            BufferedInputStream fis = null;
+            if (isJournalFile(file)) {
+                continue;
+            }
+            if (file.getName().endsWith(TEMP_FILE_SUFFIX)) {
+                // Left behind by a write which did not complete.
+                file.delete();
+                continue;
+            }
+            CountingInputStream fis = null;
             try {
-                fis = new BufferedInputStream(new FileInputStream(file));
+                fis = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)),
+                        file.length());
                 CacheHeader entry = CacheHeader.readHeader(fis);
                 entry.size = file.length();
+                // Response headers are read from the file whenever the entry is used.
+                entry.responseHeaders = null;
+                entry.lastAccess = mAccessCounter.incrementAndGet();
                 putEntry(entry.key, entry);
             } catch (IOException e) {
                 if (file != null) {
@@ -177,7 +353,7 @@ public class DiskBasedCache implements Cache {
      * @param fullExpire True to fully expire the entry, false to soft expire
      */
     @Override
-    public synchronized void invalidate(String key, boolean fullExpire) {
+    public void invalidate(String key, boolean fullExpire) {
         Entry entry = get(key);
         if (entry != null) {
             entry.softTtl = 0;
@@ -193,27 +369,54 @@ public class DiskBasedCache implements Cache {
      * Puts the entry with the specified key into the cache.
      */
     @Override
-    public synchronized void put(String key, Entry entry) {
-        pruneIfNeeded(entry.data.length);
+    public void put(String key, Entry entry) {
+        pruneIfNeeded(entry.getDataLength());
         File file = getFileForKey(key);
+        File tempFile = new File(mRootDirectory,
+                file.getName() + "." + mTempFileCounter.incrementAndGet() + TEMP_FILE_SUFFIX);
+        // The file is written before taking the lock, so that other keys of the stripe do
+        // not wait for the write.
+        CacheHeader e = new CacheHeader(key, entry);
         try {
-            BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(file));
-            CacheHeader e = new CacheHeader(key, entry);
+            FileOutputStream out = new FileOutputStream(tempFile);
+            BufferedOutputStream fos = new BufferedOutputStream(out);
             boolean success = e.writeHeader(fos);
             if (!success) {
                 fos.close();
                 VolleyLog.d("Failed to write header for %s", file.getAbsolutePath());
                 throw new IOException();
             }
-            fos.write(entry.data);
+            if (entry.data != null) {
+                fos.write(entry.data);
+            } else {
+                // Written straight from the mapped file of the entry being replaced.
+                fos.flush();
+                ByteBuffer dataBuffer = entry.dataBuffer.duplicate();
+                while (dataBuffer.hasRemaining()) {
+                    out.getChannel().write(dataBuffer);
+                }
+            }
             fos.close();
-            putEntry(key, e);
+            e.responseHeaders = null;
+            ReentrantLock lock = getLock(key);
+            lock.lock();
+            try {
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Unable to rename " + tempFile.getAbsolutePath());
+                }
+                e.lastAccess = mAccessCounter.incrementAndGet();
+                putEntry(key, e);
+                journalPut(e);
+            } finally {
+                lock.unlock();
+            }
             return;
-        } catch (IOException e) {
+        } catch (IOException ex) {
+            VolleyLog.d("Failed to write %s: %s", file.getAbsolutePath(), ex.toString());
         }
-        boolean deleted = file.delete();
+        boolean deleted = tempFile.delete();
         if (!deleted) {
-            VolleyLog.d("Could not clean up file %s", file.getAbsolutePath());
+            VolleyLog.d("Could not clean up file %s", tempFile.getAbsolutePath());
         }
     }
 
@@ -221,9 +424,23 @@ public class DiskBasedCache implements Cache {
      * Removes the specified key from the cache if it exists.
      */
     @Override
-    public synchronized void remove(String key) {
+    public void remove(String key) {
+        ReentrantLock lock = getLock(key);
+        lock.lock();
+        try {
+            removeLocked(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the specified key while holding the lock of its stripe.
+     */
+    private void removeLocked(String key) {
         boolean deleted = getFileForKey(key).delete();
         removeEntry(key);
+        journalRemove(key);
         if (!deleted) {
             VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
                     key, getFilenameForKey(key));
@@ -249,44 +466,83 @@ public class DiskBasedCache implements Cache {
         return new File(mRootDirectory, getFilenameForKey(key));
     }
 
+    /**
+     * Returns the lock of the stripe the given key belongs to.
+     */
+    private ReentrantLock getLock(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return mLocks[hash & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Locks all stripes, always in the same order, so that the whole cache can be modified.
+     */
+    private void lockAll() {
+        for (ReentrantLock lock : mLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = LOCK_STRIPES - 1; i >= 0; i--) {
+            mLocks[i].unlock();
+        }
+    }
+
+    /**
+     * Returns the entries ordered from the least to the most recently used one.
+     */
+    private List<CacheHeader> getEntriesInAccessOrder() {
+        List<CacheHeader> entries = new ArrayList<CacheHeader>(mEntries.values());
+        Collections.sort(entries, ACCESS_ORDER);
+        return entries;
+    }
+
     /**
      * Prunes the cache to fit the amount of bytes specified.
      * @param neededSpace The amount of bytes we are trying to fit into the cache.
      */
     private void pruneIfNeeded(int neededSpace) {
-        if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes) {
+        if ((mTotalSize.get() + neededSpace) < mMaxCacheSizeInBytes) {
             return;
         }
-        if (VolleyLog.DEBUG) {
-            VolleyLog.v("Pruning old cache entries.");
-        }
+        synchronized (mPruneLock) {
+            // Another thread may have pruned the cache while this one was waiting.
+            if ((mTotalSize.get() + neededSpace) < mMaxCacheSizeInBytes) {
+                return;
+            }
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("Pruning old cache entries.");
+            }
 
-        long before = mTotalSize;
-        int prunedFiles = 0;
-        long startTime = SystemClock.elapsedRealtime();
+            long before = mTotalSize.get();
+            int prunedFiles = 0;
+            long startTime = SystemClock.elapsedRealtime();
 
-        Iterator<Map.Entry<String, CacheHeader>> iterator = mEntries.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, CacheHeader> entry = iterator.next();
-            CacheHeader e = entry.getValue();
-            boolean deleted = getFileForKey(e.key).delete();
-            if (deleted) {
-                mTotalSize -= e.size;
-            } else {
-               VolleyLog.d("Could not delete cache entry for key=%s, filename=%s",
-                       e.key, getFilenameForKey(e.key));
-            }
-            iterator.remove();
-            prunedFiles++;
+            for (CacheHeader e : getEntriesInAccessOrder()) {
+                ReentrantLock lock = getLock(e.key);
+                lock.lock();
+                try {
+                    // Skip entries which have been replaced or removed meanwhile.
+                    if (mEntries.get(e.key) != e) {
+                        continue;
+                    }
+                    removeLocked(e.key);
+                } finally {
+                    lock.unlock();
+                }
+                prunedFiles++;
 
-            if ((mTotalSize + neededSpace) < mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
-                break;
+                if ((mTotalSize.get() + neededSpace) < mMaxCacheSizeInBytes * HYSTERESIS_FACTOR) {
+                    break;
+                }
             }
-        }
 
-        if (VolleyLog.DEBUG) {
-            VolleyLog.v("pruned %d files, %d bytes, %d ms",
-                    prunedFiles, (mTotalSize - before), SystemClock.elapsedRealtime() - startTime);
+            if (VolleyLog.DEBUG) {
+                VolleyLog.v("pruned %d files, %d bytes, %d ms", prunedFiles,
+                        (mTotalSize.get() - before), SystemClock.elapsedRealtime() - startTime);
+            }
         }
     }
 
@@ -296,30 +552,239 @@ public class DiskBasedCache implements Cache {
      * @param entry The entry to cache.
      */
     private void putEntry(String key, CacheHeader entry) {
-        if (!mEntries.containsKey(key)) {
-            mTotalSize += entry.size;
+        CacheHeader oldEntry = mEntries.put(key, entry);
+        if (oldEntry == null) {
+            mTotalSize.addAndGet(entry.size);
         } else {
-            CacheHeader oldEntry = mEntries.get(key);
-            mTotalSize += (entry.size - oldEntry.size);
+            mTotalSize.addAndGet(entry.size - oldEntry.size);
         }
-        mEntries.put(key, entry);
     }
 
     /**
      * Removes the entry identified by 'key' from the cache.
      */
     private void removeEntry(String key) {
-        CacheHeader entry = mEntries.get(key);
+        CacheHeader entry = mEntries.remove(key);
         if (entry != null) {
-            mTotalSize -= entry.size;
-            mEntries.remove(key);
+            mTotalSize.addAndGet(-entry.size);
+        }
+    }
+
+    /**
+     * Replays the records of the journal.
+     * @param journal The journal file.
+     * @return False if the last record is incomplete, which happens if the process died
+     * while the record was written.
+     * @throws IOException If the journal cannot be read or is not valid, e.g. if a record is
+     * longer than the rest of the journal.
+     */
+    private boolean readJournal(File journal) throws IOException {
+        CountingInputStream is = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(journal)), journal.length());
+        try {
+            if (readInt(is) != JOURNAL_MAGIC) {
+                throw new IOException("Unexpected journal format");
+            }
+            mJournalRecords = 0;
+            int record;
+            while ((record = is.read()) != -1) {
+                try {
+                    if (record == JOURNAL_PUT) {
+                        CacheHeader entry = CacheHeader.readIndex(is);
+                        // Records are in the order the entries were written.
+                        entry.lastAccess = mAccessCounter.incrementAndGet();
+                        putEntry(entry.key, entry);
+                    } else if (record == JOURNAL_REMOVE) {
+                        removeEntry(readString(is));
+                    } else {
+                        throw new IOException("Unexpected journal record " + record);
+                    }
+                } catch (EOFException e) {
+                    return false;
+                }
+                mJournalRecords++;
+            }
+            return true;
+        } finally {
+            is.close();
         }
     }
 
+    /**
+     * Opens the journal for appending records.
+     */
+    private void openJournal() {
+        try {
+            mJournalWriter = new BufferedOutputStream(
+                    new FileOutputStream(new File(mRootDirectory, JOURNAL_FILE), true));
+        } catch (IOException e) {
+            VolleyLog.e("Unable to open cache journal: %s", e.toString());
+            mJournalWriter = null;
+        }
+    }
+
+    private void closeJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException ignored) { }
+            mJournalWriter = null;
+        }
+    }
+
+    /**
+     * Writes a new journal holding a single record per entry, in access order, and replaces
+     * the current journal with it. If the journal cannot be written, it is deleted so that
+     * the directory is scanned on the next initialization. Must be called holding the
+     * journal lock.
+     */
+    private void rebuildJournal() {
+        closeJournal();
+        File journal = new File(mRootDirectory, JOURNAL_FILE);
+        File temp = new File(mRootDirectory, JOURNAL_FILE_TEMP);
+        OutputStream os = null;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(temp));
+            writeInt(os, JOURNAL_MAGIC);
+            List<CacheHeader> entries = getEntriesInAccessOrder();
+            for (CacheHeader entry : entries) {
+                os.write(JOURNAL_PUT);
+                entry.writeIndex(os);
+            }
+            os.close();
+            os = null;
+            if (!temp.renameTo(journal)) {
+                throw new IOException("Unable to rename " + temp.getAbsolutePath());
+            }
+            mJournalRecords = entries.size();
+            openJournal();
+        } catch (IOException e) {
+            VolleyLog.e("Unable to write cache journal: %s", e.toString());
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException ignored) { }
+            }
+            temp.delete();
+            journal.delete();
+        }
+    }
+
+    private void journalPut(CacheHeader entry) {
+        synchronized (mJournalLock) {
+            if (mJournalWriter == null) {
+                return;
+            }
+            try {
+                mJournalWriter.write(JOURNAL_PUT);
+                entry.writeIndex(mJournalWriter);
+                mJournalWriter.flush();
+            } catch (IOException e) {
+                onJournalError(e);
+                return;
+            }
+            onJournalRecordAdded();
+        }
+    }
+
+    private void journalRemove(String key) {
+        synchronized (mJournalLock) {
+            if (mJournalWriter == null) {
+                return;
+            }
+            try {
+                mJournalWriter.write(JOURNAL_REMOVE);
+                writeString(mJournalWriter, key);
+                mJournalWriter.flush();
+            } catch (IOException e) {
+                onJournalError(e);
+                return;
+            }
+            onJournalRecordAdded();
+        }
+    }
+
+    private void onJournalRecordAdded() {
+        mJournalRecords++;
+        if (isCompactionNeeded()) {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * A record may have been written partially, hence the journal is rebuilt from the
+     * entries in memory.
+     */
+    private void onJournalError(IOException e) {
+        VolleyLog.e("Unable to append to cache journal: %s", e.toString());
+        closeJournal();
+        scheduleCompaction();
+    }
+
+    private boolean isCompactionNeeded() {
+        return mJournalRecords >= JOURNAL_COMPACTION_THRESHOLD
+                && mJournalRecords >= 2 * mEntries.size();
+    }
+
+    private void scheduleCompaction() {
+        if (mCompactionScheduled) {
+            return;
+        }
+        mCompactionScheduled = true;
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Writers are held off while the journal is rewritten, readers are not.
+                lockAll();
+                try {
+                    synchronized (mJournalLock) {
+                        mCompactionScheduled = false;
+                        rebuildJournal();
+                        deleteUnindexedFiles();
+                    }
+                } finally {
+                    unlockAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes files which are not part of the index, which are left behind if the process
+     * died after writing a file but before recording it in the journal. Must be called
+     * holding all locks, so that no file is being renamed into place. Temporary files are
+     * skipped, since puts write them before taking a lock.
+     */
+    private void deleteUnindexedFiles() {
+        File[] files = mRootDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> indexed = new HashSet<String>(mEntries.size());
+        for (String key : mEntries.keySet()) {
+            indexed.add(getFilenameForKey(key));
+        }
+        for (File file : files) {
+            if (!isJournalFile(file) && !file.getName().endsWith(TEMP_FILE_SUFFIX)
+                    && !indexed.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private static boolean isJournalFile(File file) {
+        return JOURNAL_FILE.equals(file.getName()) || JOURNAL_FILE_TEMP.equals(file.getName());
+    }
+
     /**
      * Reads the contents of an InputStream into a byte[].
      * */
     private static byte[] streamToBytes(InputStream in, int length) throws IOException {
+        // A length read from a corrupt file must not be allocated before it is found to be wrong.
+        if (length < 0 || (in instanceof CountingInputStream
+                && length > ((CountingInputStream) in).bytesRemaining())) {
+            throw new IOException("Invalid length " + length);
+        }
         byte[] bytes = new byte[length];
         int count;
         int pos = 0;
@@ -362,6 +827,10 @@ public class DiskBasedCache implements Cache {
         /** Headers from the response resulting in this cache entry. */
         public Map<String, String> responseHeaders;
 
+        /** Sequence number of the last access to this record, used for pruning. (This is
+         * not serialized to disk.) */
+        public volatile long lastAccess;
+
         private CacheHeader() { }
 
         /**
@@ -371,7 +840,7 @@ public class DiskBasedCache implements Cache {
          */
         public CacheHeader(String key, Entry entry) {
             this.key = key;
-            this.size = entry.data.length;
+            this.size = entry.getDataLength();
             this.etag = entry.etag;
             this.serverDate = entry.serverDate;
             this.lastModified = entry.lastModified;
@@ -406,12 +875,55 @@ public class DiskBasedCache implements Cache {
             return entry;
         }
 
+        /**
+         * Reads the journal record of an entry off of an InputStream.
+         * @param is The InputStream to read from.
+         * @throws IOException
+         */
+        static CacheHeader readIndex(InputStream is) throws IOException {
+            CacheHeader entry = new CacheHeader();
+            entry.key = readString(is);
+            entry.size = readLong(is);
+            entry.etag = readString(is);
+            if (entry.etag.equals("")) {
+                entry.etag = null;
+            }
+            entry.serverDate = readLong(is);
+            entry.lastModified = readLong(is);
+            entry.ttl = readLong(is);
+            entry.softTtl = readLong(is);
+            return entry;
+        }
+
+        /**
+         * Writes the journal record of this entry, which leaves out the response headers,
+         * to the specified OutputStream.
+         */
+        void writeIndex(OutputStream os) throws IOException {
+            writeString(os, key);
+            writeLong(os, size);
+            writeString(os, etag == null ? "" : etag);
+            writeLong(os, serverDate);
+            writeLong(os, lastModified);
+            writeLong(os, ttl);
+            writeLong(os, softTtl);
+        }
+
         /**
          * Creates a cache entry for the specified data.
          */
         public Entry toCacheEntry(byte[] data) {
+            return toCacheEntry(data, null);
+        }
+
+        /**
+         * Creates a cache entry for the specified data, which is either held in an array or
+         * in a read-only buffer.
+         */
+        Entry toCacheEntry(byte[] data, ByteBuffer dataBuffer) {
             Entry e = new Entry();
             e.data = data;
+            e.dataBuffer = dataBuffer;
             e.etag = etag;
             e.serverDate = serverDate;
             e.lastModified = lastModified;
@@ -446,10 +958,16 @@ public class DiskBasedCache implements Cache {
     }
 
     private static class CountingInputStream extends FilterInputStream {
+        private final long length;
         private int bytesRead = 0;
 
-        private CountingInputStream(InputStream in) {
+        private CountingInputStream(InputStream in, long length) {
             super(in);
+            this.length = length;
+        }
+
+        private long bytesRemaining() {
+            return length - bytesRead;
         }
 
         @Override
@@ -537,8 +1055,11 @@ public class DiskBasedCache implements Cache {
     }
 
     static String readString(InputStream is) throws IOException {
-        int n = (int) readLong(is);
-        byte[] b = streamToBytes(is, n);
+        long n = readLong(is);
+        if (n < 0 || n > Integer.MAX_VALUE) {
+            throw new IOException("Invalid string length " + n);
+        }
+        byte[] b = streamToBytes(is, (int) n);
         return new String(b, "UTF-8");
     }
 
@@ -556,6 +1077,10 @@ public class DiskBasedCache implements Cache {
 
     static Map<String, String> readStringStringMap(InputStream is) throws IOException {
         int size = readInt(is);
+        if (size < 0 || (is instanceof CountingInputStream
+                && size > ((CountingInputStream) is).bytesRemaining())) {
+            throw new IOException("Invalid map size " + size);
+        }
         Map<String, String> result = (size == 0)
                 ? Collections.<String, String>emptyMap()
                 : new HashMap<String, String>(size);
@@ -23,6 +23,10 @@ import org.apache.http.impl.cookie.DateParseException;
 import org.apache.http.impl.cookie.DateUtils;
 import org.apache.http.protocol.HTTP;
 
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.Map;
 
 /**
@@ -110,6 +114,7 @@ public class HttpHeaderParser {
 
         Cache.Entry entry = new Cache.Entry();
         entry.data = response.data;
+        entry.dataBuffer = response.dataBuffer;
         entry.etag = serverEtag;
         entry.softTtl = softExpire;
         entry.ttl = finalExpire;
@@ -158,6 +163,29 @@ public class HttpHeaderParser {
         return defaultCharset;
     }
 
+    /**
+     * Decodes the body of a response, directly from its buffer if it has been read from a
+     * memory-mapped cache entry.
+     *
+     * @param response The network response to decode
+     * @param charset Name of the charset to decode the body with
+     * @return The body of the response as a String
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public static String parseString(NetworkResponse response, String charset)
+            throws UnsupportedEncodingException {
+        if (response.data != null) {
+            return new String(response.data, charset);
+        }
+        try {
+            return Charset.forName(charset).decode(response.getDataBuffer()).toString();
+        } catch (IllegalCharsetNameException e) {
+            throw new UnsupportedEncodingException(charset);
+        } catch (UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(charset);
+        }
+    }
+
     /**
      * Returns the charset specified in the Content-Type of this header,
      * or the HTTP default (ISO-8859-1) if none can be found.
@@ -19,6 +19,7 @@ package com.android.volley.toolbox;
 import com.android.volley.AuthFailureError;
 import com.android.volley.Request;
 import com.android.volley.Request.Method;
+import com.android.volley.VolleyLog;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -31,25 +32,61 @@ import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 
 /**
  * An {@link HttpStack} based on {@link HttpURLConnection}.
+ * <p>
+ * Responses are requested with gzip or deflate content coding, unless the request sets its own
+ * Accept-Encoding header, and are decompressed while they are read. Request bodies are gzip
+ * compressed if the request opts in with {@link Request#setShouldCompressBody(boolean)}. The
+ * number of bytes sent and received, both on the wire and uncompressed, is added to the
+ * marker log of the request.
+ * <p>
+ * Connections are kept alive and pooled by {@link HttpURLConnection} once a response has been
+ * read to its end, and are pooled separately for each SSL socket factory and hostname verifier.
+ * A single stack shared by all the requests to a server, with one factory and verifier, therefore
+ * lets concurrent requests reuse warm connections and TLS sessions instead of connecting anew.
+ * Unread bytes of a response are drained when it is closed, up to a limit, for the same reason.
  */
 public class HurlStack implements HttpStack {
 
     private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    /** Bodies smaller than this are not worth compressing. */
+    private static final int MIN_COMPRESSED_BODY_SIZE = 512;
+
+    /**
+     * Maximum number of unread bytes drained from a closed response to keep its connection alive.
+     * Connections with more left over are closed instead.
+     */
+    private static final int MAX_DRAIN_BYTES = 8 * 1024;
+
+    /** Whether request markers are recorded, as markers are only formatted if they are. */
+    private static final boolean MARKERS_ENABLED = VolleyLog.DEBUG;
 
     /**
      * An interface for transforming URLs before use.
@@ -64,6 +101,7 @@ public class HurlStack implements HttpStack {
 
     private final UrlRewriter mUrlRewriter;
     private final SSLSocketFactory mSslSocketFactory;
+    private final HostnameVerifier mHostnameVerifier;
 
     public HurlStack() {
         this(null);
@@ -81,17 +119,33 @@ public class HurlStack implements HttpStack {
      * @param sslSocketFactory SSL factory to use for HTTPS connections
      */
     public HurlStack(UrlRewriter urlRewriter, SSLSocketFactory sslSocketFactory) {
+        this(urlRewriter, sslSocketFactory, null);
+    }
+
+    /**
+     * @param urlRewriter Rewriter to use for request URLs
+     * @param sslSocketFactory SSL factory to use for HTTPS connections
+     * @param hostnameVerifier Verifier to use for HTTPS connections, or null for the default
+     */
+    public HurlStack(UrlRewriter urlRewriter, SSLSocketFactory sslSocketFactory,
+            HostnameVerifier hostnameVerifier) {
         mUrlRewriter = urlRewriter;
         mSslSocketFactory = sslSocketFactory;
+        mHostnameVerifier = hostnameVerifier;
     }
 
     @Override
     public HttpResponse performRequest(Request<?> request, Map<String, String> additionalHeaders)
             throws IOException, AuthFailureError {
         String url = request.getUrl();
-        HashMap<String, String> map = new HashMap<String, String>();
+        Map<String, String> map = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
         map.putAll(request.getHeaders());
         map.putAll(additionalHeaders);
+        if (!map.containsKey(HEADER_ACCEPT_ENCODING)) {
+            // Setting the header disables the transparent gzip support of HttpURLConnection,
+            // so that the compressed bytes can be counted and deflate can be accepted as well.
+            map.put(HEADER_ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+        }
         if (mUrlRewriter != null) {
             String rewritten = mUrlRewriter.rewriteUrl(url);
             if (rewritten == null) {
@@ -117,7 +171,7 @@ public class HurlStack implements HttpStack {
                 connection.getResponseCode(), connection.getResponseMessage());
         BasicHttpResponse response = new BasicHttpResponse(responseStatus);
         if (hasResponseBody(request.getMethod(), responseStatus.getStatusCode())) {
-            response.setEntity(entityFromConnection(connection));
+            response.setEntity(entityFromConnection(connection, request));
         }
         for (Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
             if (header.getKey() != null) {
@@ -145,9 +199,11 @@ public class HurlStack implements HttpStack {
     /**
      * Initializes an {@link HttpEntity} from the given {@link HttpURLConnection}.
      * @param connection
+     * @param request the request whose marker log receives the response size
      * @return an HttpEntity populated with data from <code>connection</code>.
      */
-    private static HttpEntity entityFromConnection(HttpURLConnection connection) {
+    private static HttpEntity entityFromConnection(HttpURLConnection connection,
+            Request<?> request) throws IOException {
         BasicHttpEntity entity = new BasicHttpEntity();
         InputStream inputStream;
         try {
@@ -155,9 +211,24 @@ public class HurlStack implements HttpStack {
         } catch (IOException ioe) {
             inputStream = connection.getErrorStream();
         }
+        String encoding = connection.getContentEncoding();
+        boolean decompressed = false;
+        if (inputStream != null && connection.getContentLength() != 0) {
+            CountingInputStream wire = new CountingInputStream(inputStream, null, null);
+            if (ENCODING_GZIP.equalsIgnoreCase(encoding)) {
+                inputStream = new CountingInputStream(new LazyGzipInputStream(wire), wire, request);
+                decompressed = true;
+            } else if (ENCODING_DEFLATE.equalsIgnoreCase(encoding)) {
+                inputStream = new CountingInputStream(new InflaterInputStream(wire), wire, request);
+                decompressed = true;
+            } else {
+                inputStream = new CountingInputStream(wire, wire, request);
+            }
+        }
         entity.setContent(inputStream);
-        entity.setContentLength(connection.getContentLength());
-        entity.setContentEncoding(connection.getContentEncoding());
+        // The length of a decompressed body is not known in advance.
+        entity.setContentLength(decompressed ? -1 : connection.getContentLength());
+        entity.setContentEncoding(decompressed ? null : encoding);
         entity.setContentType(connection.getContentType());
         return entity;
     }
@@ -191,10 +262,13 @@ public class HurlStack implements HttpStack {
         connection.setUseCaches(false);
         connection.setDoInput(true);
 
-        // use caller-provided custom SslSocketFactory, if any, for HTTPS
+        // use caller-provided custom SslSocketFactory and HostnameVerifier, if any, for HTTPS
         if ("https".equals(url.getProtocol()) && mSslSocketFactory != null) {
             ((HttpsURLConnection)connection).setSSLSocketFactory(mSslSocketFactory);
         }
+        if ("https".equals(url.getProtocol()) && mHostnameVerifier != null) {
+            ((HttpsURLConnection)connection).setHostnameVerifier(mHostnameVerifier);
+        }
 
         return connection;
     }
@@ -261,9 +335,156 @@ public class HurlStack implements HttpStack {
         if (body != null) {
             connection.setDoOutput(true);
             connection.addRequestProperty(HEADER_CONTENT_TYPE, request.getBodyContentType());
+            byte[] wireBody = body;
+            if (request.shouldCompressBody() && body.length >= MIN_COMPRESSED_BODY_SIZE) {
+                byte[] compressed = gzip(body);
+                // Incompressible bodies are sent as they are.
+                if (compressed.length < body.length) {
+                    connection.addRequestProperty(HEADER_CONTENT_ENCODING, ENCODING_GZIP);
+                    wireBody = compressed;
+                }
+            }
             DataOutputStream out = new DataOutputStream(connection.getOutputStream());
-            out.write(body);
+            out.write(wireBody);
             out.close();
+            if (MARKERS_ENABLED) {
+                request.addMarker(String.format("network-body-sent [wire=%d, uncompressed=%d]",
+                        wireBody.length, body.length));
+            }
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Counts the bytes read from a stream. The outermost stream of a response adds the count
+     * of the wire stream and its own to the marker log of the request once it is closed, and
+     * drains the wire stream so that the connection can be reused. A decompressing stream stops
+     * at the end of the compressed data, which is not necessarily the end of the wire stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final CountingInputStream mWire;
+        private final Request<?> mRequest;
+        private long mCount;
+        private boolean mClosed;
+
+        CountingInputStream(InputStream in, CountingInputStream wire, Request<?> request) {
+            super(in);
+            mWire = wire;
+            mRequest = request;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mCount += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!mClosed && mRequest != null) {
+                mClosed = true;
+                mWire.drain();
+                if (MARKERS_ENABLED) {
+                    mRequest.addMarker(String.format(
+                            "network-body-received [wire=%d, uncompressed=%d]",
+                            mWire.mCount, mCount));
+                }
+            }
+            super.close();
+        }
+
+        /**
+         * Reads and discards the rest of the stream, unless more than {@link #MAX_DRAIN_BYTES}
+         * are left.
+         */
+        private void drain() {
+            byte[] buffer = new byte[1024];
+            int drained = 0;
+            try {
+                int count;
+                while (drained <= MAX_DRAIN_BYTES && (count = read(buffer)) != -1) {
+                    drained += count;
+                }
+            } catch (IOException e) {
+                // The connection is closed rather than reused.
+            }
+        }
+    }
+
+    /**
+     * A {@link GZIPInputStream} created on the first read. The gzip header is read when the
+     * stream is constructed, so creating it up front would block until the first chunk of the
+     * body arrives, and would fail with an EOFException on an empty body, which is read as
+     * empty instead.
+     */
+    private static class LazyGzipInputStream extends InputStream {
+        private final PushbackInputStream mWire;
+        private InputStream mDecompressed;
+
+        LazyGzipInputStream(InputStream wire) {
+            mWire = new PushbackInputStream(wire);
+        }
+
+        private InputStream decompressed() throws IOException {
+            if (mDecompressed == null) {
+                int first = mWire.read();
+                if (first == -1) {
+                    mDecompressed = new ByteArrayInputStream(new byte[0]);
+                } else {
+                    mWire.unread(first);
+                    mDecompressed = new GZIPInputStream(mWire);
+                }
+            }
+            return mDecompressed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decompressed().read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            return decompressed().read(buffer, offset, count);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mDecompressed == null ? 0 : mDecompressed.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            mWire.close();
         }
     }
 }
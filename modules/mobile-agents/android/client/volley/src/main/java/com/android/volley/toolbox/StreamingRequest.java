@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A request whose successful response body is parsed straight from the network stream, instead
+ * of being read into memory first. This allows large bodies, such as downloads written to disk or
+ * documents parsed incrementally, to be handled in bounded memory.
+ * <p>
+ * The stream is read on the network dispatcher thread while the connection is open, so the
+ * server can only send as fast as {@link #parseStream} consumes the body. Reads fail once the
+ * request is cancelled, which stops the transfer.
+ * <p>
+ * Streamed responses are not cached, and error responses are still read into memory, so that
+ * they can be handed to {@link #parseNetworkError}. When performed by a
+ * {@link com.android.volley.Network} that does not support streaming, the body is parsed from
+ * the buffered response data instead.
+ *
+ * @param <T> The type of parsed response this request expects.
+ */
+public abstract class StreamingRequest<T> extends Request<T> {
+
+    /** The result of the last streamed response, delivered by parseNetworkResponse. */
+    private T mStreamedResult;
+    private boolean mStreamed;
+
+    /**
+     * Creates a new streaming request with the given method.
+     *
+     * @param method the request {@link Method} to use
+     * @param url URL to fetch the response from
+     * @param errorListener Error listener, or null to ignore errors
+     */
+    public StreamingRequest(int method, String url, Response.ErrorListener errorListener) {
+        super(method, url, errorListener);
+        setShouldCache(false);
+    }
+
+    /**
+     * Parses the body of a successful response. Called on the network dispatcher thread, and
+     * called again with a new stream if the request is retried after a failed read.
+     *
+     * @param response the status code and headers of the response; its data is empty
+     * @param in the response body, which is closed by the caller
+     * @return the parsed result, which is delivered to the listener
+     * @throws IOException if the body cannot be read
+     * @throws VolleyError if the body cannot be parsed
+     */
+    protected abstract T parseStream(NetworkResponse response, InputStream in)
+            throws IOException, VolleyError;
+
+    /**
+     * Reads the body of a successful response from the network.
+     */
+    void readStream(NetworkResponse response, InputStream in) throws IOException, VolleyError {
+        mStreamedResult = parseStream(response, new CancellableInputStream(in));
+        mStreamed = true;
+    }
+
+    @Override
+    protected final Response<T> parseNetworkResponse(NetworkResponse response) {
+        if (mStreamed) {
+            mStreamed = false;
+            T result = mStreamedResult;
+            mStreamedResult = null;
+            return Response.success(result, null);
+        }
+        try {
+            byte[] data = response.data != null ? response.data : new byte[0];
+            return Response.success(parseStream(response, new ByteArrayInputStream(data)), null);
+        } catch (IOException e) {
+            return Response.error(new ParseError(e));
+        } catch (VolleyError e) {
+            return Response.error(e);
+        }
+    }
+
+    /**
+     * Fails reads once the request is cancelled.
+     */
+    private class CancellableInputStream extends FilterInputStream {
+
+        CancellableInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCanceled();
+            return super.read();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            checkCanceled();
+            return super.read(buffer, offset, count);
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            checkCanceled();
+            return super.skip(count);
+        }
+
+        private void checkCanceled() throws IOException {
+            if (isCanceled()) {
+                throw new IOException("Request cancelled");
+            }
+        }
+    }
+}
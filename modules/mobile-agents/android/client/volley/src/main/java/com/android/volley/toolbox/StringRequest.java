@@ -23,6 +23,7 @@ import com.android.volley.Response.ErrorListener;
 import com.android.volley.Response.Listener;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 
 /**
  * A canned request for retrieving the response body at a given URL as a String.
@@ -64,9 +65,11 @@ public class StringRequest extends Request<String> {
     protected Response<String> parseNetworkResponse(NetworkResponse response) {
         String parsed;
         try {
-            parsed = new String(response.data, HttpHeaderParser.parseCharset(response.headers));
+            parsed = HttpHeaderParser.parseString(response,
+                    HttpHeaderParser.parseCharset(response.headers));
         } catch (UnsupportedEncodingException e) {
-            parsed = new String(response.data);
+            parsed = response.data != null ? new String(response.data)
+                    : Charset.defaultCharset().decode(response.getDataBuffer()).toString();
         }
         return Response.success(parsed, HttpHeaderParser.parseCacheHeaders(response));
     }
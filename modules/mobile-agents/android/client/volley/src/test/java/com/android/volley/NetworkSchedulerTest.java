@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import android.os.SystemClock;
+
+import com.android.volley.mock.MockCache;
+import com.android.volley.mock.MockNetwork;
+import com.android.volley.mock.MockRequest;
+import com.android.volley.mock.MockResponseDelivery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class NetworkSchedulerTest {
+
+    private MockResponseDelivery mDelivery;
+    private NetworkScheduler mScheduler;
+    private int mSequence;
+
+    @Before public void setUp() throws Exception {
+        mDelivery = new MockResponseDelivery();
+        mScheduler = new NetworkScheduler(new MockNetwork(), new MockCache(), mDelivery, 0, 2, 1);
+    }
+
+    private MockRequest queue(String url, final Request.Priority priority) {
+        MockRequest request = new MockRequest(url, null) {
+            @Override
+            public Priority getPriority() {
+                return priority;
+            }
+        };
+        request.setSequence(mSequence++);
+        mScheduler.getQueue().add(request);
+        return request;
+    }
+
+    @Test public void hostLimitHoldsBackRequests() throws Exception {
+        MockRequest first = queue("http://a.com/1", Request.Priority.NORMAL);
+        MockRequest second = queue("http://a.com/2", Request.Priority.NORMAL);
+        MockRequest other = queue("http://b.com/1", Request.Priority.NORMAL);
+
+        assertSame(first, mScheduler.take(null));
+        // The second request to a.com is held back until the first one has finished.
+        assertSame(other, mScheduler.take(null));
+        assertTrue(mScheduler.getQueue().isEmpty());
+
+        mScheduler.finished(first);
+        assertSame(second, mScheduler.take(null));
+    }
+
+    @Test public void immediateRequestsIgnoreHostLimit() throws Exception {
+        MockRequest first = queue("http://a.com/1", Request.Priority.NORMAL);
+        assertSame(first, mScheduler.take(null));
+
+        MockRequest urgent = queue("http://a.com/lock", Request.Priority.IMMEDIATE);
+        assertSame(urgent, mScheduler.take(null));
+    }
+
+    @Test public void longLivedRequestsIgnoreHostLimit() throws Exception {
+        MockRequest poll = queue("http://a.com/poll", Request.Priority.NORMAL);
+        poll.setLongLived(true);
+        assertSame(poll, mScheduler.take(null));
+
+        // The long poll does not take the only slot of a.com.
+        MockRequest first = queue("http://a.com/1", Request.Priority.NORMAL);
+        assertSame(first, mScheduler.take(null));
+    }
+
+    @Test public void expiredRequestIsDemoted() throws Exception {
+        MockRequest expired = queue("http://a.com/1", Request.Priority.HIGH);
+        mScheduler.getQueue().remove(expired);
+        expired.setDeadline(SystemClock.elapsedRealtime() + 1);
+        mScheduler.getQueue().add(expired);
+        MockRequest low = queue("http://b.com/1", Request.Priority.LOW);
+        SystemClock.sleep(10);
+
+        assertSame(low, mScheduler.take(null));
+        assertTrue(expired.isDemoted());
+        assertSame(expired, mScheduler.take(null));
+    }
+
+    @Test public void expiredRequestIsDropped() throws Exception {
+        MockRequest expired = queue("http://a.com/1", Request.Priority.NORMAL);
+        mScheduler.getQueue().remove(expired);
+        expired.setDeadline(SystemClock.elapsedRealtime() + 1);
+        expired.setShouldDropAfterDeadline(true);
+        mScheduler.getQueue().add(expired);
+        MockRequest other = queue("http://b.com/1", Request.Priority.NORMAL);
+        SystemClock.sleep(10);
+
+        assertSame(other, mScheduler.take(null));
+        assertTrue(mDelivery.postError_called);
+    }
+
+    @Test public void expiredHeldRequestDoesNotHoldBackOthers() throws Exception {
+        MockRequest first = queue("http://a.com/1", Request.Priority.NORMAL);
+        assertSame(first, mScheduler.take(null));
+        MockRequest expiring = queue("http://a.com/2", Request.Priority.HIGH);
+        mScheduler.getQueue().remove(expiring);
+        expiring.setDeadline(SystemClock.elapsedRealtime() + 1);
+        expiring.setShouldDropAfterDeadline(true);
+        mScheduler.getQueue().add(expiring);
+        MockRequest second = queue("http://a.com/3", Request.Priority.NORMAL);
+        MockRequest other = queue("http://b.com/1", Request.Priority.LOW);
+
+        // Both requests to a.com are held back behind the first one.
+        assertSame(other, mScheduler.take(null));
+        SystemClock.sleep(10);
+
+        mScheduler.finished(first);
+        assertTrue(mDelivery.postError_called);
+        assertSame(second, mScheduler.take(null));
+    }
+
+    @Test public void expiredRequestIsDroppedBeforeReachingHead() throws Exception {
+        MockRequest first = queue("http://a.com/1", Request.Priority.HIGH);
+        MockRequest expiring = queue("http://b.com/1", Request.Priority.LOW);
+        mScheduler.getQueue().remove(expiring);
+        expiring.setDeadline(SystemClock.elapsedRealtime() + 1);
+        expiring.setShouldDropAfterDeadline(true);
+        mScheduler.getQueue().add(expiring);
+        SystemClock.sleep(2000);
+
+        assertSame(first, mScheduler.take(null));
+        assertTrue(mDelivery.postError_called);
+        assertTrue(mScheduler.getQueue().isEmpty());
+    }
+
+    @Test public void dispatchersGrowWithQueue() throws Exception {
+        assertEquals(0, mScheduler.getDispatcherCount());
+        mScheduler.start();
+        assertEquals(0, mScheduler.getDispatcherCount());
+
+        queue("http://a.com/1", Request.Priority.NORMAL);
+        assertEquals(1, mScheduler.getDispatcherCount());
+        mScheduler.stop();
+        assertEquals(0, mScheduler.getDispatcherCount());
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.volley.toolbox.StringRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+@RunWith(RobolectricTestRunner.class)
+public class RequestBatcherTest {
+
+    private static final String BATCH_URL = "http://foo/batch";
+
+    @Mock private RequestQueue mMockQueue;
+    private RequestBatcher mBatcher;
+    private List<String> mResults;
+    private List<VolleyError> mErrors;
+
+    /**
+     * Batches requests to /events, joining their bodies and splitting responses with commas.
+     */
+    private static class CommaBatchAdapter implements RequestBatcher.BatchAdapter {
+        @Override
+        public String getBatchKey(Request<?> request) {
+            return request.getUrl().endsWith("/events") ? "events" : null;
+        }
+
+        @Override
+        public String getBatchUrl(String batchKey, List<Request<?>> requests) {
+            return BATCH_URL;
+        }
+
+        @Override
+        public byte[] getBatchBody(List<Request<?>> requests) throws AuthFailureError {
+            StringBuilder body = new StringBuilder();
+            for (Request<?> request : requests) {
+                if (body.length() > 0) {
+                    body.append(',');
+                }
+                body.append(new String(request.getBody()));
+            }
+            return body.toString().getBytes();
+        }
+
+        @Override
+        public List<NetworkResponse> splitResponse(NetworkResponse response,
+                List<Request<?>> requests) throws VolleyError {
+            List<NetworkResponse> parts = new ArrayList<NetworkResponse>();
+            for (String part : new String(response.data).split(",")) {
+                parts.add(new NetworkResponse(part.getBytes()));
+            }
+            return parts;
+        }
+    }
+
+    @Before public void setUp() throws Exception {
+        initMocks(this);
+        mBatcher = new RequestBatcher(mMockQueue, new CommaBatchAdapter(), 1000, 3,
+                new Handler(Looper.getMainLooper()));
+        mResults = new ArrayList<String>();
+        mErrors = new ArrayList<VolleyError>();
+    }
+
+    private Request<String> buildRequest(String url, final String body) {
+        return new StringRequest(Request.Method.POST, url, new Response.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                mResults.add(response);
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                mErrors.add(error);
+            }
+        }) {
+            @Override
+            public byte[] getBody() {
+                return body.getBytes();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Request<List<Response<?>>> captureBatch() {
+        ArgumentCaptor<Request> captor = ArgumentCaptor.forClass(Request.class);
+        verify(mMockQueue).add(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test public void unbatchableRequestIsAddedToQueue() throws Exception {
+        Request<String> request = buildRequest("http://foo/device", "a");
+        mBatcher.add(request);
+        verify(mMockQueue).add(request);
+    }
+
+    @Test public void fullBatchIsSentAsOneRequest() throws Exception {
+        mBatcher.add(buildRequest("http://foo/events", "a"));
+        mBatcher.add(buildRequest("http://foo/events", "b"));
+        verify(mMockQueue, never()).add(any(Request.class));
+        mBatcher.add(buildRequest("http://foo/events", "c"));
+
+        Request<List<Response<?>>> batch = captureBatch();
+        assertEquals(BATCH_URL, batch.getUrl());
+        assertEquals("a,b,c", new String(batch.getBody()));
+        assertFalse(batch.shouldCache());
+
+        Response<List<Response<?>>> response =
+                batch.parseNetworkResponse(new NetworkResponse("1,2,3".getBytes()));
+        batch.deliverResponse(response.result);
+        assertEquals(3, mResults.size());
+        assertEquals("1", mResults.get(0));
+        assertEquals("2", mResults.get(1));
+        assertEquals("3", mResults.get(2));
+    }
+
+    @Test public void singleRequestIsSentUnchangedAfterWindow() throws Exception {
+        Request<String> request = buildRequest("http://foo/events", "a");
+        mBatcher.add(request);
+        verify(mMockQueue, never()).add(any(Request.class));
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        verify(mMockQueue).add(request);
+    }
+
+    @Test public void cancelledRequestsAreLeftOut() throws Exception {
+        Request<String> cancelled = buildRequest("http://foo/events", "a");
+        mBatcher.add(cancelled);
+        Request<String> request = buildRequest("http://foo/events", "b");
+        mBatcher.add(request);
+        cancelled.cancel();
+
+        mBatcher.flushAll();
+        verify(mMockQueue).add(request);
+    }
+
+    @Test public void batchErrorIsDeliveredToEveryRequest() throws Exception {
+        mBatcher.add(buildRequest("http://foo/events", "a"));
+        mBatcher.add(buildRequest("http://foo/events", "b"));
+        mBatcher.flushAll();
+
+        Request<List<Response<?>>> batch = captureBatch();
+        batch.deliverError(new ServerError());
+        assertEquals(2, mErrors.size());
+        assertTrue(mResults.isEmpty());
+    }
+
+    @Test public void mismatchedResponseIsParseError() throws Exception {
+        mBatcher.add(buildRequest("http://foo/events", "a"));
+        mBatcher.add(buildRequest("http://foo/events", "b"));
+        mBatcher.flushAll();
+
+        Request<List<Response<?>>> batch = captureBatch();
+        Response<List<Response<?>>> response =
+                batch.parseNetworkResponse(new NetworkResponse("1".getBytes()));
+        assertFalse(response.isSuccess());
+        assertTrue(response.error instanceof ParseError);
+    }
+
+    @Test public void cancelledPartIsLeftOutOfDelivery() throws Exception {
+        Request<String> first = buildRequest("http://foo/events", "a");
+        first.setTag("first");
+        mBatcher.add(first);
+        Request<String> second = buildRequest("http://foo/events", "b");
+        second.setTag("second");
+        mBatcher.add(second);
+        mBatcher.flushAll();
+
+        Request<List<Response<?>>> batch = captureBatch();
+        assertNull(batch.getTag());
+        first.cancel();
+        assertFalse(batch.isCanceled());
+
+        Response<List<Response<?>>> response =
+                batch.parseNetworkResponse(new NetworkResponse("1,2".getBytes()));
+        batch.deliverResponse(response.result);
+        assertEquals(1, mResults.size());
+        assertEquals("2", mResults.get(0));
+        verify(mMockQueue).finishBatched(first);
+        verify(mMockQueue).finishBatched(second);
+        verify(mMockQueue, never()).finish(any(Request.class));
+    }
+
+    @Test public void batchIsCancelledWithAllItsParts() throws Exception {
+        Request<String> first = buildRequest("http://foo/events", "a");
+        mBatcher.add(first);
+        Request<String> second = buildRequest("http://foo/events", "b");
+        mBatcher.add(second);
+        mBatcher.flushAll();
+
+        Request<List<Response<?>>> batch = captureBatch();
+        first.cancel();
+        second.cancel();
+        assertTrue(batch.isCanceled());
+    }
+}
@@ -45,6 +45,30 @@ public class RequestTest {
         assertTrue(immediate.compareTo(high) < 0);
     }
 
+    @Test public void compareToDeadlines() {
+        int sequence = 0;
+        TestRequest none = new TestRequest(Priority.NORMAL);
+        none.setSequence(sequence++);
+        TestRequest late = new TestRequest(Priority.NORMAL);
+        late.setSequence(sequence++);
+        late.setDeadline(2000);
+        TestRequest early = new TestRequest(Priority.NORMAL);
+        early.setSequence(sequence++);
+        early.setDeadline(1000);
+        TestRequest low = new TestRequest(Priority.LOW);
+        low.setSequence(sequence++);
+        low.setDeadline(500);
+
+        assertTrue(early.compareTo(late) < 0);
+        assertTrue(late.compareTo(none) < 0);
+        assertTrue(none.compareTo(early) > 0);
+        assertTrue(early.compareTo(low) < 0);
+
+        early.demote();
+        assertTrue(early.compareTo(none) > 0);
+        assertTrue(early.compareTo(low) > 0);
+    }
+
     private class TestRequest extends Request<Object> {
         private Priority mPriority = Priority.NORMAL;
         public TestRequest(Priority priority) {
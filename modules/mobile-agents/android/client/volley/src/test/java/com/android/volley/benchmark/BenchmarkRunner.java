@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.benchmark;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Measures the latency and the allocation rate of an operation.
+ * <p>
+ * The benchmarks are not run with the unit tests. Run them with {@code mvn test -Pbenchmark},
+ * which also appends every result to a report in {@code target/benchmark-reports}, so that the
+ * results of two builds can be compared.
+ */
+public class BenchmarkRunner {
+
+    /** System property naming the directory the results are reported to, if any. */
+    public static final String REPORT_DIRECTORY_PROPERTY = "volley.benchmark.reports";
+
+    /**
+     * An operation to measure.
+     */
+    public interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @param iteration the number of the run, counting the warm-up runs
+         */
+        public void run(int iteration) throws Exception;
+    }
+
+    /**
+     * The result of a benchmark.
+     */
+    public static class Result {
+        public final String name;
+        public final int operations;
+        public final long p50Ns;
+        public final long p99Ns;
+        public final long maxNs;
+        public final double operationsPerSecond;
+        /** Bytes allocated per operation, or -1 if the JVM cannot measure them. */
+        public final long bytesPerOperation;
+
+        /**
+         * @param name The name of the benchmark
+         * @param latenciesNs The latency of each operation
+         * @param elapsedNs The time all the operations took together
+         * @param bytesPerOperation Bytes allocated per operation, or -1 if not measured
+         */
+        public Result(String name, long[] latenciesNs, long elapsedNs, long bytesPerOperation) {
+            long[] sorted = Arrays.copyOf(latenciesNs, latenciesNs.length);
+            Arrays.sort(sorted);
+            this.name = name;
+            this.operations = sorted.length;
+            this.p50Ns = percentile(sorted, 0.50);
+            this.p99Ns = percentile(sorted, 0.99);
+            this.maxNs = sorted.length > 0 ? sorted[sorted.length - 1] : 0;
+            this.operationsPerSecond = elapsedNs > 0 ? sorted.length * 1e9 / elapsedNs : 0;
+            this.bytesPerOperation = bytesPerOperation;
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d ops, %.0f ops/s, p50=%.1f us, p99=%.1f us, "
+                    + "max=%.1f us, alloc=%s", name, operations, operationsPerSecond,
+                    p50Ns / 1000.0, p99Ns / 1000.0, maxNs / 1000.0,
+                    bytesPerOperation < 0 ? "n/a" : bytesPerOperation + " B/op");
+        }
+    }
+
+    /**
+     * Runs an operation on the calling thread, first to warm up and then to measure it.
+     *
+     * @param name The name of the benchmark
+     * @param warmupIterations The number of runs which are not measured
+     * @param iterations The number of runs which are measured
+     * @param operation The operation to measure
+     * @return the reported result
+     */
+    public static Result measure(String name, int warmupIterations, int iterations,
+            Operation operation) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            operation.run(i);
+        }
+        long[] latencies = new long[iterations];
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            long operationStart = System.nanoTime();
+            operation.run(warmupIterations + i);
+            latencies[i] = System.nanoTime() - operationStart;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = getAllocatedBytes();
+        long bytesPerOperation = allocatedBefore < 0 || allocatedAfter < 0 || iterations == 0
+                ? -1 : (allocatedAfter - allocatedBefore) / iterations;
+        return report(new Result(name, latencies, elapsed, bytesPerOperation));
+    }
+
+    /**
+     * Prints the given result and appends it to the report of the run, if any.
+     *
+     * @return the result
+     */
+    public static Result report(Result result) throws IOException {
+        System.out.println(result);
+        String directory = System.getProperty(REPORT_DIRECTORY_PROPERTY);
+        if (directory != null) {
+            File reportDirectory = new File(directory);
+            if (!reportDirectory.isDirectory() && !reportDirectory.mkdirs()) {
+                throw new IOException("Cannot create " + reportDirectory);
+            }
+            FileWriter writer = new FileWriter(new File(reportDirectory, "results.txt"), true);
+            try {
+                writer.write(result + "\n");
+            } finally {
+                writer.close();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the calling thread so far, or -1 if the JVM
+     * does not count them.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean =
+                    (com.sun.management.ThreadMXBean) bean;
+            if (allocationBean.isThreadAllocatedMemorySupported()
+                    && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.benchmark;
+
+import com.android.volley.toolbox.ByteArrayPool;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ByteArrayPoolBenchmark {
+
+    private static final int POOL_SIZE = 64 * 1024;
+
+    /** Buffer sizes requested by the benchmarks, like those of response bodies. */
+    private static final int[] SIZES = new int[1024];
+
+    static {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZES.length; i++) {
+            SIZES[i] = 256 + random.nextInt(8 * 1024);
+        }
+    }
+
+    @Test public void churn() throws Exception {
+        final ByteArrayPool pool = new ByteArrayPool(POOL_SIZE);
+        BenchmarkRunner.measure("ByteArrayPool.churn", 10000, 100000,
+                new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                byte[] first = pool.getBuf(SIZES[iteration % SIZES.length]);
+                byte[] second = pool.getBuf(SIZES[(iteration + 1) % SIZES.length]);
+                pool.returnBuf(first);
+                pool.returnBuf(second);
+            }
+        });
+    }
+
+    /** The allocation the pool saves, for comparison with {@link #churn()}. */
+    @Test public void churnWithoutPool() throws Exception {
+        BenchmarkRunner.measure("ByteArrayPool.churnWithoutPool", 10000, 100000,
+                new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                byte[] first = new byte[SIZES[iteration % SIZES.length]];
+                byte[] second = new byte[SIZES[(iteration + 1) % SIZES.length]];
+                first[0] = second[0];
+            }
+        });
+    }
+}
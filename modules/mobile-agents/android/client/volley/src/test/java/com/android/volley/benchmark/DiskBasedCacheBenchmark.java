@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.benchmark;
+
+import com.android.volley.Cache;
+import com.android.volley.toolbox.DiskBasedCache;
+import com.android.volley.utils.CacheTestUtils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiskBasedCacheBenchmark {
+
+    private static final int ENTRIES = 500;
+    private static final int ENTRY_SIZE = 2 * 1024;
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File mRoot;
+    private DiskBasedCache mCache;
+
+    @Before public void setUp() throws Exception {
+        mRoot = temporaryFolder.newFolder();
+        mCache = new DiskBasedCache(mRoot);
+        mCache.initialize();
+    }
+
+    private void fill() {
+        for (int i = 0; i < ENTRIES; i++) {
+            mCache.put("key-" + i, CacheTestUtils.makeRandomCacheEntry(new byte[ENTRY_SIZE]));
+        }
+    }
+
+    @Test public void put() throws Exception {
+        final Cache.Entry entry = CacheTestUtils.makeRandomCacheEntry(new byte[ENTRY_SIZE]);
+        BenchmarkRunner.measure("DiskBasedCache.put", 500, 5000, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                mCache.put("key-" + (iteration % ENTRIES), entry);
+            }
+        });
+    }
+
+    @Test public void get() throws Exception {
+        fill();
+        BenchmarkRunner.measure("DiskBasedCache.get", 500, 5000, new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertNotNull(mCache.get("key-" + (iteration % ENTRIES)));
+            }
+        });
+    }
+
+    @Test public void initialize() throws Exception {
+        fill();
+        BenchmarkRunner.measure("DiskBasedCache.initialize", 5, 50,
+                new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                new DiskBasedCache(mRoot).initialize();
+            }
+        });
+    }
+}
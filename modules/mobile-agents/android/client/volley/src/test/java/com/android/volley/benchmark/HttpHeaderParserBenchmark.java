@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.benchmark;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class HttpHeaderParserBenchmark {
+
+    @Test public void parseCacheHeaders() throws Exception {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Date", "Mon, 03 Oct 2016 10:15:30 GMT");
+        headers.put("Last-Modified", "Sun, 02 Oct 2016 08:00:00 GMT");
+        headers.put("Expires", "Mon, 03 Oct 2016 11:15:30 GMT");
+        headers.put("Cache-Control", "public, max-age=3600, stale-while-revalidate=60");
+        headers.put("ETag", "\"5a1f3c\"");
+        headers.put("Content-Type", "application/json; charset=utf-8");
+        final NetworkResponse response = new NetworkResponse(new byte[1024], headers);
+
+        BenchmarkRunner.measure("HttpHeaderParser.parseCacheHeaders", 5000, 50000,
+                new BenchmarkRunner.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertNotNull(HttpHeaderParser.parseCacheHeaders(response));
+            }
+        });
+    }
+}
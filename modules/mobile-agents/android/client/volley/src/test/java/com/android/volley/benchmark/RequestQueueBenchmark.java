@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.benchmark;
+
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.mock.MockHttpURLConnection;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+import com.android.volley.toolbox.StringRequest;
+import com.android.volley.utils.ImmediateResponseDelivery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the throughput of a {@link RequestQueue} and the latency of its requests, from
+ * {@link RequestQueue#add} to delivery, against a {@link HurlStack} whose connections are served
+ * in-process.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RequestQueueBenchmark {
+
+    private static final int RESPONSE_SIZE = 2 * 1024;
+
+    private RequestQueue mQueue;
+
+    @Before public void setUp() throws Exception {
+        final byte[] body = new byte[RESPONSE_SIZE];
+        HurlStack stack = new HurlStack() {
+            @Override
+            protected HttpURLConnection createConnection(URL url) throws IOException {
+                MockHttpURLConnection connection = new MockHttpURLConnection();
+                connection.setResponse(200, null, body);
+                return connection;
+            }
+        };
+        mQueue = new RequestQueue(new NoCache(), new BasicNetwork(stack), 1, 4, 3,
+                new ImmediateResponseDelivery());
+        mQueue.start();
+    }
+
+    @After public void tearDown() throws Exception {
+        mQueue.stop();
+    }
+
+    @Test public void throughputOneHost() throws Exception {
+        run("RequestQueue.throughputOneHost", 1);
+    }
+
+    @Test public void throughputFourHosts() throws Exception {
+        run("RequestQueue.throughputFourHosts", 4);
+    }
+
+    /**
+     * Sends requests with at most 16 of them in flight, spread over the given number of hosts,
+     * and reports their latency.
+     */
+    private void run(String name, int hosts) throws Exception {
+        send(hosts, 200, new long[200]);
+
+        long[] latencies = new long[2000];
+        long start = System.nanoTime();
+        send(hosts, latencies.length, latencies);
+        long elapsed = System.nanoTime() - start;
+        BenchmarkRunner.report(new BenchmarkRunner.Result(name, latencies, elapsed, -1));
+    }
+
+    private void send(int hosts, int count, final long[] latencies) throws Exception {
+        final Semaphore inFlight = new Semaphore(16);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger errors = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            inFlight.acquire();
+            final int index = i;
+            final long start = System.nanoTime();
+            String url = "http://host" + (i % hosts) + ".example.com/request/" + i;
+            mQueue.add(new StringRequest(url, new Response.Listener<String>() {
+                @Override
+                public void onResponse(String response) {
+                    latencies[index] = System.nanoTime() - start;
+                    inFlight.release();
+                    done.countDown();
+                }
+            }, new Response.ErrorListener() {
+                @Override
+                public void onErrorResponse(VolleyError error) {
+                    errors.incrementAndGet();
+                    inFlight.release();
+                    done.countDown();
+                }
+            }));
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+}
@@ -16,8 +16,10 @@
 
 package com.android.volley.mock;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -27,7 +29,9 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
     private boolean mDoOutput;
     private String mRequestMethod;
-    private OutputStream mOutputStream;
+    private ByteArrayOutputStream mOutputStream;
+    private byte[] mResponseBody;
+    private String mContentEncoding;
 
     public MockHttpURLConnection() throws MalformedURLException {
         super(new URL("http://foo.com"));
@@ -61,6 +65,41 @@ public class MockHttpURLConnection extends HttpURLConnection {
         return mOutputStream;
     }
 
+    public byte[] getOutputBytes() {
+        return mOutputStream.toByteArray();
+    }
+
+    public void setResponse(int responseCode, String contentEncoding, byte[] body) {
+        this.responseCode = responseCode;
+        mContentEncoding = contentEncoding;
+        mResponseBody = body;
+    }
+
+    @Override
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public String getResponseMessage() {
+        return "";
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(mResponseBody);
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return mContentEncoding;
+    }
+
+    @Override
+    public int getContentLength() {
+        return mResponseBody.length;
+    }
+
     @Override
     public void disconnect() {
     }
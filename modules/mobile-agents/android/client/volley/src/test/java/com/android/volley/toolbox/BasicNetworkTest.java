@@ -36,7 +36,9 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.Map;
@@ -243,6 +245,68 @@ public class BasicNetworkTest {
         }
     }
 
+    @Test public void streamingRequestParsesBodyFromStream() throws Exception {
+        MockHttpStack mockHttpStack = new MockHttpStack();
+        BasicHttpResponse fakeResponse = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1),
+                200, "OK");
+        fakeResponse.setEntity(new StringEntity("foobar"));
+        mockHttpStack.setResponseToReturn(fakeResponse);
+        BasicNetwork httpNetwork = new BasicNetwork(mockHttpStack);
+        StreamingRequest<String> request = buildStreamingRequest();
+
+        NetworkResponse networkResponse = httpNetwork.performRequest(request);
+        assertEquals(200, networkResponse.statusCode);
+        assertEquals(0, networkResponse.data.length);
+        assertEquals("foobar", request.parseNetworkResponse(networkResponse).result);
+        assertFalse(request.shouldCache());
+    }
+
+    @Test public void streamingRequestParsesBufferedBody() throws Exception {
+        StreamingRequest<String> request = buildStreamingRequest();
+        NetworkResponse networkResponse = new NetworkResponse("foobar".getBytes());
+        assertEquals("foobar", request.parseNetworkResponse(networkResponse).result);
+    }
+
+    @Test public void cancelledStreamingRequestIsNotRetried() throws Exception {
+        MockHttpStack mockHttpStack = new MockHttpStack();
+        BasicHttpResponse fakeResponse = new BasicHttpResponse(new ProtocolVersion("HTTP", 1, 1),
+                200, "OK");
+        fakeResponse.setEntity(new StringEntity("foobar"));
+        mockHttpStack.setResponseToReturn(fakeResponse);
+        BasicNetwork httpNetwork = new BasicNetwork(mockHttpStack);
+        StreamingRequest<String> request = buildStreamingRequest();
+        request.setRetryPolicy(mMockRetryPolicy);
+        request.cancel();
+        try {
+            httpNetwork.performRequest(request);
+            fail();
+        } catch (VolleyError e) {
+            // expected
+        }
+        verify(mMockRetryPolicy, never()).retry(any(VolleyError.class));
+    }
+
+    private static StreamingRequest<String> buildStreamingRequest() {
+        return new StreamingRequest<String>(Request.Method.GET, "http://foo", null) {
+
+            @Override
+            protected String parseStream(NetworkResponse response, InputStream in)
+                    throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[2];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, count);
+                }
+                return bytes.toString("UTF-8");
+            }
+
+            @Override
+            protected void deliverResponse(String response) {
+            }
+        };
+    }
+
     private static Request<String> buildRequest() {
         return new Request<String>(Request.Method.GET, "http://foo", null) {
 
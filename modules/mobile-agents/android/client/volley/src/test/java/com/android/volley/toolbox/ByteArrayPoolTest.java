@@ -16,11 +16,16 @@
 
 package com.android.volley.toolbox;
 
+import com.android.volley.NetworkDispatcher;
+import com.android.volley.Request;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
 import static org.junit.Assert.*;
 
 public class ByteArrayPoolTest {
@@ -73,4 +78,85 @@ public class ByteArrayPoolTest {
         byte[] buf3 = pool.getBuf(15);
         assertSame(buf3, buf1);
     }
+
+    @Test public void reusesBufferOfLargerSizeClass() {
+        ByteArrayPool pool = new ByteArrayPool(1024);
+
+        byte[] buf1 = pool.getBuf(100);
+        assertEquals(128, buf1.length);
+        pool.returnBuf(buf1);
+
+        assertSame(buf1, pool.getBuf(10));
+    }
+
+    @Test public void evictsLeastRecentlyUsedAcrossSizeClasses() {
+        ByteArrayPool pool = new ByteArrayPool(64);
+
+        byte[] buf1 = pool.getBuf(32);
+        byte[] buf2 = pool.getBuf(16);
+        byte[] buf3 = pool.getBuf(32);
+
+        pool.returnBuf(buf1);
+        pool.returnBuf(buf2);
+        pool.returnBuf(buf3);
+
+        assertSame(buf2, pool.getBuf(16));
+        assertSame(buf3, pool.getBuf(32));
+        assertNotSame(buf1, pool.getBuf(32));
+    }
+
+    @Test public void countsHitsAndMisses() {
+        ByteArrayPool pool = new ByteArrayPool(1024);
+
+        byte[] buf1 = pool.getBuf(100);
+        pool.returnBuf(buf1);
+        pool.getBuf(100);
+        pool.getBuf(2000);
+
+        assertEquals(1, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        assertEquals(128 + 2000, pool.getBytesAllocated());
+    }
+
+    @Test public void networkDispatcherCachesBuffersOutsideThePool() throws Exception {
+        final ByteArrayPool pool = new ByteArrayPool(64, 32);
+        final AtomicReference<byte[]> cached = new AtomicReference<byte[]>();
+        final AtomicReference<byte[]> reused = new AtomicReference<byte[]>();
+        NetworkDispatcher dispatcher = new NetworkDispatcher(null, null, null, null) {
+            @Override
+            public void run() {
+                cached.set(pool.getBuf(32));
+                pool.returnBuf(cached.get());
+                reused.set(pool.getBuf(32));
+            }
+        };
+        dispatcher.start();
+        dispatcher.join();
+
+        assertSame(cached.get(), reused.get());
+        // Buffers of the thread cache are not visible to other threads.
+        byte[] buf = pool.getBuf(32);
+        pool.returnBuf(buf);
+        assertNotSame(cached.get(), buf);
+        assertSame(buf, pool.getBuf(32));
+    }
+
+    @Test public void networkDispatcherReturnsCachedBuffersOnExit() throws Exception {
+        final ByteArrayPool pool = new ByteArrayPool(64, 32);
+        final AtomicReference<byte[]> cached = new AtomicReference<byte[]>();
+        NetworkDispatcher dispatcher = new NetworkDispatcher(
+                new LinkedBlockingQueue<Request<?>>(), null, null, null) {
+            @Override
+            public void run() {
+                cached.set(pool.getBuf(32));
+                pool.returnBuf(cached.get());
+                quit();
+                super.run();
+            }
+        };
+        dispatcher.start();
+        dispatcher.join();
+
+        assertSame(cached.get(), pool.getBuf(32));
+    }
 }
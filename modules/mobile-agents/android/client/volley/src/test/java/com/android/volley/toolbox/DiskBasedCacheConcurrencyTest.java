@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.Cache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class DiskBasedCacheConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 400;
+    private static final int KEYS = 40;
+    // Small enough for the entries to be pruned repeatedly while the threads run.
+    private static final int MAX_CACHE_SIZE = 64 * 1024;
+    private static final int MAX_ENTRY_SIZE = 4 * 1024;
+
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Builds an entry whose contents can be verified against the key it was stored under.
+     */
+    private static Cache.Entry newEntry(String key, int version, int size) {
+        Cache.Entry e = new Cache.Entry();
+        byte[] prefix = (key + ":" + version + ":").getBytes();
+        e.data = new byte[prefix.length + size];
+        System.arraycopy(prefix, 0, e.data, 0, prefix.length);
+        for (int i = prefix.length; i < e.data.length; i++) {
+            e.data[i] = (byte) (version + i);
+        }
+        e.etag = key + ":" + version;
+        e.ttl = Long.MAX_VALUE;
+        e.softTtl = Long.MAX_VALUE;
+        e.responseHeaders = new HashMap<String, String>();
+        e.responseHeaders.put("key", key);
+        return e;
+    }
+
+    private static void assertEntryMatches(String key, Cache.Entry entry) {
+        assertNotNull(entry.etag);
+        assertTrue("Entry of another key: " + entry.etag, entry.etag.startsWith(key + ":"));
+        int version = Integer.parseInt(entry.etag.substring(key.length() + 1));
+        byte[] prefix = (entry.etag + ":").getBytes();
+        for (int i = 0; i < prefix.length; i++) {
+            assertEquals(prefix[i], entry.data[i]);
+        }
+        for (int i = prefix.length; i < entry.data.length; i++) {
+            assertEquals("Torn data for " + entry.etag, (byte) (version + i), entry.data[i]);
+        }
+        assertEquals(key, entry.responseHeaders.get("key"));
+    }
+
+    @Test public void concurrentReadsAndWritesNeverSeeTornEntries() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        final DiskBasedCache cache = new DiskBasedCache(root, MAX_CACHE_SIZE);
+        cache.initialize();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Random random = new Random(seed);
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        String key = "http://example.com/resource/" + random.nextInt(KEYS);
+                        int operation = random.nextInt(10);
+                        if (operation < 5) {
+                            Cache.Entry entry = cache.get(key);
+                            if (entry != null) {
+                                assertEntryMatches(key, entry);
+                            }
+                        } else if (operation < 8) {
+                            cache.put(key, newEntry(key, random.nextInt(1000),
+                                    random.nextInt(MAX_ENTRY_SIZE)));
+                        } else if (operation < 9) {
+                            cache.remove(key);
+                        } else {
+                            cache.invalidate(key, random.nextBoolean());
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> result : results) {
+            // Rethrows assertion failures of the worker threads.
+            result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // The journal written meanwhile must describe exactly the entries left on disk.
+        DiskBasedCache restored = new DiskBasedCache(root, MAX_CACHE_SIZE);
+        restored.initialize();
+        long totalSize = 0;
+        for (int k = 0; k < KEYS; k++) {
+            String key = "http://example.com/resource/" + k;
+            Cache.Entry original = cache.get(key);
+            Cache.Entry entry = restored.get(key);
+            assertEquals(original == null, entry == null);
+            if (entry != null) {
+                assertEntryMatches(key, entry);
+                assertEquals(original.etag, entry.etag);
+                totalSize += entry.data.length;
+            }
+        }
+        // Puts racing past the pruning check may overshoot the limit by one entry each.
+        assertTrue("Cache exceeds its limit: " + totalSize,
+                totalSize <= MAX_CACHE_SIZE + THREADS * MAX_ENTRY_SIZE);
+    }
+
+    @Test public void concurrentWritesOfSameKeyLeaveOneCompleteEntry() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        final DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        final String key = "http://example.com/shared";
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int version = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD / 4; i++) {
+                        cache.put(key, newEntry(key, version, 16 * 1024));
+                        Cache.Entry entry = cache.get(key);
+                        assertNotNull(entry);
+                        assertEntryMatches(key, entry);
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> result : results) {
+            result.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        String[] files = root.list();
+        assertNotNull(files);
+        for (String file : files) {
+            assertFalse("Temporary file left behind: " + file,
+                    file.endsWith(".tmp") && !file.equals(DiskBasedCache.JOURNAL_FILE_TEMP));
+        }
+    }
+}
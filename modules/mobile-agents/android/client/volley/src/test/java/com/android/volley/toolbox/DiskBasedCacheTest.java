@@ -18,18 +18,37 @@ package com.android.volley.toolbox;
 
 import com.android.volley.Cache;
 import com.android.volley.toolbox.DiskBasedCache.CacheHeader;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
 import static org.junit.Assert.*;
 
+@RunWith(RobolectricTestRunner.class)
 public class DiskBasedCacheTest {
 
+    @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Cache.Entry newEntry(String etag, int size) {
+        Cache.Entry e = new Cache.Entry();
+        e.data = new byte[size];
+        e.etag = etag;
+        e.ttl = 9876543L;
+        e.softTtl = 8765432L;
+        e.responseHeaders = new HashMap<String, String>();
+        e.responseHeaders.put("fruit", "banana");
+        return e;
+    }
+
     // Simple end-to-end serialize/deserialize test.
     @Test public void cacheHeaderSerialization() throws Exception {
         Cache.Entry e = new Cache.Entry();
@@ -125,6 +144,122 @@ public class DiskBasedCacheTest {
         assertEquals(DiskBasedCache.readStringStringMap(bais), emptyValue);
     }
 
+    @Test public void journalIsReplayedOnInitialize() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        cache.put("kept", newEntry("etag", 16));
+        cache.put("removed", newEntry(null, 8));
+        cache.remove("removed");
+
+        DiskBasedCache restored = new DiskBasedCache(root);
+        restored.initialize();
+        Cache.Entry entry = restored.get("kept");
+        assertNotNull(entry);
+        assertEquals(16, entry.data.length);
+        assertEquals("etag", entry.etag);
+        assertEquals(9876543L, entry.ttl);
+        assertEquals(8765432L, entry.softTtl);
+        assertEquals("banana", entry.responseHeaders.get("fruit"));
+        assertNull(restored.get("removed"));
+    }
+
+    @Test public void directoryIsScannedWithoutJournal() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        cache.put("key", newEntry("etag", 16));
+        assertTrue(new File(root, DiskBasedCache.JOURNAL_FILE).delete());
+
+        DiskBasedCache restored = new DiskBasedCache(root);
+        restored.initialize();
+        assertNotNull(restored.get("key"));
+        assertTrue(new File(root, DiskBasedCache.JOURNAL_FILE).exists());
+    }
+
+    @Test public void incompleteJournalRecordIsIgnored() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        cache.put("key", newEntry("etag", 16));
+        FileOutputStream journal =
+                new FileOutputStream(new File(root, DiskBasedCache.JOURNAL_FILE), true);
+        journal.write(new byte[] {1, 42});
+        journal.close();
+
+        DiskBasedCache restored = new DiskBasedCache(root);
+        restored.initialize();
+        assertNotNull(restored.get("key"));
+        restored.put("other", newEntry("etag", 8));
+
+        DiskBasedCache reopened = new DiskBasedCache(root);
+        reopened.initialize();
+        assertNotNull(reopened.get("key"));
+        assertNotNull(reopened.get("other"));
+    }
+
+    @Test public void corruptJournalIsRebuiltFromDirectory() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        cache.put("key", newEntry("etag", 16));
+        FileOutputStream journal =
+                new FileOutputStream(new File(root, DiskBasedCache.JOURNAL_FILE), true);
+        // A record whose key claims to be far longer than the journal.
+        journal.write(1);
+        DiskBasedCache.writeLong(journal, Integer.MAX_VALUE - 8);
+        journal.write(new byte[16]);
+        journal.close();
+
+        DiskBasedCache restored = new DiskBasedCache(root);
+        restored.initialize();
+        assertNotNull(restored.get("key"));
+
+        DiskBasedCache reopened = new DiskBasedCache(root);
+        reopened.initialize();
+        assertNotNull(reopened.get("key"));
+    }
+
+    @Test public void clearResetsJournal() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        cache.put("key", newEntry("etag", 16));
+        cache.clear();
+        cache.put("other", newEntry("etag", 8));
+
+        DiskBasedCache restored = new DiskBasedCache(root);
+        restored.initialize();
+        assertNull(restored.get("key"));
+        assertNotNull(restored.get("other"));
+    }
+
+    @Test public void largeEntriesAreMapped() throws Exception {
+        File root = temporaryFolder.newFolder("cache");
+        DiskBasedCache cache = new DiskBasedCache(root);
+        cache.initialize();
+        Cache.Entry large = newEntry("etag", DiskBasedCache.MAPPED_DATA_THRESHOLD + 1);
+        for (int i = 0; i < large.data.length; i++) {
+            large.data[i] = (byte) i;
+        }
+        cache.put("large", large);
+        cache.put("small", newEntry("etag", 16));
+
+        Cache.Entry entry = cache.get("large");
+        assertNull(entry.data);
+        assertTrue(entry.dataBuffer.isReadOnly());
+        assertEquals(large.data.length, entry.getDataLength());
+        assertArrayEquals(large.data, entry.getData());
+        assertEquals("banana", entry.responseHeaders.get("fruit"));
+        assertNotNull(cache.get("small").data);
+
+        // Entries are written back from their mapped data, e.g. when invalidated.
+        cache.invalidate("large", true);
+        entry = cache.get("large");
+        assertEquals(0, entry.ttl);
+        assertArrayEquals(large.data, entry.getData());
+    }
+
     @Test
     public void publicMethods() throws Exception {
         // Catch-all test to find API-breaking changes.
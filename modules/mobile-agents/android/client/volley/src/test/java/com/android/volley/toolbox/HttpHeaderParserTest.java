@@ -26,6 +26,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.nio.ByteBuffer;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -289,4 +290,20 @@ public class HttpHeaderParserTest {
         assertEquals(entry.softTtl, entry.ttl);
         assertEquals("ISO-8859-1", HttpHeaderParser.parseCharset(headers));
     }
+
+    @Test public void parseString_dataBuffer() throws Exception {
+        Cache.Entry entry = new Cache.Entry();
+        entry.dataBuffer = ByteBuffer.wrap("h\u00e9llo".getBytes("UTF-8")).asReadOnlyBuffer();
+        StringRequest request = new StringRequest("http://foo", null, null);
+
+        request.setShouldMapCachedData(true);
+        NetworkResponse mapped = NetworkResponse.fromCacheEntry(request, 200, entry, false, 0);
+        assertNull(mapped.data);
+        assertEquals("h\u00e9llo", HttpHeaderParser.parseString(mapped, "UTF-8"));
+
+        request.setShouldMapCachedData(false);
+        NetworkResponse copied = NetworkResponse.fromCacheEntry(request, 200, entry, false, 0);
+        assertNotNull(copied.data);
+        assertEquals("h\u00e9llo", HttpHeaderParser.parseString(copied, "UTF-8"));
+    }
 }
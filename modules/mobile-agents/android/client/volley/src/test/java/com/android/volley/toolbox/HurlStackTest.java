@@ -20,11 +20,22 @@ import com.android.volley.Request.Method;
 import com.android.volley.mock.MockHttpURLConnection;
 import com.android.volley.mock.TestRequest;
 
+import org.apache.http.HttpResponse;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
 import static org.junit.Assert.*;
 
 @RunWith(RobolectricTestRunner.class)
@@ -152,4 +163,113 @@ public class HurlStackTest {
         assertEquals("PATCH", mMockConnection.getRequestMethod());
         assertTrue(mMockConnection.getDoOutput());
     }
+
+    @Test public void compressesBodyWhenRequested() throws Exception {
+        final byte[] body = new byte[4096];
+        TestRequest.Post request = new TestRequest.Post() {
+            @Override
+            public byte[] getBody() {
+                return body;
+            }
+        };
+        request.setShouldCompressBody(true);
+
+        HurlStack.setConnectionParametersForRequest(mMockConnection, request);
+        assertEquals("gzip", mMockConnection.getRequestProperty("Content-Encoding"));
+        byte[] sent = mMockConnection.getOutputBytes();
+        assertTrue(sent.length < body.length);
+        assertArrayEquals(body, readFully(new GZIPInputStream(new ByteArrayInputStream(sent))));
+    }
+
+    @Test public void sendsSmallBodyUncompressed() throws Exception {
+        final byte[] body = new byte[16];
+        TestRequest.Post request = new TestRequest.Post() {
+            @Override
+            public byte[] getBody() {
+                return body;
+            }
+        };
+        request.setShouldCompressBody(true);
+
+        HurlStack.setConnectionParametersForRequest(mMockConnection, request);
+        assertNull(mMockConnection.getRequestProperty("Content-Encoding"));
+        assertArrayEquals(body, mMockConnection.getOutputBytes());
+    }
+
+    @Test public void decompressesGzipResponse() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write("foobar".getBytes());
+        out.close();
+        mMockConnection.setResponse(200, "gzip", compressed.toByteArray());
+        HurlStack stack = new HurlStack() {
+            @Override
+            protected HttpURLConnection createConnection(URL url) {
+                return mMockConnection;
+            }
+        };
+
+        HttpResponse response = stack.performRequest(new TestRequest.Get(),
+                Collections.<String, String>emptyMap());
+        assertEquals("gzip, deflate", mMockConnection.getRequestProperty("Accept-Encoding"));
+        assertNull(response.getEntity().getContentEncoding());
+        assertEquals(-1, response.getEntity().getContentLength());
+        assertEquals("foobar", new String(readFully(response.getEntity().getContent())));
+    }
+
+    @Test public void readsEmptyChunkedGzipResponse() throws Exception {
+        mMockConnection = new MockHttpURLConnection() {
+            @Override
+            public int getContentLength() {
+                return -1;
+            }
+        };
+        mMockConnection.setResponse(200, "gzip", new byte[0]);
+        HurlStack stack = new HurlStack() {
+            @Override
+            protected HttpURLConnection createConnection(URL url) {
+                return mMockConnection;
+            }
+        };
+
+        HttpResponse response = stack.performRequest(new TestRequest.Get(),
+                Collections.<String, String>emptyMap());
+        assertNull(response.getEntity().getContentEncoding());
+        assertEquals(0, readFully(response.getEntity().getContent()).length);
+    }
+
+    @Test public void drainsUnreadResponseOnClose() throws Exception {
+        final ByteArrayInputStream wire = new ByteArrayInputStream(new byte[4096]);
+        mMockConnection = new MockHttpURLConnection() {
+            @Override
+            public InputStream getInputStream() {
+                return wire;
+            }
+        };
+        mMockConnection.setResponse(200, null, new byte[4096]);
+        HurlStack stack = new HurlStack() {
+            @Override
+            protected HttpURLConnection createConnection(URL url) {
+                return mMockConnection;
+            }
+        };
+
+        HttpResponse response = stack.performRequest(new TestRequest.Get(),
+                Collections.<String, String>emptyMap());
+        InputStream in = response.getEntity().getContent();
+        in.read(new byte[16]);
+        in.close();
+        assertEquals(0, wire.available());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        in.close();
+        return bytes.toByteArray();
+    }
 }
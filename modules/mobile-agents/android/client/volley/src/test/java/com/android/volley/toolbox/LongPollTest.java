@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.volley.toolbox;
+
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.utils.ImmediateResponseDelivery;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a long poll loop, like the one of the agent, against a local HTTP server which holds the
+ * poll until it has an operation pending, or answers it with 204 No Content once the heartbeat
+ * interval has passed.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LongPollTest {
+
+    private static final String NO_OPERATIONS = "";
+
+    private HttpServer mServer;
+    private ExecutorService mServerExecutor;
+    private RequestQueue mQueue;
+    private String mBaseUrl;
+    private volatile long mHeartbeatMs;
+    private volatile boolean mPolling;
+    private final AtomicInteger mPolls = new AtomicInteger();
+    private final BlockingQueue<String> mOperations = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<String> mAnswers = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<String> mResults = new LinkedBlockingQueue<String>();
+
+    @Before public void setUp() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/poll", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mPolls.incrementAndGet();
+                String operation;
+                try {
+                    operation = mOperations.poll(mHeartbeatMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    operation = null;
+                }
+                if (operation == null) {
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                } else {
+                    respond(exchange, operation);
+                }
+            }
+        });
+        mServer.createContext("/results", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, "ok");
+            }
+        });
+        mServerExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mServerExecutor);
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+
+        // A single request per host, so that only the long poll can make room for the results.
+        mQueue = new RequestQueue(new NoCache(), new BasicNetwork(new HurlStack()), 1, 2, 1,
+                new ImmediateResponseDelivery());
+        mQueue.start();
+    }
+
+    @After public void tearDown() throws Exception {
+        mPolling = false;
+        mQueue.stop();
+        mServerExecutor.shutdownNow();
+        mServer.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /** Opens the long poll, which is opened again as soon as it has been answered. */
+    private void poll() {
+        StringRequest request = new StringRequest(mBaseUrl + "/poll",
+                new Response.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                mAnswers.add(response);
+                if (mPolling) {
+                    poll();
+                }
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                mAnswers.add("error: " + error);
+            }
+        });
+        request.setRetryPolicy(new DefaultRetryPolicy((int) mHeartbeatMs * 2, 0, 1));
+        request.setLongLived(true);
+        mQueue.add(request);
+    }
+
+    private void sendResults() {
+        mQueue.add(new StringRequest(mBaseUrl + "/results", new Response.Listener<String>() {
+            @Override
+            public void onResponse(String response) {
+                mResults.add(response);
+            }
+        }, new Response.ErrorListener() {
+            @Override
+            public void onErrorResponse(VolleyError error) {
+                mResults.add("error: " + error);
+            }
+        }));
+    }
+
+    private void awaitPolls(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (mPolls.get() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertTrue("server saw " + mPolls.get() + " polls", mPolls.get() >= count);
+    }
+
+    @Test public void pollIsOpenedAgainAfterHeartbeat() throws Exception {
+        mHeartbeatMs = 200;
+        mPolling = true;
+        poll();
+
+        assertEquals(NO_OPERATIONS, mAnswers.poll(5, TimeUnit.SECONDS));
+        assertEquals(NO_OPERATIONS, mAnswers.poll(5, TimeUnit.SECONDS));
+        awaitPolls(3);
+    }
+
+    @Test public void operationIsAnsweredWhileResultsGoThrough() throws Exception {
+        mHeartbeatMs = 3000;
+        mPolling = true;
+        poll();
+        awaitPolls(1);
+
+        // The held poll does not count against the limit of requests to the host.
+        sendResults();
+        assertEquals("ok", mResults.poll(2, TimeUnit.SECONDS));
+        assertTrue(mAnswers.isEmpty());
+
+        mOperations.add("operation");
+        assertEquals("operation", mAnswers.poll(5, TimeUnit.SECONDS));
+        awaitPolls(2);
+    }
+}
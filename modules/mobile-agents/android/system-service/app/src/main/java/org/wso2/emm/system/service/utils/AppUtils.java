@@ -52,14 +52,14 @@ public class AppUtils {
      * @param context - Application context.
      * @param  packageUri - App package URI.
      */
-    public static void silentInstallApp(final Context context, Uri packageUri) {
+    public static void silentInstallApp(final Context context, final Uri packageUri) {
         PackageManager pm = context.getPackageManager();
         PackageInstallObserver observer = new PackageInstallObserver() {
             @Override
             public void onPackageInstalled(String basePackageName, int returnCode, String msg, Bundle extras) {
                 if (INSTALL_SUCCEEDED == returnCode) {
                     Log.d(TAG, "Installation succeeded!");
-                    publishAppInstallStatus(context, INSTALL_SUCCESS_STATUS, null);
+                    publishAppInstallStatus(context, packageUri, basePackageName, INSTALL_SUCCESS_STATUS, null);
                 } else {
                     if (msg == null || msg.isEmpty()) {
                         switch (returnCode){
@@ -199,7 +199,7 @@ public class AppUtils {
                     }
                     String error = "Package installation failed due to an internal error with code: " + returnCode + " and message: " + msg;
                     Log.e(TAG, error);
-                    publishAppInstallStatus(context, INSTALL_FAILED_STATUS, error);
+                    publishAppInstallStatus(context, packageUri, basePackageName, INSTALL_FAILED_STATUS, error);
                 }
             }
         };
@@ -232,10 +232,19 @@ public class AppUtils {
         pm.deletePackage(packageName, observer, DELETE_ALL_USERS);
     }
 
-    private static void publishAppInstallStatus(Context context, String status, String error) {
+    /**
+     * Publishes the result of a silent installation, together with the URI of the installed file
+     * so that the agent can match the result to the installation it requested.
+     */
+    private static void publishAppInstallStatus(Context context, Uri packageUri, String packageName,
+                                                String status, String error) {
         JSONObject result = new JSONObject();
 
         try {
+            result.put("appUri", packageUri.toString());
+            if (packageName != null) {
+                result.put("packageName", packageName);
+            }
             result.put("appInstallStatus", status);
             if (error != null) {
                 result.put("appInstallFailedMessage", error);